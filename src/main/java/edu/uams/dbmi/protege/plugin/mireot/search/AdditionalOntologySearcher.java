@@ -2,13 +2,29 @@ package edu.uams.dbmi.protege.plugin.mireot.search;
 
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.model.*;
-import org.semanticweb.owlapi.search.EntitySearcher;
-import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
 
-import edu.uams.dbmi.protege.plugin.mireot.search.result.ClassSearchResult;
-import edu.uams.dbmi.protege.plugin.mireot.search.result.ObjectPropertySearchResult;
+import edu.uams.dbmi.protege.plugin.mireot.search.index.BKTree;
+import edu.uams.dbmi.protege.plugin.mireot.search.index.IndexCache;
+import edu.uams.dbmi.protege.plugin.mireot.search.index.IntList;
+import edu.uams.dbmi.protege.plugin.mireot.search.index.ResultRanker;
+import edu.uams.dbmi.protege.plugin.mireot.search.index.SearchCancellation;
+import edu.uams.dbmi.protege.plugin.mireot.search.index.SearchField;
+import edu.uams.dbmi.protege.plugin.mireot.search.index.SearchIndex;
+import edu.uams.dbmi.protege.plugin.mireot.search.index.SearchKeys;
+import edu.uams.dbmi.protege.plugin.mireot.search.load.DocumentOutline;
+import edu.uams.dbmi.protege.plugin.mireot.search.load.DocumentStore;
+import edu.uams.dbmi.protege.plugin.mireot.search.load.FilteredOntologyBuilder;
+import edu.uams.dbmi.protege.plugin.mireot.search.load.LoadMonitor;
+import edu.uams.dbmi.protege.plugin.mireot.search.load.LoadedOntology;
+import edu.uams.dbmi.protege.plugin.mireot.search.load.MonitoredDocumentSource;
+import edu.uams.dbmi.protege.plugin.mireot.search.load.OntologyRegistry;
+import edu.uams.dbmi.protege.plugin.mireot.search.load.SnapshotStore;
+import edu.uams.dbmi.protege.plugin.mireot.search.load.StreamingLoader;
+import edu.uams.dbmi.protege.plugin.mireot.search.load.StreamingParser;
+import edu.uams.dbmi.protege.plugin.mireot.search.result.ResultStore;
 import edu.uams.dbmi.protege.plugin.mireot.search.result.SearchResult;
 import edu.uams.dbmi.protege.plugin.mireot.search.result.table.ResultTableCellRenderer;
+import edu.uams.dbmi.protege.plugin.mireot.search.result.table.ResultTableModel;
 
 
 import java.awt.Component;
@@ -17,11 +33,23 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.JOptionPane;
 import javax.swing.JTable;
 import javax.swing.table.DefaultTableColumnModel;
-import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableCellRenderer;
 import javax.swing.table.TableColumn;
 
@@ -42,21 +70,125 @@ public class AdditionalOntologySearcher {
 	private OWLOntologyManager man;
 	private OWLOntology ontology;
 	private OWLDataFactory factory;
+	private SearchIndex index;
+	private LoadedOntology loaded;
 
 	private boolean searchByLabel = true;
 	private boolean searchByComment = false;
 	private boolean searchByDefinition = false;
 	private boolean searchByURI = true;
+	private boolean searchBySynonym = false;
 
 	private boolean searchClasses = true;
 	private boolean searchObjectProperties = false;
 
+	private boolean parallelSearch = false;
+
+	private boolean searchFuzzy = false;
+
+	private IndexCache indexCache = new IndexCache(IndexCache.getDefaultDirectory());
+	private DocumentStore documentStore = new DocumentStore(DocumentStore.getDefaultDirectory());
+	private SnapshotStore snapshotStore = new SnapshotStore(SnapshotStore.getDefaultDirectory());
+
+	//recently used source ontologies stay loaded, until the heap fills up to three quarters
+	private final OntologyRegistry registry = new OntologyRegistry(4, 0.75, new Executor() {
+		@Override
+		public void execute(final Runnable eviction) {
+			//evicting waits for the loads being registered, like any other load
+			loadExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					synchronized(pendingLoads){
+						eviction.run();
+					}
+				}
+			});
+		}
+	}) {
+		@Override
+		protected void removed(LoadedOntology loaded) {
+			//a streamed ontology reads its terms from the local copy, which is kept while it is loaded
+			if(loaded.isStreamed() && !isFile(loaded.getSource())){
+				documentStore.unpin(loaded.getSource());
+			}
+		}
+	};
+
+	//when not empty, these sources are searched together instead of the single ontology
+	private volatile List<String> federatedSources = Collections.emptyList();
+
+	//when set, documents are streamed into an index instead of loaded
+	private boolean streamingLoad = false;
+
+	//when set, the axioms MIREOT doesn't use are dropped while loading
+	private boolean filteredLoad = false;
+
+	//preferred languages of the labels shown for results, "" for labels without a language
+	private List<String> labelLanguages = Arrays.asList("en", "");
+
 	private boolean optionsChanged;
 
-	private ArrayList<SearchResult> results = new ArrayList<SearchResult>();
+	//match type shown for each field, by ordinal
+	private final String[] matchTypes = createMatchTypes(OWLManager.getOWLDataFactory());
+
+	private volatile ResultStore results = new ResultStore(matchTypes);
 	private File ontFile;
 	private File oldOntFile;
 
+	//every search runs on this single thread, so a new search queues behind the one it supersedes
+	private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "MIREOT search");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	//federated sources are loaded and searched side by side, one worker each
+	private final ExecutorService sourceExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "MIREOT source search");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	//ontologies are loaded and indexed here, ahead of the first search when a source is picked
+	private final ExecutorService loadExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "MIREOT load");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	//loads in progress by source, so a search for a source being loaded waits for that load
+	private final Map<String, Future<LoadedOntology>> pendingLoads = new HashMap<String, Future<LoadedOntology>>();
+	private final Map<String, LoadMonitor> loadMonitors = new HashMap<String, LoadMonitor>();
+
+	private Future<?> currentSearch;
+	private SearchCancellation currentCancellation;
+	private SearchTask currentTask;
+
+	//rows measured when sizing the result columns
+	private static final int PACK_SAMPLE_ROWS = 200;
+
+	//results are built and shown in batches of this size
+	private static final int PUBLISH_BATCH_SIZE = 50;
+
+	//how often a search waiting for a load checks whether it was superseded
+	private static final long WAIT_CHECK_MILLIS = 100;
+
+	//outlines of streamed documents are cached next to their index
+	private static final String OUTLINE_SUFFIX = ".outline";
+
+	private int resultLimit = 200;
+	private SearchListener searchListener;
+	private LoadListener loadListener;
+
 	/*
 	 * Constructors
 	 */
@@ -123,6 +255,20 @@ public class AdditionalOntologySearcher {
 		optionsChanged = true;
 	}	
 
+	public boolean searchBySynonymFlag() {
+		return searchBySynonym;
+	}
+
+	/**
+	 * When set, the oboInOwl exact, related, narrow and broad synonyms are searched
+	 * 
+	 * @param searchBySynonym
+	 */
+	public void setSearchBySynonymFlag(boolean searchBySynonym) {
+		this.searchBySynonym = searchBySynonym;
+		optionsChanged = true;
+	}
+
 	public boolean searchClassesFlag() {
 		return searchClasses;
 	}
@@ -141,484 +287,979 @@ public class AdditionalOntologySearcher {
 		optionsChanged = true;
 	}
 
-	public void setUrl(String ontUrl) {
-		this.ontUrl = ontUrl;
-	}
-
-
-	public OWLOntologyManager getAdditionalManager() {
-		return this.man;
+	public boolean parallelSearchFlag() {
+		return parallelSearch;
 	}
 
-	public OWLDataFactory getAdditionalFactory() {
-		return this.factory;
+	/**
+	 * When set, the ontology and its imports are indexed and searched on the fork-join pool
+	 * 
+	 * @param parallelSearch
+	 */
+	public void setParallelSearchFlag(boolean parallelSearch) {
+		this.parallelSearch = parallelSearch;
 	}
 
-	public OWLOntology getAdditonalOntology() {
-		return this.ontology;
+	public boolean searchFuzzyFlag() {
+		return searchFuzzy;
 	}
 
-	public ArrayList<SearchResult> getResults(){
-		synchronized(results){
-			return this.results;
-		}
+	/**
+	 * When set, labels that match the query with a few typos are found too
+	 * 
+	 * @param searchFuzzy
+	 */
+	public void setSearchFuzzyFlag(boolean searchFuzzy) {
+		this.searchFuzzy = searchFuzzy;
+		optionsChanged = true;
 	}
 
-	public void setFile(File ontFile){
-		this.ontFile = ontFile;
+	public List<String> getLabelLanguages() {
+		return labelLanguages;
 	}
 
 	/**
-	 * Loads ontology using URI passed in earlier
+	 * Labels are chosen while the ontology is indexed, so ontologies kept loaded are dropped
+	 * and the next search indexes the selected one again
 	 * 
-	 * @author Josh Hanna
-	 * @throws IOException 
-	 * @throws OWLOntologyCreationException 
-	 * @throws Exception 
+	 * @param labelLanguages language tags in order of preference, "" for labels without a language
 	 */
-	private void loadOntology() throws IOException, OWLOntologyCreationException {
+	public void setLabelLanguages(List<String> labelLanguages) {
+		if(this.labelLanguages.equals(labelLanguages)){
+			return;
+		}
+		this.labelLanguages = labelLanguages;
+		this.dropLoadedOntologies();
+	}
 
+	/**
+	 * Drops every ontology kept loaded, the selected one included, so the next search
+	 * loads and indexes the selected source again
+	 */
+	private void dropLoadedOntologies() {
+		for(String source : registry.getSources()){
+			registry.remove(source);
+		}
 
-		if(this.ontUrl != null && this.oldOntUrl != null){
+		this.loaded = null;
+		this.man = null;
+		this.ontology = null;
+		this.factory = null;
+		this.index = null;
+		this.oldOntUrl = null;
+		this.oldOntFile = null;
+		optionsChanged = true;
+	}
 
-			if(this.ontUrl.equals(oldOntUrl)){
-				//same ontology, no need to reload
-				return;
-			} else {
-				//keeping track of old url
-				this.oldOntUrl = this.ontUrl;
-			}
+	public boolean streamingLoadFlag() {
+		return streamingLoad;
+	}
 
-		} else {
-			//keeping track of old url
-			this.oldOntUrl = this.ontUrl;
-		} 
+	/**
+	 * When set, RDF/XML, OWL/XML and OBO documents are indexed as they stream past instead of
+	 * being loaded, and a term is read back from its document when it is copied; ontologies kept
+	 * loaded are dropped so they are read again the new way
+	 * 
+	 * @param streamingLoad
+	 */
+	public void setStreamingLoadFlag(boolean streamingLoad) {
+		if(this.streamingLoad == streamingLoad){
+			return;
+		}
+		this.streamingLoad = streamingLoad;
+		this.dropLoadedOntologies();
+	}
 
-		if(this.ontFile != null && this.oldOntFile != null){
-			if(this.ontFile.equals(oldOntFile)){
+	public boolean filteredLoadFlag() {
+		return filteredLoad;
+	}
 
-				return;
-			} else {
-				this.oldOntFile = this.ontFile;
-			}
-		} else {
-			this.oldOntFile = ontFile;
+	/**
+	 * When set, ontologies are loaded with only their declarations, annotation assertions and
+	 * named subclass and subproperty edges; ontologies kept loaded are dropped so they are
+	 * loaded again the new way
+	 * 
+	 * @param filteredLoad
+	 */
+	public void setFilteredLoadFlag(boolean filteredLoad) {
+		if(this.filteredLoad == filteredLoad){
+			return;
 		}
+		this.filteredLoad = filteredLoad;
+		this.dropLoadedOntologies();
+	}
 
-		OWLOntologyManager man = OWLManager.createOWLOntologyManager();
-
-		try {
-			System.out.println("Loading ontology...");
-
-			if(ontUrl == null && ontFile == null){
-				throw new IOException("Either ontology file or URL must exist.");
-			} else if(ontUrl != null){ 
-				
-				this.ontology = man.loadOntology(IRI.create(ontUrl));
-			} else if(ontFile != null){
-				
-				this.ontology = man.loadOntologyFromOntologyDocument(ontFile);
-				
-			}
-			
-		} catch (OWLOntologyCreationException e) {
-			JOptionPane.showMessageDialog(null, "Could not load ontology: " + e.getMessage());
-			e.printStackTrace();
+	public List<String> getFederatedSources() {
+		return federatedSources;
+	}
 
-			throw e;
-		} catch (IOException e) {
-			JOptionPane.showMessageDialog(null, "Could not load ontology: " + e.getMessage());
-			e.printStackTrace();
-			throw e;
+	/**
+	 * Sources searched together, their results merged by rank into one table; the registry
+	 * is grown to hold all of them
+	 * 
+	 * @param federatedSources URLs or file paths, or an empty list to search the single ontology again
+	 */
+	public void setFederatedSources(List<String> federatedSources) {
+		this.federatedSources = Collections.unmodifiableList(new ArrayList<String>(federatedSources));
+		if(federatedSources.size() > registry.getMaxOntologies()){
+			registry.setMaxOntologies(federatedSources.size());
 		}
+		optionsChanged = true;
+	}
 
-		this.factory = man.getOWLDataFactory();
+	public boolean isFederated() {
+		return !federatedSources.isEmpty();
+	}
 
-		this.man = man;
-		System.out.println("Loading finished.");
+	public IndexCache getIndexCache() {
+		return indexCache;
+	}
 
+	public void setIndexCache(IndexCache indexCache) {
+		this.indexCache = indexCache;
+	}
 
+	public DocumentStore getDocumentStore() {
+		return documentStore;
+	}
 
+	/**
+	 * 
+	 * @param documentStore local copies of the ontology documents loaded from URLs
+	 */
+	public void setDocumentStore(DocumentStore documentStore) {
+		this.documentStore = documentStore;
+	}
 
+	public OntologyRegistry getOntologyRegistry() {
+		return registry;
+	}
 
+	public SnapshotStore getSnapshotStore() {
+		return snapshotStore;
 	}
 
-	/*
-	 * Search Routines
-	 */
+	public void setSnapshotStore(SnapshotStore snapshotStore) {
+		this.snapshotStore = snapshotStore;
+	}
+
+	public int getResultLimit() {
+		return resultLimit;
+	}
 
 	/**
-	 * Loads and then searches ontology based on options
 	 * 
-	 * @author Josh Hanna
-	 * @return ArrayList of SearchResult that represents matching Object Properties and/or Classes (depending on options)
-	 * @throws IOException 
-	 * @throws OWLOntologyCreationException 
-	 * @throws Exception 
+	 * @param resultLimit number of results shown before a search waits for {@link #showMoreResults()}
 	 */
-	public void search() throws OWLOntologyCreationException, IOException {
-
-		results.clear();
-		synchronized(results){
+	public void setResultLimit(int resultLimit) {
+		this.resultLimit = resultLimit;
+	}
 
-			loadOntology();
+	public void setSearchListener(SearchListener searchListener) {
+		this.searchListener = searchListener;
+	}
 
+	/**
+	 * 
+	 * @param loadListener notified of the progress of every load
+	 */
+	public void setLoadListener(LoadListener loadListener) {
+		this.loadListener = loadListener;
+	}
 
-			if(this.searchClassesFlag()){
-				results.addAll(this.searchByClass());
-			}
-            
-			if(this.searchObjectPropertiesFlag()){
-				results.addAll(this.searchByObjectProperty());
-			}
+	public void setUrl(String ontUrl) {
+		this.ontUrl = ontUrl;
+	}
 
-			
-			results = this.removeDuplicates(results);
-		}
 
+	public OWLOntologyManager getAdditionalManager() {
+		return this.man;
 	}
 
-	private ArrayList<SearchResult> removeDuplicates(ArrayList<SearchResult> results) {
-		ArrayList<SearchResult> searchList = new ArrayList<SearchResult>(results);
-		ArrayList<SearchResult> processed = new ArrayList<SearchResult>();
-		for(SearchResult result1 : searchList){
-
-			for(SearchResult result2 : searchList){
-				if(!processed.contains(result2)){
-					if(!result1.equals(result2)){
+	public OWLDataFactory getAdditionalFactory() {
+		return this.factory;
+	}
 
+	public OWLOntology getAdditonalOntology() {
+		return this.ontology;
+	}
 
-						if(result1.getIRI().toString().equalsIgnoreCase(result2.getIRI().toString())){
+	public SearchIndex getSearchIndex() {
+		return this.index;
+	}
 
-							results.remove(result2);
-						}
-					}
-				}
-			}
-			processed.add(result1);
-		}
-		return results;
+	/**
+	 * 
+	 * @return results of the latest search whose results reached the table
+	 */
+	public List<SearchResult> getResults(){
+		return this.results;
+	}
 
+	public void setFile(File ontFile){
+		this.ontFile = ontFile;
 	}
 
 	/**
+	 * Loads ontology using URI passed in earlier
 	 * 
 	 * @author Josh Hanna
-	 * @return ArrayList<SearchResult> representing all matching Object Properties
+	 * @param cancellation stops waiting for the load once set
+	 * @throws IOException 
+	 * @throws OWLOntologyCreationException 
+	 * @throws Exception 
 	 */
-	public ArrayList<SearchResult> searchByObjectProperty(){
-		OWLDataFactory df = getAdditionalFactory();
-		String lowerCaseQuery = query.toLowerCase();
+	private void loadOntology(SearchCancellation cancellation) throws IOException, OWLOntologyCreationException {
 
-		ArrayList<SearchResult> resultList = new ArrayList<SearchResult>();
+		if(this.loaded != null && this.isSameOntology()){
+			//same ontology, no need to reload
+			return;
+		}
 
-		OWLAnnotationProperty label = df.getOWLAnnotationProperty(OWLRDFVocabulary.RDFS_LABEL.getIRI());		
-		OWLAnnotationProperty comment = df.getOWLAnnotationProperty(OWLRDFVocabulary.RDFS_COMMENT.getIRI());		
-		OWLAnnotationProperty definition = df.getOWLAnnotationProperty(IRI
-				.create("http://purl.obolibrary.org/obo/IAO_0000115"));
+		//the old source is only kept once it is loaded, so a cancelled or failed load is tried again
+		this.oldOntUrl = null;
+		this.oldOntFile = null;
+		this.loaded = null;
 
-		if (this.searchByLabelFlag()) {
+		LoadedOntology loaded = load(ontUrl, ontFile, cancellation);
+		this.man = loaded.getManager();
+		this.ontology = loaded.getOntology();
+		this.factory = man.getOWLDataFactory();
+		this.index = loaded.getIndex();
+		this.loaded = loaded;
 
-			resultList.addAll(searchObjectProperties(lowerCaseQuery, label));
+		//keeping track of old source
+		this.oldOntUrl = this.ontUrl;
+		this.oldOntFile = this.ontFile;
+	}
 
+	/**
+	 * Starts loading and indexing the ontology at url, or else in file, in the background, so
+	 * the first search of it doesn't wait for all of it
+	 * 
+	 * @param url
+	 * @param file
+	 */
+	public void preload(String url, File file) {
+		if(url != null || file != null){
+			this.startLoad(url, file);
 		}
+	}
 
-		if (this.searchByDefinitionFlag()) {
-
-			resultList.addAll(searchObjectProperties(lowerCaseQuery, definition));
-
+	/**
+	 * Waits for the ontology at url, or else in file, to be loaded, joining a load already in progress
+	 * 
+	 * @param url
+	 * @param file
+	 * @param cancellation stops waiting once set; the load itself goes on, for the next search of it
+	 * @return the loaded ontology, also added to the registry
+	 * @throws IOException
+	 * @throws OWLOntologyCreationException
+	 * @throws CancellationException if cancellation was set or the thread interrupted while waiting
+	 */
+	private LoadedOntology load(String url, File file, SearchCancellation cancellation)
+			throws IOException, OWLOntologyCreationException {
+		if(url == null && file == null){
+			showError("Could not load ontology: Either ontology file or URL must exist.");
+			throw new IOException("Either ontology file or URL must exist.");
 		}
 
-		if (this.searchByCommentFlag()) {
-
-			resultList.addAll(searchObjectProperties(lowerCaseQuery, comment));
-
-		}
-        
-        if(this.searchByURIFlag()) {
-			
-			resultList.addAll(this.searchObjectProperties(lowerCaseQuery));
+		try {
+			return await(this.startLoad(url, file), cancellation);
+		} catch (InterruptedException e) {
+			throw new CancellationException("Interrupted while loading the ontology");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException){
+				throw (IOException) cause;
+			} else if(cause instanceof OWLOntologyCreationException){
+				throw (OWLOntologyCreationException) cause;
+			} else if(cause instanceof RuntimeException){
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
 		}
-
-		return resultList;
 	}
-    
-    
 
 	/**
+	 * Waits for future, checking cancellation while it does, so a search superseded while it
+	 * waits for a load gives way to the next one at once
 	 * 
-	 * @author Josh Hanna
-	 * @return ArrayList<SearchResult> representing all matching Classes
+	 * @param future
+	 * @param cancellation
+	 * @return the result of future
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 * @throws CancellationException if cancellation was set while waiting
 	 */
-	public ArrayList<SearchResult> searchByClass() {
-
-		OWLDataFactory df = getAdditionalFactory();
-
-		String lowercaseQuery = query.toLowerCase();
-
-		ArrayList<SearchResult> resultList = new ArrayList<SearchResult>();
-
-
-		OWLAnnotationProperty label = df.getOWLAnnotationProperty(OWLRDFVocabulary.RDFS_LABEL.getIRI());
+	private static <T> T await(Future<T> future, SearchCancellation cancellation)
+			throws InterruptedException, ExecutionException {
+		while(true){
+			cancellation.checkCancelled();
+			try {
+				return future.get(WAIT_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				//still running
+			}
+		}
+	}
 
+	/**
+	 * 
+	 * @param url
+	 * @param file
+	 * @return the ontology from the registry, the load of it in progress or else a new load
+	 */
+	private Future<LoadedOntology> startLoad(final String url, final File file) {
 
-		OWLAnnotationProperty comment = df.getOWLAnnotationProperty(OWLRDFVocabulary.RDFS_COMMENT.getIRI());
-		
-		OWLAnnotationProperty definition = df.getOWLAnnotationProperty(IRI.create("http://purl.obolibrary.org/obo/IAO_0000115"));
-		
+		//switching back to an ontology that is still loaded costs nothing
+		final String source = url != null ? url : file.getAbsolutePath();
+		final long stamp = url == null ? file.lastModified() * 31 + file.length() : 0;
 
+		synchronized(pendingLoads){
+			Future<LoadedOntology> pending = pendingLoads.get(source);
+			if(pending != null){
+				return pending;
+			}
 
-		if (this.searchByLabelFlag()) {
+			LoadedOntology loaded = registry.get(source, stamp);
+			if(loaded != null){
+				return CompletableFuture.completedFuture(loaded);
+			}
 
-			resultList.addAll(this.searchClasses(lowercaseQuery, label));
-			
+			final LoadMonitor monitor = this.createLoadMonitor(source);
 
+			FutureTask<LoadedOntology> load = new FutureTask<LoadedOntology>(new Callable<LoadedOntology>() {
+				@Override
+				public LoadedOntology call() throws Exception {
+					try {
+						return loadNow(source, url, file, stamp, monitor);
+					} finally {
+						//by now a successful load is in the registry; a cancelled one is no longer pending
+						synchronized(pendingLoads){
+							if(loadMonitors.get(source) == monitor){
+								pendingLoads.remove(source);
+								loadMonitors.remove(source);
+							}
+						}
+						postLoadEvent(monitor, true);
+					}
+				}
+			});
+			pendingLoads.put(source, load);
+			loadMonitors.put(source, monitor);
+			loadExecutor.execute(load);
+			return load;
 		}
+	}
 
-		if (this.searchByCommentFlag()) {
-			
-
-			resultList.addAll(this.searchClasses(lowercaseQuery, comment));
-
+	/**
+	 * Cancels every load in progress.  Searches waiting for one of them stop waiting at once,
+	 * and the loads give up at their next check, keeping nothing of what they read.
+	 */
+	public void cancelLoading() {
+		synchronized(pendingLoads){
+			for(LoadMonitor monitor : loadMonitors.values()){
+				monitor.cancel();
+			}
+			for(Future<LoadedOntology> load : pendingLoads.values()){
+				load.cancel(false);
+			}
+			pendingLoads.clear();
+			loadMonitors.clear();
 		}
+	}
 
+	/**
+	 * Loads and indexes the ontology at url, or else in file, and adds it to the registry
+	 * 
+	 * @throws CancellationException if monitor was cancelled
+	 */
+	private LoadedOntology loadNow(String source, String url, File file, long stamp, final LoadMonitor monitor)
+			throws OWLOntologyCreationException {
 
-		if (this.searchByDefinitionFlag()) {
-			
+		//parallel indexing reads the ontology from several threads, which needs the thread safe manager
+		OWLOntologyManager man = parallelSearch ? OWLManager.createConcurrentOWLOntologyManager() : OWLManager.createOWLOntologyManager();
 
-			resultList.addAll(this.searchClasses(lowercaseQuery, definition));
+		//the axioms searching and copying terms don't use are dropped as they are parsed
+		FilteredOntologyBuilder filter = filteredLoad ? FilteredOntologyBuilder.install(man, parallelSearch) : null;
 
+		//the documents of the load, imports included, are kept in the document store until it is done
+		final List<String> pinned = Collections.synchronizedList(new ArrayList<String>());
+		if(url != null){
+			documentStore.pin(url);
+			pinned.add(url);
 		}
-		
-		if(this.searchByURIFlag()) {
-			
-			resultList.addAll(this.searchClasses(lowercaseQuery));
-		}
-		
 
+		try {
+			//documents, imports included, are read from their local copies when unchanged, and
+			//downloaded as part of the load; once the load is cancelled no more imports are resolved
+			man.addIRIMapper(new OWLOntologyIRIMapper() {
+				@Override
+				public IRI getDocumentIRI(IRI ontologyIRI) {
+					monitor.checkCancelled();
+					documentStore.pin(ontologyIRI.toString());
+					pinned.add(ontologyIRI.toString());
+
+					IRI document = documentStore.getDocumentIRI(ontologyIRI, monitor);
+					monitor.checkCancelled();
+					return document;
+				}
+			});
+
+			//downloading an import is a stage of its own, the imports loaded so far are counted on
+			final AtomicLong importsLoaded = new AtomicLong();
+			man.addOntologyLoaderListener(new OWLOntologyLoaderListener() {
+				@Override
+				public void startedLoadingOntology(LoadingStartedEvent event) {
+					if(event.isImported() && monitor.getStage() != LoadMonitor.Stage.IMPORTS){
+						monitor.begin(LoadMonitor.Stage.IMPORTS, -1);
+						monitor.add(importsLoaded.get());
+					}
+				}
 
-		return resultList;
-	}
-
-	/**
-	 * 
-	 * @author Josh Hanna
-	 * @param query
-	 * @param annotationProperty
-	 * @return ArrayList<SearchResults> of any object properties that contain an annotation of type annotationProperty that matches query
-	 */
-	private ArrayList<SearchResult> searchObjectProperties(String query, OWLAnnotationProperty annotationProperty) {
+				@Override
+				public void finishedLoadingOntology(LoadingFinishedEvent event) {
+					if(event.isImported()){
+						importsLoaded.incrementAndGet();
+						monitor.add(1);
+					}
+				}
+			});
 
-		//list of ontology and imports
-		ArrayList<OWLOntology> ontologies = new ArrayList<OWLOntology>();
+			byte[] documentHash = getDocumentHash(url, file, monitor);
+			monitor.checkCancelled();
 
-		ontologies.add(ontology);
-		
-		Set<OWLOntology> imports = getAdditionalManager().getImports(ontology);
+			//the document just fetched or hashed, read from its local copy
+			File document = url != null ? documentStore.getCachedFile(url) : file;
 
-		for(OWLOntology ont : imports){
-			ontologies.add(ont);
-		}
+			if(streamingLoad && document != null){
+				LoadedOntology streamed = this.streamNow(source, url, document, documentHash, stamp, man, monitor);
+				if(streamed != null){
+					if(url != null){
+						documentStore.pin(url);
+					}
+					registry.put(streamed);
+					return streamed;
+				}
+			}
 
-		ArrayList<SearchResult> resultList = new ArrayList<SearchResult>();
+			//a filtered ontology has its own snapshot, apart from the full one
+			byte[] snapshotKey = documentHash == null || filter == null ? documentHash : FilteredOntologyBuilder.snapshotKey(documentHash);
 
-		for(OWLOntology ont : ontologies){
-			for (OWLObjectProperty objectProperty : ont.getObjectPropertiesInSignature()) {
+			boolean fromSnapshot = false;
+			OWLOntology ontology = null;
 
-				// Get the annotations on the object property that use the annotation property
-				for (OWLAnnotation annotation : EntitySearcher.getAnnotations(objectProperty.getIRI(), ont, annotationProperty)) {
+			try {
+				System.out.println("Loading ontology...");
 
-					if (annotation.getValue() instanceof OWLLiteral) {
-						OWLLiteral val2 = (OWLLiteral) annotation.getValue();
+				//parsed before, the snapshot holds the same axioms
+				monitor.begin(LoadMonitor.Stage.PARSE, -1);
+				OWLOntology snapshot = snapshotKey == null ? null : snapshotStore.load(snapshotKey, man);
 
-						if (val2.getLiteral().toString().toLowerCase().contains(query)) {
-							IRI labelIri = objectProperty.getIRI();
+				if(snapshot != null){
+					ontology = snapshot;
+					fromSnapshot = true;
+				} else if(document != null){
+					//parsed through a stream counting its bytes
+					ontology = man.loadOntologyFromOntologyDocument(new MonitoredDocumentSource(document, monitor));
+				} else {
 
-							String labelName = getLabel(objectProperty, ont);
-							String matchType = annotationProperty.toString();
+					ontology = man.loadOntology(IRI.create(url));
 
-							String matchContext = val2.getLiteral();
+				}
 
-							SearchResult resultItem = new ObjectPropertySearchResult(labelIri, labelName, matchType, matchContext, objectProperty, ontology);
-							resultList.add(resultItem);
-						}
-					}
+			} catch (OWLOntologyCreationException e) {
+				if(monitor.isCancelled()){
+					throw new CancellationException("Loading " + source + " cancelled");
 				}
-			}
-		}
-		return resultList;
-	}
-    
-    private ArrayList<SearchResult> searchObjectProperties(String query) {
 
-		//list of ontology and imports
-		ArrayList<OWLOntology> ontologies = new ArrayList<OWLOntology>();
+				showError("Could not load ontology: " + e.getMessage());
+				e.printStackTrace();
 
-		ontologies.add(ontology);
-		
-		Set<OWLOntology> imports = getAdditionalManager().getImports(ontology);
+				throw e;
+			}
 
-		for(OWLOntology ont : imports){
-			ontologies.add(ont);
-		}
+			monitor.checkCancelled();
 
-		ArrayList<SearchResult> resultList = new ArrayList<SearchResult>();
+			System.out.println(fromSnapshot ? "Loading finished from snapshot." : "Loading finished.");
 
-		for(OWLOntology ont : ontologies){
-			for (OWLObjectProperty objectProperty : ont.getObjectPropertiesInSignature()) {
+			List<OWLOntology> imports = new ArrayList<OWLOntology>(man.getImports(ontology));
+			if(snapshotKey != null && !fromSnapshot){
+				storeSnapshot(snapshotKey, ontology, imports, parallelSearch);
+			}
 
-				String uri = objectProperty.toStringID().toLowerCase();
+			//the index is built once per loaded ontology and reused by every search
+			String cacheKey = IndexCache.key(ontology, imports, documentHash, labelLanguages);
 
-				if(uri.equals(query)){	
-					
-					IRI labelIri = objectProperty.getIRI();
+			monitor.begin(LoadMonitor.Stage.INDEX, -1);
 
-					String labelName = getLabel(objectProperty, ont);
-					String matchType = "URI";
-					String matchContext = "NA";
+			SearchIndex index = cacheKey == null ? null : indexCache.load(cacheKey, ontology, imports, man.getOWLDataFactory());
+			if(index == null){
+				System.out.println("Indexing ontology...");
+				index = SearchIndex.build(ontology, imports, labelLanguages, parallelSearch, monitor);
+				System.out.println("Indexing finished: " + index.getEntryCount() + " entries.");
 
-					//String matchContext = val2.getLiteral();
+				if(cacheKey != null){
+					storeIndex(cacheKey, index, null);
+				}
+			}
 
-					SearchResult resultItem = new ObjectPropertySearchResult(labelIri, labelName, matchType, matchContext, objectProperty, ontology);
+			monitor.checkCancelled();
 
-					resultList.add(resultItem);
-				}
+			LoadedOntology loaded = new LoadedOntology(source, man, ontology, index, stamp);
+			registry.put(loaded);
+			return loaded;
+
+		} catch (CancellationException e) {
+			//nothing read by the cancelled load is kept
+			for(OWLOntology loadedOntology : new ArrayList<OWLOntology>(man.getOntologies())){
+				man.removeOntology(loadedOntology);
+			}
+			System.out.println("Loading " + source + " cancelled.");
+			throw e;
+		} finally {
+			for(String pinnedUrl : pinned){
+				documentStore.unpin(pinnedUrl);
 			}
 		}
-		return resultList;
 	}
-	
 
 	/**
+	 * Indexes document as it streams past, without loading it
 	 * 
-	 * @author Josh Hanna
-	 * @param query
-	 * @param annotationProperty
-	 * @return ArrayList<SearchResults> of any classes that contain an annotation of type annotationProperty that matches query
+	 * @return the streamed ontology, or null if document is in a format that can't be streamed or can't be read
+	 * @throws CancellationException if monitor was cancelled
 	 */
-	private ArrayList<SearchResult> searchClasses(String query, OWLAnnotationProperty annotationProperty){
-		
+	private LoadedOntology streamNow(String source, String url, File document, byte[] documentHash, long stamp,
+			OWLOntologyManager man, LoadMonitor monitor) {
+		String documentIRI = url != null ? url : document.toURI().toString();
 
-		//list of ontology and imports
-		ArrayList<OWLOntology> ontologies = new ArrayList<OWLOntology>();
-		ontologies.add(ontology);
-		
-		Set<OWLOntology> imports = getAdditionalManager().getImports(ontology);
-		
+		try {
+			StreamingParser.Format format = StreamingParser.detect(document);
+			if(format == null){
+				return null;
+			}
 
-		for(OWLOntology ont : imports) {
-			ontologies.add(ont);
-		}
-		
+			String cacheKey = documentHash == null ? null : IndexCache.key(documentHash, labelLanguages);
+			SearchIndex index = cacheKey == null ? null : indexCache.load(cacheKey, man.getOWLDataFactory());
+			DocumentOutline outline = null;
 
-		ArrayList<SearchResult> resultList = new ArrayList<SearchResult>();
+			if(index != null){
+				outline = DocumentOutline.read(indexCache.getCompanionFile(cacheKey, OUTLINE_SUFFIX));
+			} else {
+				DocumentOutline.Recorder recorder = new DocumentOutline.Recorder();
+				index = StreamingLoader.index(document, format, documentIRI, labelLanguages, man.getOWLDataFactory(),
+						monitor, recorder);
+				outline = recorder.finish();
 
-		for(OWLOntology ont : ontologies){
-			
-			for (OWLClass cls : ont.getClassesInSignature()) {
+				if(cacheKey != null){
+					storeIndex(cacheKey, index, outline);
+				}
+			}
 
+			monitor.checkCancelled();
+			return new LoadedOntology(source, man, index, stamp, document, outline);
 
-				// Get the annotations on the class that use the label property
-				for (OWLAnnotation annotation : EntitySearcher.getAnnotations(cls.getIRI(), ont, annotationProperty)) {
+		} catch (IOException e) {
+			//loaded the usual way instead
+			monitor.checkCancelled();
+			return null;
+		}
+	}
 
+	/**
+	 * Gives the ontology to copy an entity found in source from: the source ontology when it
+	 * is loaded, or else a new ontology holding the entity's annotations, read back from the
+	 * document it was streamed from.  Reading the document takes a while, so call this off
+	 * the event dispatch thread for streamed sources.
+	 * 
+	 * @param source
+	 * @param entity
+	 * @return the ontology
+	 * @throws IOException if the document is no longer available or can't be read
+	 * @throws OWLOntologyCreationException
+	 */
+	public OWLOntology getEntityOntology(LoadedOntology source, OWLEntity entity) throws IOException, OWLOntologyCreationException {
+		if(!source.isStreamed()){
+			return source.getOntology();
+		}
 
-					if (annotation.getValue() instanceof OWLLiteral) {
-						OWLLiteral val2 = (OWLLiteral) annotation.getValue();
+		File document = source.getDocument();
+		if(!document.isFile()){
+			throw new IOException("The document of " + source.getSource() + " is no longer available.");
+		}
 
-						if (val2.getLiteral().toString().toLowerCase().contains(query)) {
-							IRI labelIri = cls.getIRI();
+		String documentIRI = isFile(source.getSource()) ? document.toURI().toString() : source.getSource();
+		return StreamingLoader.extract(document, documentIRI, entity, OWLManager.createOWLOntologyManager(),
+				source.getOutline());
+	}
 
-							String labelName = getLabel(cls, ont);
-							String matchType = annotationProperty.toString();
+	/**
+	 * Brings the local copy of a URL up to date first, so the hash is that of the document about to be loaded
+	 * 
+	 * @param monitor told the bytes downloaded
+	 * @return content hash of the document to load, or null if it can't be read
+	 */
+	private byte[] getDocumentHash(String url, File file, LoadMonitor monitor) {
+		try {
+			if(url != null){
+				documentStore.fetch(url, monitor);
+				return documentStore.getContentHash(url);
+			} else if(file != null){
+				return IndexCache.hash(file);
+			}
+		} catch (IOException e) {
+			System.out.println("Could not read the ontology document: " + e.getMessage());
+		}
+		return null;
+	}
 
-							String matchContext = val2.getLiteral();
+	/**
+	 * Shows message in a dialog on the event dispatch thread, since loads report errors from their own threads
+	 */
+	private static void showError(final String message) {
+		EventQueue.invokeLater(new Runnable(){
 
-							ClassSearchResult LabelResultList = new ClassSearchResult(labelIri, labelName, matchType, matchContext, cls, ontology);
+			@Override
+			public void run() {
+				JOptionPane.showMessageDialog(null, message);
+			}
 
-							resultList.add(LabelResultList);
-						}
-					}
+		});
+	}
+
+	/**
+	 * 
+	 * @param source
+	 * @return monitor of a new load of source, passing its progress on to the load listener
+	 */
+	private LoadMonitor createLoadMonitor(String source) {
+		return new LoadMonitor(source) {
+			private Stage postedStage;
+			private long postedTime;
+
+			@Override
+			protected synchronized void changed() {
+				//every new stage is posted, progress within a stage ten times a second at most
+				long now = System.currentTimeMillis();
+				if(getStage() == postedStage && now - postedTime < 100){
+					return;
 				}
+				postedStage = getStage();
+				postedTime = now;
+				postLoadEvent(this, false);
 			}
+		};
+	}
+
+	private void postLoadEvent(final LoadMonitor monitor, final boolean finished) {
+		final LoadListener listener = loadListener;
+		if(listener == null){
+			return;
 		}
 
-		return resultList;
+		EventQueue.invokeLater(new Runnable(){
+
+			@Override
+			public void run() {
+				if(finished){
+					listener.loadFinished(monitor);
+				} else {
+					listener.loadProgress(monitor);
+				}
+			}
+
+		});
 	}
-	
-	private ArrayList<SearchResult> searchClasses(String query){
-		
 
-		//list of ontology and imports
-		ArrayList<OWLOntology> ontologies = new ArrayList<OWLOntology>();
-		ontologies.add(ontology);
-		
-		Set<OWLOntology> imports = getAdditionalManager().getImports(ontology);
-		
+	/**
+	 * Writes a snapshot of the freshly parsed ontology, so the next load can skip parsing.  With the
+	 * thread safe manager it is written on the load executor, while the ontology is indexed.
+	 */
+	private void storeSnapshot(final byte[] documentHash, final OWLOntology ontology, final List<OWLOntology> imports,
+			boolean background) {
+		Runnable store = new Runnable() {
+			@Override
+			public void run() {
+				snapshotStore.store(documentHash, ontology, imports);
+			}
+		};
 
-		for(OWLOntology ont : imports) {
-			ontologies.add(ont);
+		if(!background){
+			store.run();
+			return;
 		}
-		
 
-		ArrayList<SearchResult> resultList = new ArrayList<SearchResult>();
+		loadExecutor.execute(store);
+	}
+
+	/**
+	 * Writes index, and the outline of its streamed document if any, to the cache on the
+	 * load executor, so the first search doesn't wait for the disk
+	 */
+	private void storeIndex(final String cacheKey, final SearchIndex index, final DocumentOutline outline) {
+		loadExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				indexCache.store(cacheKey, index);
+				if(outline != null){
+					try {
+						outline.write(indexCache.getCompanionFile(cacheKey, OUTLINE_SUFFIX));
+					} catch (IOException e) {
+						System.out.println("Could not cache document outline: " + e.getMessage());
+					}
+				}
+			}
+		});
+	}
+
+	/*
+	 * Search Routines
+	 */
+
+	/**
+	 * Loads and then searches ontology based on options
+	 * 
+	 * @author Josh Hanna
+	 * @return ArrayList of SearchResult that represents matching Object Properties and/or Classes (depending on options)
+	 * @throws IOException 
+	 * @throws OWLOntologyCreationException 
+	 * @throws Exception 
+	 */
+	public void search() throws OWLOntologyCreationException, IOException {
+
+		results = this.search(new SearchCancellation()).next(Integer.MAX_VALUE);
+
+	}
 
-		for(OWLOntology ont : ontologies){
-			
-			for (OWLClass cls : ont.getClassesInSignature()) {
+	/**
+	 * Loads and then searches ontology based on options, giving up once cancellation is set
+	 * 
+	 * @param cancellation
+	 * @return ResultStream over the matching Object Properties and/or Classes (depending on options)
+	 * @throws IOException 
+	 * @throws OWLOntologyCreationException 
+	 * @throws CancellationException if the search was cancelled
+	 */
+	private ResultStream search(SearchCancellation cancellation) throws OWLOntologyCreationException, IOException {
 
-				String uri = cls.toStringID().toLowerCase();
-				if(uri.equals(query)){	
-					
-					IRI labelIri = cls.getIRI();
+		List<String> sources = federatedSources;
+		if(!sources.isEmpty()){
+			return this.searchFederated(sources, this.getEnabledTypes(), cancellation);
+		}
 
-					String labelName = getLabel(cls, ont);
-					String matchType = "URI";
-					String matchContext = "NA";
+		loadOntology(cancellation);
 
-					//String matchContext = val2.getLiteral();
+		cancellation.checkCancelled();
 
-					ClassSearchResult LabelResultList = new ClassSearchResult(labelIri, labelName, matchType, matchContext, cls, ontology);
+		//classes and object properties are matched in the same pass
+		SourceResults results = this.searchEntities(loaded, this.getEnabledTypes(), cancellation);
+		return new ResultStream(Collections.singletonList(results), cancellation);
+	}
 
-					resultList.add(LabelResultList);
+	/**
+	 * Loads and searches every source on its own worker, so the search takes as long as the
+	 * slowest source rather than all of them in turn.  A source that can't be loaded is left out.
+	 * 
+	 * @param sources URLs or file paths
+	 * @param types entity types to search
+	 * @param cancellation
+	 * @return ResultStream merging the results of every source by rank
+	 * @throws IOException if no source could be searched
+	 * @throws CancellationException if the search was cancelled
+	 */
+	private ResultStream searchFederated(List<String> sources, final Set<EntityType<?>> types,
+			final SearchCancellation cancellation) throws IOException {
+
+		List<Future<SourceResults>> workers = new ArrayList<Future<SourceResults>>(sources.size());
+		for(final String source : sources){
+			workers.add(sourceExecutor.submit(new Callable<SourceResults>() {
+				@Override
+				public SourceResults call() throws Exception {
+					LoadedOntology loaded = isFile(source)
+							? load(null, new File(source), cancellation) : load(source, null, cancellation);
+
+					cancellation.checkCancelled();
+
+					SourceResults results = searchEntities(loaded, types, cancellation);
+
+					//ranked here as well, so merging only picks among the best of each source
+					results.prepare(resultLimit);
+					return results;
+				}
+			}));
+		}
+
+		List<SourceResults> results = new ArrayList<SourceResults>(sources.size());
+		try {
+			for(int i = 0; i < workers.size(); i++){
+				try {
+					results.add(await(workers.get(i), cancellation));
+				} catch (ExecutionException e) {
+					if(e.getCause() instanceof CancellationException){
+						throw (CancellationException) e.getCause();
+					}
+					System.out.println("Could not search " + sources.get(i) + ": " + e.getCause());
+				}
+			}
+		} catch (InterruptedException e) {
+			throw new CancellationException("Search interrupted");
+		} finally {
+			if(cancellation.isCancelled()){
+				//the workers stop at their own next check
+				for(Future<SourceResults> worker : workers){
+					worker.cancel(false);
 				}
 			}
 		}
 
-		return resultList;
+		if(results.isEmpty()){
+			throw new IOException("None of the ontologies could be searched.");
+		}
+
+		return new ResultStream(results, cancellation);
 	}
 
+	/**
+	 * 
+	 * @author Josh Hanna
+	 * @return List<SearchResult> representing all matching Object Properties
+	 */
+	public List<SearchResult> searchByObjectProperty(){
+		Set<EntityType<?>> types = new HashSet<EntityType<?>>();
+		types.add(EntityType.OBJECT_PROPERTY);
+
+		SearchCancellation cancellation = new SearchCancellation();
+		SourceResults results = this.searchEntities(loaded, types, cancellation);
+		return new ResultStream(Collections.singletonList(results), cancellation).next(Integer.MAX_VALUE);
+	}
+    
+    
 
 	/**
 	 * 
 	 * @author Josh Hanna
-	 * @param entity
-	 * @param ontology
-	 * @return A String that represents the first english Label on an OWL Entity
+	 * @return List<SearchResult> representing all matching Classes
+	 */
+	public List<SearchResult> searchByClass() {
+		Set<EntityType<?>> types = new HashSet<EntityType<?>>();
+		types.add(EntityType.CLASS);
+
+		SearchCancellation cancellation = new SearchCancellation();
+		SourceResults results = this.searchEntities(loaded, types, cancellation);
+		return new ResultStream(Collections.singletonList(results), cancellation).next(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Matches every enabled field (label, synonyms, comment, definition, URI) in a single visit per entity
+	 * 
+	 * @param source loaded ontology to search
+	 * @param types entity types to search
+	 * @param cancellation checked once per batch of entities
+	 * @return SourceResults with one result per matching IRI, carrying all of its matched fields
 	 */
-	String getLabel(OWLEntity entity, OWLOntology ontology) {
+	private SourceResults searchEntities(LoadedOntology source, Set<EntityType<?>> types, SearchCancellation cancellation) {
+		String normalizedQuery = SearchKeys.normalize(query);
 
-		OWLDataFactory df = getAdditionalFactory();
+		Set<SearchField> fields = this.getEnabledFields();
 
-		String label = "";
-		OWLAnnotationProperty labelProperty = df
-				.getOWLAnnotationProperty(OWLRDFVocabulary.RDFS_LABEL.getIRI());
+		SearchIndex index = source.getIndex();
+		index.setParallel(parallelSearch);
 
-		// Get the annotations on the class that use the label property
-		for (OWLAnnotation annotation : EntitySearcher.getAnnotations(entity.getIRI(), ontology, labelProperty)) {
-			if (annotation.getValue() instanceof OWLLiteral) {
-				OWLLiteral val = (OWLLiteral) annotation.getValue();
-				if (val.hasLang("en") || !val.hasLang()) {
-					label = val.getLiteral().toString();
-				} else {
-					String ClassString = entity.getIRI().toString();
-					label = ClassString.substring(ClassString
-							.indexOf("#") + 1);
+		int maxEdits = searchFuzzy ? BKTree.defaultMaxEdits(normalizedQuery) : 0;
+
+		int[] entries = index.search(query, fields, types, maxEdits, cancellation);
+
+		return new SourceResults(source, entries, normalizedQuery, cancellation);
+	}
+
+	private Set<EntityType<?>> getEnabledTypes() {
+		Set<EntityType<?>> types = new HashSet<EntityType<?>>();
+
+		if(this.searchClassesFlag()){
+			types.add(EntityType.CLASS);
+		}
+
+		if(this.searchObjectPropertiesFlag()){
+			types.add(EntityType.OBJECT_PROPERTY);
+		}
+
+		return types;
+	}
+
+	/**
+	 * 
+	 * @return the fields the search options say to search
+	 */
+	public Set<SearchField> getEnabledFields() {
+		Set<SearchField> fields = EnumSet.noneOf(SearchField.class);
+
+		if (this.searchByLabelFlag()) {
+			fields.add(SearchField.LABEL);
+		}
+		if (this.searchByCommentFlag()) {
+			fields.add(SearchField.COMMENT);
+		}
+		if (this.searchByDefinitionFlag()) {
+			fields.add(SearchField.DEFINITION);
+		}
+		if (this.searchByURIFlag()) {
+			fields.add(SearchField.URI);
+		}
+		if (this.searchBySynonymFlag()) {
+			for (SearchField field : SearchField.values()) {
+				if (field.isSynonym()) {
+					fields.add(field);
 				}
 			}
 		}
-		return label;
+
+		return fields;
+	}
+
+	/**
+	 * 
+	 * @param factory
+	 * @return match type shown to the user for each field, the annotation property for annotation fields
+	 */
+	private static String[] createMatchTypes(OWLDataFactory factory) {
+		SearchField[] fields = SearchField.values();
+		String[] matchTypes = new String[fields.length];
+		for(SearchField field : fields){
+			matchTypes[field.ordinal()] = field.getPropertyIRI() == null
+					? "URI" : factory.getOWLAnnotationProperty(field.getPropertyIRI()).toString();
+		}
+		return matchTypes;
+	}
+
+	/**
+	 * 
+	 * @param source URL or file path
+	 * @return true if source is a file path; URLs are never absolute paths
+	 */
+	private static boolean isFile(String source) {
+		return new File(source).isAbsolute();
+	}
+
+	/**
+	 * 
+	 * @param source URL or file path
+	 * @return the last segment of source, shown in the ontology column
+	 */
+	public static String getSourceName(String source) {
+		if(source == null){
+			return "";
+		}
+		String name = source;
+		while(name.endsWith("/") || name.endsWith(File.separator)){
+			name = name.substring(0, name.length() - 1);
+		}
+		int slash = Math.max(name.lastIndexOf('/'), name.lastIndexOf(File.separatorChar));
+		return name.substring(slash + 1);
 	}
 
+
 	public boolean isSameOntology(){
 		if(ontUrl != null && oldOntUrl != null && ontUrl.equals(oldOntUrl)){
 			return true;
@@ -629,170 +1270,706 @@ public class AdditionalOntologySearcher {
 		return false;
 	}
 
-	public synchronized void buildResultTable(final String[] columnNames, final DefaultTableModel tableModel,
+	public synchronized void buildResultTable(final String[] columnNames, final ResultTableModel tableModel,
 			final JTable resultTable) {
 
 
 		//if it's the same search as last time, no need to do anything
 		if((!optionsChanged) && (this.query.equalsIgnoreCase(this.oldQuery) && this.isSameOntology())){
 			return;
+		} else if(!optionsChanged && this.isSameOntology() && currentTask != null && currentTask.canRefine(query)){
+
+			//the query extends the last one, so its results are narrowed instead of searched again
+			oldQuery = query;
+
+			final SearchTask task = currentTask;
+			final String refinedQuery = query;
+			currentSearch = searchExecutor.submit(new Runnable(){
+				public void run(){
+					task.refine(refinedQuery);
+				}
+			});
+
 		} else {
 
 			oldQuery = query;
 			optionsChanged = false;
 
-			Thread t = new Thread() {
-				public void run(){
+			//a new search supersedes the one in flight, which stops at its next batch of entities
+			if(currentSearch != null){
+				currentCancellation.cancel();
+				currentSearch.cancel(false);
+			}
 
+			currentCancellation = new SearchCancellation();
+			currentTask = new SearchTask(columnNames, tableModel, resultTable, query, currentCancellation);
 
-					this.clearTableModel(tableModel);
+			currentSearch = searchExecutor.submit(currentTask);
 
+		}
+	}
 
-					setStatus("Starting search", tableModel);
+	/**
+	 * Continues the latest search past its result limit, appending up to another
+	 * result limit of results to the table
+	 * 
+	 * @return false if the latest search has nothing more to show
+	 */
+	public synchronized boolean showMoreResults() {
+		final SearchTask task = currentTask;
 
-					try {
-						search();
-					} catch (Exception e) {
-						setStatus("Error", tableModel);
-						return;
-					} 
-					
+		if(task == null || !task.hasMore()){
+			return false;
+		}
+
+		currentSearch = searchExecutor.submit(new Runnable(){
+			public void run(){
+				task.streamResults(resultLimit);
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Cancels the search in flight and stops the search thread
+	 */
+	public synchronized void dispose() {
+		if(currentCancellation != null){
+			currentCancellation.cancel();
+		}
+		cancelLoading();
+		searchExecutor.shutdownNow();
+		sourceExecutor.shutdownNow();
+		loadExecutor.shutdownNow();
+		registry.dispose();
+	}
+
+	/**
+	 * Results of one search, merged from the results of each source searched: the next
+	 * result is always the best ranked one left in any source, ties going to the source
+	 * listed first.  Results are built on demand, so the first ones can be shown while
+	 * the rest are still waiting to be labelled.
+	 */
+	private class ResultStream {
+
+		private final List<SourceResults> sources;
+		private final SearchCancellation cancellation;
+		private final int total;
+
+		private volatile int position;
 
-					ArrayList<SearchResult> resultList = getResults();
+		ResultStream(List<SourceResults> sources, SearchCancellation cancellation) {
+			this(sources, cancellation, 0);
+		}
 
+		/**
+		 * 
+		 * @param sources
+		 * @param cancellation
+		 * @param shown number of results already shown, those the sources won't return again
+		 */
+		ResultStream(List<SourceResults> sources, SearchCancellation cancellation, int shown) {
+			this.sources = sources;
+			this.cancellation = cancellation;
+			this.position = shown;
+
+			int total = 0;
+			for(SourceResults source : sources){
+				total += source.size();
+			}
+			this.total = total;
+		}
+
+		/**
+		 * 
+		 * @param max
+		 * @return up to max results following the ones already returned, best first
+		 */
+		ResultStore next(int max) {
+			int available = 0;
+			for(SourceResults source : sources){
+				//every source then holds max ranked results, or all it has left
+				source.prepare(max);
+				available += source.available();
+			}
 
-					if (resultList.size() == 0) {
-						setStatus("No results", tableModel);
+			ResultStore batch = new ResultStore(matchTypes);
 
-					} else {
-						this.updateTable(resultList, resultTable, tableModel, columnNames);
+			while(batch.size() < max){
+				SourceResults best = null;
+				for(SourceResults source : sources){
+					if(source.available() > 0 && (best == null || source.peekScore() > best.peekScore())){
+						best = source;
 					}
 				}
+				if(best == null){
+					break;
+				}
+
+				if(batch.size() % SearchCancellation.BATCH_SIZE == 0){
+					cancellation.checkCancelled();
+				}
+				best.take(batch);
+				position++;
+			}
+			return batch;
+		}
 
-				private void setStatus(String str, final DefaultTableModel tableModel) {
+		boolean hasNext() {
+			for(SourceResults source : sources){
+				if(source.hasNext()){
+					return true;
+				}
+			}
+			return false;
+		}
 
-					final Object[][] status = new Object[1][1];
-					status[0][0] = str;
+		List<SourceResults> getSources() {
+			return sources;
+		}
 
-					final Object[] header = new Object[1];
-					header[0] = "Status";
+		/**
+		 * 
+		 * @return number of results returned so far
+		 */
+		int getPosition() {
+			return position;
+		}
 
-					EventQueue.invokeLater(new Runnable(){
+		/**
+		 * 
+		 * @return number of matching entities, over every source
+		 */
+		int size() {
+			return total;
+		}
+	}
 
-						@Override
-						public void run() {
-							tableModel.setDataVector(status, header);
-						}
+	/**
+	 * Matches of one search in one source, ranked by relevance and grouped per IRI.  Only
+	 * the best entities needed so far are ranked and kept; asking for results beyond them
+	 * ranks again with a larger bound.
+	 * 
+	 * Once refined, the results already shown are kept as they are and only the others are
+	 * ranked for the new query.
+	 */
+	private class SourceResults {
+
+		private final LoadedOntology source;
+		private final SearchIndex index;
+		private final int[] entries;
+		//entries of the entities not shown before, the ones ranked
+		private final int[] pending;
+		//entries of the results shown before these were refined, in table order
+		private final List<IntList> shown;
+		private final String query;
+		private final SearchCancellation cancellation;
+		private final ResultRanker ranker;
+		private final int total;
+
+		private volatile List<IntList> groups = new ArrayList<IntList>();
+		private IntList scores = new IntList();
+		private volatile boolean exhausted;
+		private volatile int position;
+
+		SourceResults(LoadedOntology source, int[] entries, String query, SearchCancellation cancellation) {
+			this(source, entries, Collections.<IntList>emptyList(), query, cancellation);
+		}
 
-					});
+		/**
+		 * 
+		 * @param source
+		 * @param entries every matching entry
+		 * @param shown entries of the results already shown, which are left out of the ranking
+		 * @param query
+		 * @param cancellation
+		 */
+		SourceResults(LoadedOntology source, int[] entries, List<IntList> shown, String query,
+				SearchCancellation cancellation) {
+			this.source = source;
+			this.index = source.getIndex();
+			this.entries = entries;
+			this.shown = shown;
+			this.query = query;
+			this.cancellation = cancellation;
+			this.ranker = new ResultRanker(index);
+			this.total = ranker.countEntities(entries);
+			this.pending = shown.isEmpty() ? entries : this.withoutShown();
+			this.exhausted = pending.length == 0;
+		}
+
+		/**
+		 * Narrows these results to the entries matching query, whose key contains the key
+		 * they were found with.  The results returned so far keep their place, with the
+		 * entries that still match; the others are ranked for query.
+		 * 
+		 * @param query the query as typed
+		 * @param fields the fields searched
+		 * @param types the entity types searched
+		 * @return the refined results
+		 * @throws CancellationException if the search was cancelled
+		 */
+		SourceResults refine(String query, Set<SearchField> fields, Set<EntityType<?>> types) {
+			int[] matches = index.refine(entries, query, fields, types, cancellation);
+
+			BitSet matched = new BitSet(index.getEntryCount());
+			for(int entry : matches){
+				matched.set(entry);
+			}
 
+			List<IntList> refinedShown = new ArrayList<IntList>();
+			List<IntList> before = new ArrayList<IntList>(shown);
+			before.addAll(groups.subList(0, position));
+			for(IntList group : before){
+				IntList kept = new IntList(group.size());
+				for(int i = 0; i < group.size(); i++){
+					if(matched.get(group.get(i))){
+						kept.add(group.get(i));
+					}
+				}
+				if(!kept.isEmpty()){
+					refinedShown.add(kept);
 				}
+			}
 
-				private void updateTable(final ArrayList<SearchResult> resultList,
-						final JTable resultTable, final DefaultTableModel tableModel, final String[] columnNames) {
+			return new SourceResults(source, matches, refinedShown, SearchKeys.normalize(query), cancellation);
+		}
 
-					EventQueue.invokeLater(new Runnable(){
+		LoadedOntology getSource() {
+			return source;
+		}
 
+		/**
+		 * 
+		 * @return every matching entry, as a set
+		 */
+		BitSet getMatchedEntries() {
+			BitSet matched = new BitSet(index.getEntryCount());
+			for(int entry : entries){
+				matched.set(entry);
+			}
+			return matched;
+		}
 
-						@Override
-						public void run() {
+		/**
+		 * 
+		 * @return number of results shown before these were refined
+		 */
+		int shownCount() {
+			return shown.size();
+		}
 
-							Object[][] resultData = new Object[resultList.size()][4];
+		/**
+		 * Ranks enough entities for max more results, if they aren't ranked yet
+		 * 
+		 * @param max
+		 */
+		void prepare(int max) {
+			if(!exhausted && position + max > groups.size()){
+				long bound = Math.max((long) position + max, (long) groups.size() + resultLimit);
+				this.rank((int) Math.min(bound, Integer.MAX_VALUE));
+			}
+		}
 
-							//custom renderer for tooltips
-							ResultTableCellRenderer renderer = new ResultTableCellRenderer();
+		/**
+		 * 
+		 * @return number of ranked results not returned yet
+		 */
+		int available() {
+			return groups.size() - position;
+		}
 
-							for (int i = 0; i < resultList.size(); i++) {
+		/**
+		 * 
+		 * @return score of the next result, see {@link ResultRanker#score(int, String)}
+		 */
+		int peekScore() {
+			return scores.get(position);
+		}
 
-								resultData[i][0] = resultList.get(i).getType();
-								resultData[i][1] = resultList.get(i).getName();
-								resultData[i][2] = resultList.get(i).getOWLEntity().getIRI();
-								resultData[i][3] = resultList.get(i).getMatchType();
+		/**
+		 * Adds the next result to batch
+		 * 
+		 * @param batch
+		 */
+		void take(ResultStore batch) {
+			batch.add(source, groups.get(position));
+			position++;
+		}
 
-								tableModel.setDataVector(resultData, columnNames);
+		boolean hasNext() {
+			return position < groups.size() || !exhausted;
+		}
 
-								renderer.setTooltip(i, resultList.get(i).getMatchContext());
+		/**
+		 * 
+		 * @return number of matching entities
+		 */
+		int size() {
+			return total;
+		}
 
-							}
+		/**
+		 * Keeps the limit best entities and groups their entries per IRI, in rank order
+		 * 
+		 * @param limit
+		 */
+		private void rank(int limit) {
+			int[] ranked = ranker.rank(pending, query, limit, cancellation);
+			exhausted = ranked.length < limit;
+
+			Map<Integer, IntList> entriesByEntity = new HashMap<Integer, IntList>(ranked.length * 2);
+			for(int entity : ranked){
+				entriesByEntity.put(entity, new IntList(4));
+			}
+			for(int entry : pending){
+				IntList group = entriesByEntity.get(index.getEntityId(entry));
+				if(group != null){
+					group.add(entry);
+				}
+			}
 
-							//setting custom renderer on matchType column for tooltip
-							TableColumn col = resultTable.getColumnModel().getColumn(3);
-							col.setCellRenderer(renderer);
-							packColumns(resultTable, 5);
+			//entities sharing an IRI (compared case-insensitively) become a single result at the better rank
+			Map<String, IntList> entriesByIRI = new LinkedHashMap<String, IntList>(ranked.length * 2);
+			IntList groupScores = new IntList(ranked.length);
+			for(int entity : ranked){
+				IntList group = entriesByEntity.get(entity);
+				String key = index.getEntity(group.get(0)).getIRI().toString().toLowerCase(Locale.ROOT);
+
+				IntList existing = entriesByIRI.get(key);
+				if(existing == null){
+					entriesByIRI.put(key, group);
+					groupScores.add(this.score(group));
+				} else {
+					existing.addAll(group);
+				}
+			}
 
+			scores = groupScores;
+			groups = new ArrayList<IntList>(entriesByIRI.values());
+		}
 
-						}
-					});
+		private int[] withoutShown() {
+			BitSet shownEntities = new BitSet(index.getEntityCount());
+			for(IntList group : shown){
+				for(int i = 0; i < group.size(); i++){
+					shownEntities.set(index.getEntityId(group.get(i)));
 				}
+			}
 
+			IntList left = new IntList(entries.length);
+			for(int entry : entries){
+				if(!shownEntities.get(index.getEntityId(entry))){
+					left.add(entry);
+				}
+			}
+			return left.toArray();
+		}
 
+		/**
+		 * 
+		 * @param group entries of one entity
+		 * @return score of the entity, that of its best entry
+		 */
+		private int score(IntList group) {
+			int best = Integer.MIN_VALUE;
+			for(int i = 0; i < group.size(); i++){
+				best = Math.max(best, ranker.score(group.get(i), query));
+			}
+			return best;
+		}
+	}
 
+	/**
+	 * Runs one search and streams its results to the table in batches, stopping once
+	 * the result limit is reached until more results are asked for
+	 */
+	private class SearchTask implements Runnable {
+
+		private final String[] columnNames;
+		private final ResultTableModel tableModel;
+		private final JTable resultTable;
+		private final SearchCancellation cancellation;
+
+		//custom renderer for tooltips, shared by every batch of this search
+		private final ResultTableCellRenderer renderer = new ResultTableCellRenderer();
+
+		private volatile ResultStream stream;
+		//key of the query the results shown were found with
+		private volatile String key;
+
+		SearchTask(String[] columnNames, ResultTableModel tableModel, JTable resultTable, String query,
+				SearchCancellation cancellation) {
+			this.columnNames = columnNames;
+			this.tableModel = tableModel;
+			this.resultTable = resultTable;
+			this.key = SearchKeys.normalize(query);
+			this.cancellation = cancellation;
+		}
 
-				private void clearTableModel(final DefaultTableModel tableModel) {
-					try {
+		public void run(){
 
-						EventQueue.invokeAndWait(new Runnable(){
+			if(cancellation.isCancelled()){
+				return;
+			}
 
-							public void run(){
+			this.clearTableModel(tableModel);
 
-								while (tableModel.getRowCount() > 0) {
-									tableModel.removeRow(tableModel.getRowCount() - 1);
-								}
 
-							}
-						});
+			setStatus("Starting search", tableModel);
+
+			try {
+				stream = search(cancellation);
+			} catch (CancellationException e) {
+				//superseded by a newer search, or else its ontology stopped loading
+				setStatus("Loading cancelled", tableModel);
+				return;
+			} catch (Exception e) {
+				setStatus("Error", tableModel);
+				return;
+			} 
+
+
+			if (stream.size() == 0) {
+				setStatus("No results", tableModel);
+				this.notifyShown();
+
+			} else {
+				this.streamResults(resultLimit);
+			}
+		}
+
+		boolean hasMore() {
+			ResultStream current = stream;
+			return current != null && current.hasNext() && !cancellation.isCancelled();
+		}
+
+		/**
+		 * Typo matches of a longer query needn't be among those of a shorter one, so fuzzy
+		 * searches are always run again
+		 * 
+		 * @param query
+		 * @return true if the results of this task can be narrowed to those of query
+		 */
+		boolean canRefine(String query) {
+			String refinedKey = SearchKeys.normalize(query);
+			return stream != null && !cancellation.isCancelled() && !searchFuzzy
+					&& !key.isEmpty() && refinedKey.contains(key);
+		}
+
+		/**
+		 * Narrows the results to those matching query, see {@link #canRefine(String)}.
+		 * Only the previous matches are checked again.  The rows that no longer match are
+		 * deleted from the table, the others keep their place, and the page is then filled
+		 * up with the best ranked matches that weren't shown yet.
+		 * 
+		 * @param query
+		 */
+		void refine(String query) {
+			Set<SearchField> fields = getEnabledFields();
+			Set<EntityType<?>> types = getEnabledTypes();
+
+			final Map<LoadedOntology, BitSet> matched = new IdentityHashMap<LoadedOntology, BitSet>();
+			List<SourceResults> sources = new ArrayList<SourceResults>();
+			int shown = 0;
+
+			try {
+				for(SourceResults source : stream.getSources()){
+					SourceResults refined = source.refine(query, fields, types);
+					matched.put(refined.getSource(), refined.getMatchedEntries());
+					shown += refined.shownCount();
+					sources.add(refined);
+				}
+			} catch (CancellationException e) {
+				//superseded by a newer search
+				return;
+			}
 
-					} catch (InterruptedException e) {
-						e.printStackTrace();
+			stream = new ResultStream(sources, cancellation, shown);
+			key = SearchKeys.normalize(query);
 
-					} catch (InvocationTargetException e) {
-						e.printStackTrace();
+			EventQueue.invokeLater(new Runnable(){
+
+				@Override
+				public void run() {
+					if(cancellation.isCancelled()){
+						return;
 					}
+					//rows are deleted in place, so the table keeps its sorting, filter and scroll position
+					tableModel.retain(matched);
+				}
+			});
+
+			if(stream.size() == 0){
+				setStatus("No results", tableModel);
+				this.notifyShown();
+			} else {
+				this.streamResults(Math.max(0, resultLimit - shown));
+			}
+		}
+
+		/**
+		 * Publishes results batch by batch until limit more results are shown or every match is shown
+		 * 
+		 * @param limit
+		 */
+		void streamResults(int limit) {
+			int target = stream.getPosition() + limit;
+			boolean first = stream.getPosition() == 0;
+
+			try {
+				while(stream.hasNext() && stream.getPosition() < target){
+					int batchSize = Math.min(PUBLISH_BATCH_SIZE, target - stream.getPosition());
+					this.appendToTable(stream.next(batchSize), first);
+					first = false;
+				}
+			} catch (CancellationException e) {
+				//superseded by a newer search
+				return;
+			}
+
+			this.notifyShown();
+		}
+
+		private void setStatus(final String str, final ResultTableModel tableModel) {
+
+			EventQueue.invokeLater(new Runnable(){
 
+				@Override
+				public void run() {
+					//only the latest search may touch the table
+					if(cancellation.isCancelled()){
+						return;
+					}
+					tableModel.setStatus(str);
 				}
 
+			});
+
+		}
+
+		private void appendToTable(final ResultStore batch, final boolean first) {
 
+			EventQueue.invokeLater(new Runnable(){
+
+
+				@Override
+				public void run() {
+
+					//only the latest search may touch the table
+					if(cancellation.isCancelled()){
+						return;
+					}
+
+					if(first){
+						//the ontology column is only there when several ontologies are searched
+						results = new ResultStore(matchTypes);
+						tableModel.showResults(columnNames, results);
+
+						//setting custom renderer on matchType column for tooltip
+						TableColumn col = resultTable.getColumnModel().getColumn(3);
+						col.setCellRenderer(renderer);
+					}
+
+					//the table reads the new rows from the store, announced as one range
+					tableModel.append(batch);
+
+					if(first){
+						packColumns(resultTable, 5);
+					}
 
-				private void packColumns(JTable table, int margin) {
-					for (int c=0; c<table.getColumnCount(); c++) {
-						packColumn(table, c, 2);
-					} 
 				}
+			});
+		}
+
+		private void notifyShown() {
+			final int total = stream == null ? 0 : stream.size();
+
+			EventQueue.invokeLater(new Runnable(){
+
+				@Override
+				public void run() {
+					if(cancellation.isCancelled()){
+						return;
+					}
 
-				public void packColumn(JTable table, int vColIndex, int margin) {
-					DefaultTableColumnModel colModel = (DefaultTableColumnModel)table.getColumnModel();
-					TableColumn col = colModel.getColumn(vColIndex);
-					int width = 0;
+					if(results.size() > 0){
+						packColumns(resultTable, 5);
+					}
 
-					// Get width of column header
-					TableCellRenderer renderer = col.getHeaderRenderer();
-					if (renderer == null) {
-						renderer = table.getTableHeader().getDefaultRenderer();
+					if(searchListener != null){
+						searchListener.resultsShown(total == 0 ? 0 : results.size(), total);
 					}
-					Component comp = renderer.getTableCellRendererComponent(
-							table, col.getHeaderValue(), false, false, 0, 0);
-					width = comp.getPreferredSize().width;
-
-					// Get maximum width of column data
-					for (int r=0; r<table.getRowCount(); r++) {
-						renderer = table.getCellRenderer(r, vColIndex);
-						comp = renderer.getTableCellRendererComponent(
-								table, table.getValueAt(r, vColIndex), false, false, r, vColIndex);
-						width = Math.max(width, comp.getPreferredSize().width);
+				}
+			});
+		}
+
+
+
+
+		private void clearTableModel(final ResultTableModel tableModel) {
+			try {
+
+				EventQueue.invokeAndWait(new Runnable(){
+
+					public void run(){
+
+						if(cancellation.isCancelled()){
+							return;
+						}
+
+						tableModel.clear();
+
 					}
+				});
 
-					// Add margin
-					width += 2*margin;
+			} catch (InterruptedException e) {
+				e.printStackTrace();
 
-					// Set the width
-					col.setPreferredWidth(width);
-				}	
+			} catch (InvocationTargetException e) {
+				e.printStackTrace();
+			}
+
+		}
 
-			};
 
-			t.start();
 
+		private void packColumns(JTable table, int margin) {
+			for (int c=0; c<table.getColumnCount(); c++) {
+				packColumn(table, c, 2);
+			} 
 		}
+
+		public void packColumn(JTable table, int vColIndex, int margin) {
+			DefaultTableColumnModel colModel = (DefaultTableColumnModel)table.getColumnModel();
+			TableColumn col = colModel.getColumn(vColIndex);
+			int width = 0;
+
+			// Get width of column header
+			TableCellRenderer renderer = col.getHeaderRenderer();
+			if (renderer == null) {
+				renderer = table.getTableHeader().getDefaultRenderer();
+			}
+			Component comp = renderer.getTableCellRendererComponent(
+					table, col.getHeaderValue(), false, false, 0, 0);
+			width = comp.getPreferredSize().width;
+
+			// Get maximum width of column data, from a sample of the rows spread over the table
+			int step = Math.max(1, table.getRowCount() / PACK_SAMPLE_ROWS);
+			for (int r=0; r<table.getRowCount(); r+=step) {
+				renderer = table.getCellRenderer(r, vColIndex);
+				comp = renderer.getTableCellRendererComponent(
+						table, table.getValueAt(r, vColIndex), false, false, r, vColIndex);
+				width = Math.max(width, comp.getPreferredSize().width);
+			}
+
+			// Add margin
+			width += 2*margin;
+
+			// Set the width
+			col.setPreferredWidth(width);
+		}	
+
 	}
 
 }
@@ -0,0 +1,24 @@
+package edu.uams.dbmi.protege.plugin.mireot.search;
+
+import edu.uams.dbmi.protege.plugin.mireot.search.load.LoadMonitor;
+
+/**
+ * Notified on the event dispatch thread as source ontologies are loaded
+ */
+public interface LoadListener {
+
+	/**
+	 * Called when a load moves on to another stage, and at most ten times a second as it advances
+	 * 
+	 * @param monitor stage and progress of the load
+	 */
+	public void loadProgress(LoadMonitor monitor);
+
+	/**
+	 * Called once a load has finished, failed or was cancelled
+	 * 
+	 * @param monitor
+	 */
+	public void loadFinished(LoadMonitor monitor);
+
+}
@@ -0,0 +1,16 @@
+package edu.uams.dbmi.protege.plugin.mireot.search;
+
+/**
+ * Notified on the event dispatch thread when a search stops publishing results to the table
+ */
+public interface SearchListener {
+
+	/**
+	 * Called once a search has reached its result limit or has shown every match
+	 * 
+	 * @param shown number of results in the table
+	 * @param total number of matching entities
+	 */
+	public void resultsShown(int shown, int total);
+
+}
@@ -0,0 +1,180 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.index;
+
+import java.util.Arrays;
+
+/**
+ * Burkhard-Keller tree over a term vocabulary, used for typo tolerant search.
+ *
+ * Every node holds a term and the ids stored under it; the children of a node are keyed
+ * by their edit distance to it.  By the triangle inequality, a query within k edits of
+ * some term below a node at distance d from the query can only be found below children
+ * with a key between d - k and d + k, so most of the vocabulary is never compared.
+ */
+public class BKTree {
+
+	private String[] terms = new String[256];
+	private IntList[] ids = new IntList[256];
+
+	//children are kept as linked lists: first child of a node, next sibling and distance to the parent
+	private int[] firstChild = new int[256];
+	private int[] nextSibling = new int[256];
+	private int[] distance = new int[256];
+
+	private int size;
+
+	/**
+	 * Stores id under term, adding the term to the tree if it is new
+	 *
+	 * @param term
+	 * @param id
+	 */
+	public void add(String term, int id) {
+		if(size == 0){
+			newNode(term, id, 0);
+			return;
+		}
+
+		int node = 0;
+		while(true){
+			int d = editDistance(term, terms[node]);
+			if(d == 0){
+				ids[node].add(id);
+				return;
+			}
+
+			int child = childAt(node, d);
+			if(child < 0){
+				int created = newNode(term, id, d);
+				nextSibling[created] = firstChild[node];
+				firstChild[node] = created;
+				return;
+			}
+			node = child;
+		}
+	}
+
+	/**
+	 *
+	 * @param query
+	 * @param maxEdits
+	 * @return ids stored under every term within maxEdits edits of query
+	 */
+	public IntList search(String query, int maxEdits) {
+		IntList found = new IntList();
+		if(size == 0){
+			return found;
+		}
+
+		IntList pending = new IntList();
+		pending.add(0);
+
+		for(int p = 0; p < pending.size(); p++){
+			int node = pending.get(p);
+			int d = editDistance(query, terms[node]);
+
+			if(d <= maxEdits){
+				found.addAll(ids[node]);
+			}
+
+			for(int child = firstChild[node]; child >= 0; child = nextSibling[child]){
+				if(distance[child] >= d - maxEdits && distance[child] <= d + maxEdits){
+					pending.add(child);
+				}
+			}
+		}
+
+		return found;
+	}
+
+	/**
+	 *
+	 * @return number of distinct terms
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Default number of typos tolerated for a query; short queries would match too much
+	 *
+	 * @param query
+	 * @return maximum edit distance for query
+	 */
+	public static int defaultMaxEdits(String query) {
+		int length = query.length();
+		if(length < 5){
+			return 0;
+		}
+		if(length <= 8){
+			return 1;
+		}
+		return 2;
+	}
+
+	/**
+	 *
+	 * @param a
+	 * @param b
+	 * @return Levenshtein distance between a and b
+	 */
+	static int editDistance(String a, String b) {
+		if(a.length() < b.length()){
+			String swap = a;
+			a = b;
+			b = swap;
+		}
+
+		int[] previous = new int[b.length() + 1];
+		int[] current = new int[b.length() + 1];
+		for(int j = 0; j <= b.length(); j++){
+			previous[j] = j;
+		}
+
+		for(int i = 1; i <= a.length(); i++){
+			current[0] = i;
+			char ca = a.charAt(i - 1);
+			for(int j = 1; j <= b.length(); j++){
+				int substitution = previous[j - 1] + (ca == b.charAt(j - 1) ? 0 : 1);
+				current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+			}
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+
+		return previous[b.length()];
+	}
+
+	/*
+	 * Internals
+	 */
+
+	private int childAt(int node, int d) {
+		for(int child = firstChild[node]; child >= 0; child = nextSibling[child]){
+			if(distance[child] == d){
+				return child;
+			}
+		}
+		return -1;
+	}
+
+	private int newNode(String term, int id, int d) {
+		if(size == terms.length){
+			int capacity = size * 2;
+			terms = Arrays.copyOf(terms, capacity);
+			ids = Arrays.copyOf(ids, capacity);
+			firstChild = Arrays.copyOf(firstChild, capacity);
+			nextSibling = Arrays.copyOf(nextSibling, capacity);
+			distance = Arrays.copyOf(distance, capacity);
+		}
+
+		terms[size] = term;
+		ids[size] = new IntList(1);
+		ids[size].add(id);
+		firstChild[size] = -1;
+		nextSibling[size] = -1;
+		distance[size] = d;
+
+		return size++;
+	}
+}
@@ -0,0 +1,113 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.index;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveTask;
+
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLLiteral;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.search.EntitySearcher;
+
+/**
+ * Reads the indexed annotation fields of a slice of an ontology's signature.
+ *
+ * When forking is enabled, slices larger than {@link #THRESHOLD} are split in half and
+ * read in parallel.  Every half collects into its own batch and the halves are joined
+ * in signature order, so workers never share mutable state.
+ */
+class EntityExtractor extends RecursiveTask<ExtractedBatch> {
+
+	private static final long serialVersionUID = 1L;
+
+	static final int THRESHOLD = 2048;
+
+	private final OWLOntology ontology;
+	private final List<OWLEntity> signature;
+	private final int from;
+	private final int to;
+	private final Map<IRI, SearchField> fields;
+	private final LabelTable labels;
+	private final boolean fork;
+	private final SearchCancellation cancellation;
+
+	EntityExtractor(OWLOntology ontology, List<OWLEntity> signature, int from, int to, Map<IRI, SearchField> fields,
+			LabelTable labels, boolean fork, SearchCancellation cancellation) {
+		this.ontology = ontology;
+		this.signature = signature;
+		this.from = from;
+		this.to = to;
+		this.fields = fields;
+		this.labels = labels;
+		this.fork = fork;
+		this.cancellation = cancellation;
+	}
+
+	@Override
+	protected ExtractedBatch compute() {
+		if(!fork || to - from <= THRESHOLD){
+			return extract();
+		}
+
+		int middle = (from + to) >>> 1;
+		EntityExtractor left = new EntityExtractor(ontology, signature, from, middle, fields, labels, true, cancellation);
+		EntityExtractor right = new EntityExtractor(ontology, signature, middle, to, fields, labels, true, cancellation);
+
+		left.fork();
+		ExtractedBatch rightBatch = right.compute();
+		ExtractedBatch leftBatch = left.join();
+
+		leftBatch.append(rightBatch);
+		return leftBatch;
+	}
+
+	private ExtractedBatch extract() {
+		ExtractedBatch batch = new ExtractedBatch();
+
+		//entities read since the last check
+		int unreported = 0;
+
+		for(int i = from; i < to; i++){
+			if(unreported == SearchCancellation.BATCH_SIZE){
+				cancellation.worked(unreported);
+				unreported = 0;
+			}
+			unreported++;
+
+			OWLEntity entity = signature.get(i);
+			batch.addEntity(entity);
+
+			String label = null;
+			int labelRank = Integer.MAX_VALUE;
+
+			// a single annotation lookup per entity covers every indexed field and the display label
+			for(OWLAnnotation annotation : EntitySearcher.getAnnotations(entity.getIRI(), ontology)){
+				SearchField field = fields.get(annotation.getProperty().getIRI());
+
+				if(field != null && annotation.getValue() instanceof OWLLiteral){
+					OWLLiteral literal = (OWLLiteral) annotation.getValue();
+					String text = literal.getLiteral();
+					batch.addEntry(field, text, SearchKeys.normalize(text));
+
+					if(field == SearchField.LABEL){
+						int rank = labels.rank(literal);
+						if(rank < labelRank){
+							label = text;
+							labelRank = rank;
+						}
+					}
+				}
+			}
+
+			batch.setLabel(label, labelRank);
+		}
+
+		if(unreported > 0){
+			cancellation.worked(unreported);
+		}
+
+		return batch;
+	}
+}
@@ -0,0 +1,67 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.index;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.semanticweb.owlapi.model.OWLEntity;
+
+/**
+ * Indexed fields read from a slice of an ontology's signature, waiting to be added to a {@link SearchIndex}
+ */
+class ExtractedBatch {
+
+	final List<OWLEntity> entities = new ArrayList<OWLEntity>();
+
+	/** number of entries read for each entity, in entity order */
+	final IntList entryCounts = new IntList();
+
+	final IntList fields = new IntList();
+	final List<String> texts = new ArrayList<String>();
+	final List<String> keys = new ArrayList<String>();
+
+	/** preferred label of each entity (null if it has none) and its language rank, see {@link LabelTable} */
+	final List<String> labels = new ArrayList<String>();
+	final IntList labelRanks = new IntList();
+
+	void addEntity(OWLEntity entity) {
+		entities.add(entity);
+		entryCounts.add(0);
+		labels.add(null);
+		labelRanks.add(0);
+	}
+
+	/**
+	 * Sets the label of the last added entity
+	 *
+	 * @param label
+	 * @param rank
+	 */
+	void setLabel(String label, int rank) {
+		labels.set(labels.size() - 1, label);
+		labelRanks.set(labelRanks.size() - 1, rank);
+	}
+
+	void addEntry(SearchField field, String text, String key) {
+		int last = entryCounts.size() - 1;
+		entryCounts.set(last, entryCounts.get(last) + 1);
+
+		fields.add(field.ordinal());
+		texts.add(text);
+		keys.add(key);
+	}
+
+	/**
+	 * Appends other after this batch, keeping the order of the signature
+	 *
+	 * @param other
+	 */
+	void append(ExtractedBatch other) {
+		entities.addAll(other.entities);
+		entryCounts.addAll(other.entryCounts);
+		fields.addAll(other.fields);
+		texts.addAll(other.texts);
+		keys.addAll(other.keys);
+		labels.addAll(other.labels);
+		labelRanks.addAll(other.labelRanks);
+	}
+}
@@ -0,0 +1,158 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.index;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Hash index from the identifiers of an entity to its id.
+ *
+ * Besides the full IRI (compared case-insensitively and regardless of http/https), an
+ * entity can be found by the OBO style identifiers people copy from papers and
+ * spreadsheets: the short form (GO_0008150), the CURIE (GO:0008150, obo:GO_0008150) and
+ * the bare numeric local name (0008150).  Bare numbers are shared between ontologies,
+ * so one identifier can map to several entities.
+ */
+public class IdentifierIndex {
+
+	private static final int[] NO_IDS = new int[0];
+
+	private final Map<String, int[]> ids = new HashMap<String, int[]>();
+
+	/**
+	 * Adds every identifier form of iri
+	 *
+	 * @param id
+	 * @param iri
+	 */
+	public void add(int id, String iri) {
+		for(String key : keys(iri)){
+			int[] existing = ids.get(key);
+			if(existing == null){
+				ids.put(key, new int[] { id });
+			} else if(existing[existing.length - 1] != id){
+				int[] grown = Arrays.copyOf(existing, existing.length + 1);
+				grown[existing.length] = id;
+				ids.put(key, grown);
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @param identifier an IRI, CURIE, short form or numeric local name
+	 * @return ids of the entities with that identifier
+	 */
+	public int[] lookup(String identifier) {
+		int[] found = ids.get(normalize(identifier));
+		return found == null ? NO_IDS : found;
+	}
+
+	public int size() {
+		return ids.size();
+	}
+
+	/*
+	 * Cache
+	 */
+
+	void write(DataOutputStream out) throws IOException {
+		out.writeInt(ids.size());
+		for(Map.Entry<String, int[]> entry : ids.entrySet()){
+			IndexCache.writeString(out, entry.getKey());
+			IndexCache.writeInts(out, entry.getValue(), entry.getValue().length);
+		}
+	}
+
+	static IdentifierIndex read(DataInputStream in) throws IOException {
+		IdentifierIndex index = new IdentifierIndex();
+
+		int count = in.readInt();
+		for(int i = 0; i < count; i++){
+			String key = IndexCache.readString(in);
+			index.ids.put(key, IndexCache.readInts(in));
+		}
+
+		return index;
+	}
+
+	/**
+	 *
+	 * @param iri
+	 * @return the normalized keys under which an entity with this IRI is indexed
+	 */
+	static List<String> keys(String iri) {
+		List<String> keys = new ArrayList<String>(4);
+
+		String normalized = normalize(iri);
+		keys.add(normalized);
+
+		String localName = getLocalName(normalized);
+		if(localName.isEmpty() || localName.equals(normalized)){
+			return keys;
+		}
+		keys.add(localName);
+
+		int separator = localName.indexOf('_');
+		if(separator > 0 && separator < localName.length() - 1){
+			String prefix = localName.substring(0, separator);
+			String localId = localName.substring(separator + 1);
+
+			keys.add(prefix + ":" + localId);
+
+			if(isNumeric(localId)){
+				keys.add(localId);
+			}
+		}
+
+		return keys;
+	}
+
+	/**
+	 * Brings an IRI or user supplied identifier into the form used as key
+	 *
+	 * @param identifier
+	 * @return the lower case identifier without angle brackets, URL scheme or obo: prefix
+	 */
+	static String normalize(String identifier) {
+		String normalized = identifier.trim().toLowerCase(Locale.ROOT);
+
+		if(normalized.startsWith("<") && normalized.endsWith(">")){
+			normalized = normalized.substring(1, normalized.length() - 1).trim();
+		}
+
+		if(normalized.startsWith("http://")){
+			normalized = normalized.substring("http://".length());
+		} else if(normalized.startsWith("https://")){
+			normalized = normalized.substring("https://".length());
+		} else if(normalized.startsWith("obo:")){
+			//obo:GO_0008150 is the short form in the obo namespace
+			normalized = normalized.substring("obo:".length());
+		}
+
+		return normalized;
+	}
+
+	private static String getLocalName(String normalizedIRI) {
+		int hash = normalizedIRI.lastIndexOf('#');
+		if(hash >= 0){
+			return normalizedIRI.substring(hash + 1);
+		}
+		return normalizedIRI.substring(normalizedIRI.lastIndexOf('/') + 1);
+	}
+
+	private static boolean isNumeric(String value) {
+		for(int i = 0; i < value.length(); i++){
+			if(!Character.isDigit(value.charAt(i))){
+				return false;
+			}
+		}
+		return true;
+	}
+}
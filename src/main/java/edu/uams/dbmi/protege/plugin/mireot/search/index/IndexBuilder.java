@@ -0,0 +1,183 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.semanticweb.owlapi.model.EntityType;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+/**
+ * Builds a {@link SearchIndex} from entities and annotations fed one at a time, as a
+ * streaming parser reads them, instead of from a loaded ontology.
+ *
+ * Only the text of the indexed annotations is kept until {@link #build} is called, so the
+ * index of a large ontology can be built without holding its axioms.  The built index has
+ * no source ontologies: {@link SearchIndex#getSource(int)} returns null for every entry.
+ */
+public class IndexBuilder {
+
+	private final LabelTable labels;
+	private final OWLDataFactory factory;
+
+	//by property IRI string, so streamed annotations don't create an IRI each
+	private final Map<String, SearchField> fields = new HashMap<String, SearchField>();
+
+	//entities in the order they were first seen, since the document lists them in no other order
+	private final Map<String, Record> records = new LinkedHashMap<String, Record>();
+
+	/**
+	 *
+	 * @param labelLanguages language tags in order of preference for the display labels, see {@link LabelTable}
+	 * @param factory used to create the indexed entities
+	 */
+	public IndexBuilder(List<String> labelLanguages, OWLDataFactory factory) {
+		this.labels = new LabelTable(labelLanguages);
+		this.factory = factory;
+
+		for(SearchField field : SearchField.values()){
+			if(field.getPropertyIRI() != null){
+				fields.put(field.getPropertyIRI().toString(), field);
+			}
+		}
+	}
+
+	/**
+	 * Records the type of an entity.  Only classes and object properties are indexed, and an
+	 * entity keeps the first type it is given.
+	 *
+	 * @param iri
+	 * @param type
+	 */
+	public void addEntity(String iri, EntityType<?> type) {
+		Record record = getRecord(iri);
+		if(record.type == null){
+			record.type = type;
+		}
+	}
+
+	/**
+	 * Records an annotation value, if property holds an indexed field
+	 *
+	 * @param subject IRI of the annotated entity
+	 * @param property IRI of the annotation property
+	 * @param text literal value
+	 * @param language language tag of the value, "" for none
+	 */
+	public void addAnnotation(String subject, String property, String text, String language) {
+		SearchField field = fields.get(property);
+		if(field == null){
+			return;
+		}
+
+		Record record = getRecord(subject);
+		record.fields.add(field);
+		record.texts.add(text);
+		record.languages.add(language);
+	}
+
+	/**
+	 *
+	 * @return number of IRIs seen so far, indexed or not
+	 */
+	public int size() {
+		return records.size();
+	}
+
+	/**
+	 * Builds the index from everything recorded, and forgets the records
+	 *
+	 * @param cancellation told the number of entities to index, and checked once per batch of them
+	 * @return the built index
+	 * @throws java.util.concurrent.CancellationException if the build was cancelled
+	 */
+	public SearchIndex build(SearchCancellation cancellation) {
+		SearchIndex index = new SearchIndex(Collections.<OWLOntology>emptyList(), labels);
+
+		cancellation.begin(records.size());
+
+		ExtractedBatch batch = new ExtractedBatch();
+		int read = 0;
+
+		Iterator<Map.Entry<String, Record>> entries = records.entrySet().iterator();
+		while(entries.hasNext()){
+			Map.Entry<String, Record> entry = entries.next();
+			Record record = entry.getValue();
+			entries.remove();
+
+			if(record.type == EntityType.CLASS || record.type == EntityType.OBJECT_PROPERTY){
+				add(batch, IRI.create(entry.getKey()), record);
+			}
+
+			if(++read == SearchCancellation.BATCH_SIZE){
+				index.addBatch(batch, 0);
+				batch = new ExtractedBatch();
+				cancellation.worked(read);
+				read = 0;
+			}
+		}
+
+		index.addBatch(batch, 0);
+		if(read > 0){
+			cancellation.worked(read);
+		}
+
+		index.finish();
+
+		return index;
+	}
+
+	/*
+	 * Internals
+	 */
+
+	private void add(ExtractedBatch batch, IRI iri, Record record) {
+		batch.addEntity(record.type == EntityType.CLASS ? factory.getOWLClass(iri) : factory.getOWLObjectProperty(iri));
+
+		String label = null;
+		int labelRank = Integer.MAX_VALUE;
+
+		for(int i = 0; i < record.fields.size(); i++){
+			SearchField field = record.fields.get(i);
+			String text = record.texts.get(i);
+			batch.addEntry(field, text, SearchKeys.normalize(text));
+
+			if(field == SearchField.LABEL){
+				int rank = labels.rank(record.languages.get(i));
+				if(rank < labelRank){
+					label = text;
+					labelRank = rank;
+				}
+			}
+		}
+
+		batch.setLabel(label, labelRank);
+	}
+
+	private Record getRecord(String iri) {
+		Record record = records.get(iri);
+		if(record == null){
+			record = new Record();
+			records.put(iri, record);
+		}
+		return record;
+	}
+
+	/**
+	 * Type and indexed annotations of one IRI
+	 */
+	private static class Record {
+
+		EntityType<?> type;
+
+		final List<SearchField> fields = new ArrayList<SearchField>(2);
+		final List<String> texts = new ArrayList<String>(2);
+		final List<String> languages = new ArrayList<String>(2);
+	}
+}
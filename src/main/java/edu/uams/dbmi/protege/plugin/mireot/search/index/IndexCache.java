@@ -0,0 +1,404 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+/**
+ * Directory of built search indexes, so an ontology that was indexed before can be
+ * searched again without building its index.
+ *
+ * Every index is stored in one binary file named after its key, which hashes the IDs
+ * (ontology and version IRI) and axiom counts of the ontology and its imports, a content
+ * hash of the source document and the label language preference.  Files are read back
+ * into the same arrays the index is built in, so a cached index costs as much heap as a
+ * built one but none of the building.  Only the most recently used files are kept, along
+ * with the companion files stored next to them.
+ */
+public class IndexCache {
+
+	//"MIRE", followed by the format version
+	private static final int MAGIC = 0x4D495245;
+	private static final int VERSION = 1;
+
+	private static final String SUFFIX = ".idx";
+	private static final int MAX_FILES = 8;
+
+	private final File directory;
+
+	/**
+	 *
+	 * @param directory where index files are kept, created when the first index is stored
+	 */
+	public IndexCache(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 *
+	 * @return the index cache directory below the user's Protege directory
+	 */
+	public static File getDefaultDirectory() {
+		return new File(System.getProperty("user.home"),
+				".Protege" + File.separator + "mireot" + File.separator + "index");
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 *
+	 * @param ontology
+	 * @param imports imports closure of ontology, ontology excluded
+	 * @param documentHash content hash of the document ontology was loaded from, or null if unknown
+	 * @param labelLanguages label language preference the index is built with
+	 * @return the cache key, or null if the ontology can't be told apart from other versions of
+	 * itself: it has neither a document hash nor a version IRI
+	 */
+	public static String key(OWLOntology ontology, List<OWLOntology> imports, byte[] documentHash,
+			List<String> labelLanguages) {
+		if(documentHash == null && !ontology.getOntologyID().getVersionIRI().isPresent()){
+			return null;
+		}
+
+		MessageDigest digest = newDigest();
+		update(digest, "version " + VERSION);
+		update(digest, describe(ontology));
+		if(documentHash != null){
+			digest.update(documentHash);
+		}
+
+		//the imports closure is a set, so its order is not stable between loads
+		List<String> importIDs = new ArrayList<String>();
+		for(OWLOntology imported : imports){
+			importIDs.add(describe(imported));
+		}
+		Collections.sort(importIDs);
+		for(String importID : importIDs){
+			update(digest, importID);
+		}
+
+		for(String language : labelLanguages){
+			update(digest, "language " + language);
+		}
+
+		return toHex(digest.digest());
+	}
+
+	/**
+	 *
+	 * @param documentHash content hash of a document indexed by streaming it, without loading it as an ontology
+	 * @param labelLanguages label language preference the index is built with
+	 * @return the cache key
+	 */
+	public static String key(byte[] documentHash, List<String> labelLanguages) {
+		MessageDigest digest = newDigest();
+		update(digest, "version " + VERSION);
+		update(digest, "streamed");
+		digest.update(documentHash);
+
+		for(String language : labelLanguages){
+			update(digest, "language " + language);
+		}
+
+		return toHex(digest.digest());
+	}
+
+	/**
+	 *
+	 * @param file
+	 * @return SHA-256 hash of the file contents
+	 * @throws IOException
+	 */
+	public static byte[] hash(File file) throws IOException {
+		MessageDigest digest = newDigest();
+		byte[] buffer = new byte[1 << 16];
+
+		InputStream in = new FileInputStream(file);
+		try {
+			int read;
+			while((read = in.read(buffer)) > 0){
+				digest.update(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+
+		return digest.digest();
+	}
+
+	/**
+	 * Reads an index stored under key that was built without an ontology, see {@link #key(byte[], List)}
+	 *
+	 * @param key
+	 * @param factory used to recreate the indexed entities
+	 * @return the cached index, or null if there is none or it can't be read
+	 */
+	public SearchIndex load(String key, OWLDataFactory factory) {
+		return load(key, null, Collections.<OWLOntology>emptyList(), factory);
+	}
+
+	/**
+	 * Reads the index stored under key
+	 *
+	 * @param key
+	 * @param ontology the loaded ontology the index was built for, or null if it was built without one
+	 * @param imports imports closure of ontology, ontology excluded
+	 * @param factory used to recreate the indexed entities
+	 * @return the cached index, or null if there is none or it can't be read
+	 */
+	public SearchIndex load(String key, OWLOntology ontology, List<OWLOntology> imports, OWLDataFactory factory) {
+		File file = new File(directory, key + SUFFIX);
+		if(!file.isFile()){
+			return null;
+		}
+
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+			try {
+				if(in.readInt() != MAGIC || in.readInt() != VERSION){
+					return null;
+				}
+
+				//sources are stored by ontology ID, since the imports closure has no stable order
+				Map<String, OWLOntology> loaded = new HashMap<String, OWLOntology>();
+				if(ontology != null){
+					loaded.put(ontology.getOntologyID().toString(), ontology);
+				}
+				for(OWLOntology imported : imports){
+					loaded.put(imported.getOntologyID().toString(), imported);
+				}
+
+				int sourceCount = in.readInt();
+				List<OWLOntology> sources = new ArrayList<OWLOntology>(sourceCount);
+				for(int i = 0; i < sourceCount; i++){
+					OWLOntology source = loaded.get(readString(in));
+					if(source == null){
+						return null;
+					}
+					sources.add(source);
+				}
+
+				SearchIndex index = SearchIndex.read(in, sources, factory);
+
+				//marks the file as recently used
+				file.setLastModified(System.currentTimeMillis());
+				return index;
+			} finally {
+				in.close();
+			}
+		} catch (EOFException e) {
+			System.out.println("Discarding truncated cached index " + file);
+			file.delete();
+		} catch (IOException e) {
+			System.out.println("Could not read cached index " + file + ": " + e.getMessage());
+		} catch (RuntimeException e) {
+			//a truncated or corrupt file, rebuilt on the next store
+			System.out.println("Discarding unreadable cached index " + file + ": " + e);
+			file.delete();
+		}
+		return null;
+	}
+
+	/**
+	 *
+	 * @param key
+	 * @param suffix names the kind of companion file, such as ".outline"
+	 * @return file to keep data belonging to the index stored under key in, deleted along with the index
+	 */
+	public File getCompanionFile(String key, String suffix) {
+		return new File(directory, key + suffix);
+	}
+
+	/**
+	 * Stores index under key, replacing any index stored under it before
+	 *
+	 * @param key
+	 * @param index
+	 */
+	public void store(String key, SearchIndex index) {
+		if(!directory.isDirectory() && !directory.mkdirs()){
+			System.out.println("Could not create index cache directory " + directory);
+			return;
+		}
+
+		File file = new File(directory, key + SUFFIX);
+		File temp = new File(directory, key + SUFFIX + ".tmp");
+
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+
+				List<OWLOntology> sources = index.getOntologies();
+				out.writeInt(sources.size());
+				for(OWLOntology source : sources){
+					writeString(out, source.getOntologyID().toString());
+				}
+
+				index.write(out);
+			} finally {
+				out.close();
+			}
+
+			//readers only ever see complete files
+			file.delete();
+			if(!temp.renameTo(file)){
+				throw new IOException("could not rename " + temp + " to " + file);
+			}
+		} catch (IOException e) {
+			System.out.println("Could not cache index in " + file + ": " + e.getMessage());
+			temp.delete();
+			return;
+		}
+
+		prune();
+	}
+
+	/*
+	 * Binary format helpers
+	 */
+
+	static void writeString(DataOutputStream out, String value) throws IOException {
+		if(value == null){
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if(length < 0){
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	static void writeInts(DataOutputStream out, int[] values, int count) throws IOException {
+		out.writeInt(count);
+		for(int i = 0; i < count; i++){
+			out.writeInt(values[i]);
+		}
+	}
+
+	static int[] readInts(DataInputStream in) throws IOException {
+		int[] values = new int[in.readInt()];
+		//read in bulk, posting lists can hold millions of ints
+		byte[] bytes = new byte[values.length * 4];
+		in.readFully(bytes);
+		ByteBuffer.wrap(bytes).asIntBuffer().get(values);
+		return values;
+	}
+
+	/*
+	 * Internals
+	 */
+
+	/**
+	 * Deletes the least recently used index files beyond {@link #MAX_FILES} with their
+	 * companion files, and temporary files left behind by interrupted stores
+	 */
+	private void prune() {
+		File[] files = directory.listFiles();
+		if(files == null){
+			return;
+		}
+
+		List<File> indexes = new ArrayList<File>();
+		List<File> companions = new ArrayList<File>();
+		for(File file : files){
+			if(file.getName().endsWith(SUFFIX)){
+				indexes.add(file);
+			} else if(file.getName().endsWith(".tmp")){
+				if(file.lastModified() < System.currentTimeMillis() - 24 * 60 * 60 * 1000L){
+					file.delete();
+				}
+			} else {
+				companions.add(file);
+			}
+		}
+
+		Collections.sort(indexes, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				return Long.compare(b.lastModified(), a.lastModified());
+			}
+		});
+
+		for(int i = MAX_FILES; i < indexes.size(); i++){
+			indexes.get(i).delete();
+		}
+
+		for(File companion : companions){
+			String name = companion.getName();
+			int dot = name.indexOf('.');
+			if(dot < 0 || !new File(directory, name.substring(0, dot) + SUFFIX).isFile()){
+				companion.delete();
+			}
+		}
+	}
+
+	private static String describe(OWLOntology ontology) {
+		return ontology.getOntologyID() + " " + ontology.getAxiomCount();
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		digest.update(value.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) '\n');
+	}
+
+	/**
+	 *
+	 * @return a new SHA-256 digest
+	 */
+	public static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			//every Java platform has SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 *
+	 * @param bytes
+	 * @return bytes as lower case hexadecimal digits
+	 */
+	public static String toHex(byte[] bytes) {
+		char[] digits = "0123456789abcdef".toCharArray();
+		char[] hex = new char[bytes.length * 2];
+		for(int i = 0; i < bytes.length; i++){
+			hex[2 * i] = digits[(bytes[i] >> 4) & 0xF];
+			hex[2 * i + 1] = digits[bytes[i] & 0xF];
+		}
+		return new String(hex);
+	}
+}
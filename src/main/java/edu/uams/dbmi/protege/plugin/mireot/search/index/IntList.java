@@ -0,0 +1,79 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.index;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints, used to avoid boxing while collecting ids
+ */
+public class IntList {
+
+	private int[] values;
+	private int size;
+
+	public IntList() {
+		this(16);
+	}
+
+	public IntList(int capacity) {
+		this.values = new int[Math.max(1, capacity)];
+	}
+
+	public void add(int value) {
+		if(size == values.length){
+			values = Arrays.copyOf(values, size + (size >> 1) + 1);
+		}
+		values[size++] = value;
+	}
+
+	public void addAll(IntList other) {
+		if(size + other.size > values.length){
+			values = Arrays.copyOf(values, Math.max(size + other.size, size + (size >> 1) + 1));
+		}
+		System.arraycopy(other.values, 0, values, size, other.size);
+		size += other.size;
+	}
+
+	public int get(int index) {
+		if(index >= size){
+			throw new IndexOutOfBoundsException(index + " >= " + size);
+		}
+		return values[index];
+	}
+
+	public void set(int index, int value) {
+		if(index >= size){
+			throw new IndexOutOfBoundsException(index + " >= " + size);
+		}
+		values[index] = value;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Removes the values from index from up to, but not including, index to
+	 *
+	 * @param from
+	 * @param to
+	 */
+	public void removeRange(int from, int to) {
+		if(from > to || to > size){
+			throw new IndexOutOfBoundsException(from + ".." + to + " of " + size);
+		}
+		System.arraycopy(values, to, values, from, size - to);
+		size -= to - from;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	public int[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+}
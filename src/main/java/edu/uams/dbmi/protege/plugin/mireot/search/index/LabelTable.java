@@ -0,0 +1,132 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.index;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.semanticweb.owlapi.model.OWLLiteral;
+
+/**
+ * Preferred display label of every entity in a {@link SearchIndex}, by entity id.
+ *
+ * Labels are chosen once, while the index is built, by a language preference list: a
+ * label in the first listed language beats one in the second and so on, and labels in
+ * unlisted languages come last.  The empty string stands for labels without a language
+ * tag.  Between labels of the same preference, the first one read is kept.
+ */
+public class LabelTable {
+
+	private final List<String> languages;
+
+	private String[] labels = new String[1024];
+	private int[] ranks = new int[1024];
+
+	/**
+	 *
+	 * @param languages language tags in order of preference, "" for untagged labels
+	 */
+	public LabelTable(List<String> languages) {
+		List<String> tags = new ArrayList<String>(languages.size());
+		for(String language : languages){
+			//language tags are case insensitive
+			tags.add(language.toLowerCase(Locale.ROOT));
+		}
+		this.languages = Collections.unmodifiableList(tags);
+	}
+
+	/**
+	 *
+	 * @param entity entity id
+	 * @return the preferred label of the entity, or null if it has none
+	 */
+	public String getLabel(int entity) {
+		return entity < labels.length ? labels[entity] : null;
+	}
+
+	public List<String> getLanguages() {
+		return languages;
+	}
+
+	/**
+	 *
+	 * @param literal
+	 * @return preference of the literal's language, lower is better
+	 */
+	int rank(OWLLiteral literal) {
+		return rank(literal.hasLang() ? literal.getLang() : "");
+	}
+
+	/**
+	 *
+	 * @param language language tag, "" for none
+	 * @return preference of the language, lower is better
+	 */
+	int rank(String language) {
+		int rank = languages.indexOf(language.toLowerCase(Locale.ROOT));
+		return rank < 0 ? languages.size() : rank;
+	}
+
+	/**
+	 * Keeps label for entity unless it already has a label of the same or a better rank
+	 *
+	 * @param entity entity id
+	 * @param label
+	 * @param rank as returned by {@link #rank(OWLLiteral)}
+	 */
+	void offer(int entity, String label, int rank) {
+		if(entity >= labels.length){
+			int capacity = Math.max(entity + 1, labels.length + (labels.length >> 1));
+			labels = Arrays.copyOf(labels, capacity);
+			ranks = Arrays.copyOf(ranks, capacity);
+		}
+
+		if(labels[entity] == null || rank < ranks[entity]){
+			labels[entity] = label;
+			ranks[entity] = rank;
+		}
+	}
+
+	/*
+	 * Cache
+	 */
+
+	void write(DataOutputStream out) throws IOException {
+		out.writeInt(languages.size());
+		for(String language : languages){
+			IndexCache.writeString(out, language);
+		}
+
+		out.writeInt(labels.length);
+		for(String label : labels){
+			IndexCache.writeString(out, label);
+		}
+	}
+
+	static LabelTable read(DataInputStream in) throws IOException {
+		List<String> languages = new ArrayList<String>();
+		int languageCount = in.readInt();
+		for(int i = 0; i < languageCount; i++){
+			languages.add(IndexCache.readString(in));
+		}
+
+		LabelTable table = new LabelTable(languages);
+		table.labels = new String[in.readInt()];
+		for(int i = 0; i < table.labels.length; i++){
+			table.labels[i] = IndexCache.readString(in);
+		}
+		table.ranks = null;
+
+		return table;
+	}
+
+	void trim(int entityCount) {
+		labels = Arrays.copyOf(labels, entityCount);
+		//ranks are only needed while labels are offered
+		ranks = null;
+	}
+}
@@ -0,0 +1,241 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.index;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Inverted index from character trigrams to the ids of the keys that contain them.
+ *
+ * Substring queries are answered by intersecting the posting lists of the query's
+ * trigrams, so only keys sharing every trigram of the query are returned as candidates.
+ * Candidates still have to be verified by the caller, since sharing all trigrams does
+ * not guarantee the query occurs contiguously.
+ */
+public class NGramIndex {
+
+	public static final int GRAM_LENGTH = 3;
+
+	private static final long EMPTY = -1L;
+	private static final int[] NO_POSTINGS = new int[0];
+
+	private long[] grams;
+	private int[][] postings;
+	private int[] sizes;
+	private int gramCount;
+
+	public NGramIndex() {
+		this(1024);
+	}
+
+	public NGramIndex(int expectedGrams) {
+		int capacity = Integer.highestOneBit(Math.max(16, expectedGrams * 2) - 1) << 1;
+		this.grams = new long[capacity];
+		this.postings = new int[capacity][];
+		this.sizes = new int[capacity];
+		Arrays.fill(this.grams, EMPTY);
+	}
+
+	/**
+	 * Adds every trigram of key to the index.  Ids must be added in increasing order,
+	 * which keeps every posting list sorted and free of duplicates.
+	 *
+	 * @param id
+	 * @param key
+	 */
+	public void add(int id, String key) {
+		for(int i = 0; i + GRAM_LENGTH <= key.length(); i++){
+			int slot = slotFor(gram(key, i), true);
+			int size = sizes[slot];
+			int[] list = postings[slot];
+
+			//the same trigram can appear several times in one key
+			if(size > 0 && list[size - 1] == id){
+				continue;
+			}
+
+			if(size == list.length){
+				list = Arrays.copyOf(list, size + (size >> 1) + 1);
+				postings[slot] = list;
+			}
+			list[size] = id;
+			sizes[slot] = size + 1;
+		}
+	}
+
+	/**
+	 * Trims every posting list to its exact size once the index has been built
+	 */
+	public void trim() {
+		for(int slot = 0; slot < grams.length; slot++){
+			if(grams[slot] != EMPTY && postings[slot].length != sizes[slot]){
+				postings[slot] = Arrays.copyOf(postings[slot], sizes[slot]);
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @param query
+	 * @return sorted ids of every key containing all trigrams of query, or null if query is too short to
+	 * be answered from the index and every key has to be considered
+	 */
+	public int[] candidates(String query) {
+		if(query.length() < GRAM_LENGTH){
+			return null;
+		}
+
+		int gramTotal = query.length() - GRAM_LENGTH + 1;
+		int[][] lists = new int[gramTotal][];
+		int[] listSizes = new int[gramTotal];
+
+		for(int i = 0; i < gramTotal; i++){
+			int slot = slotFor(gram(query, i), false);
+			if(slot < 0){
+				//a trigram nobody has means nothing can match
+				return NO_POSTINGS;
+			}
+			lists[i] = postings[slot];
+			listSizes[i] = sizes[slot];
+		}
+
+		//intersect starting from the shortest list so the working set only shrinks
+		int shortest = 0;
+		for(int i = 1; i < gramTotal; i++){
+			if(listSizes[i] < listSizes[shortest]){
+				shortest = i;
+			}
+		}
+
+		int[] result = Arrays.copyOf(lists[shortest], listSizes[shortest]);
+		int resultSize = result.length;
+
+		for(int i = 0; i < gramTotal && resultSize > 0; i++){
+			if(i == shortest || lists[i] == lists[shortest]){
+				continue;
+			}
+			resultSize = intersect(result, resultSize, lists[i], listSizes[i]);
+		}
+
+		return resultSize == result.length ? result : Arrays.copyOf(result, resultSize);
+	}
+
+	public int getGramCount() {
+		return gramCount;
+	}
+
+	/*
+	 * Cache
+	 */
+
+	void write(DataOutputStream out) throws IOException {
+		out.writeInt(gramCount);
+		for(int slot = 0; slot < grams.length; slot++){
+			if(grams[slot] != EMPTY){
+				out.writeLong(grams[slot]);
+				IndexCache.writeInts(out, postings[slot], sizes[slot]);
+			}
+		}
+	}
+
+	/**
+	 * Reads an index written by {@link #write}; posting lists are read as they are, nothing is recomputed
+	 *
+	 * @param in
+	 * @return the index
+	 */
+	static NGramIndex read(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		NGramIndex index = new NGramIndex(count);
+
+		for(int i = 0; i < count; i++){
+			long gram = in.readLong();
+			int[] list = IndexCache.readInts(in);
+
+			int slot = index.slotFor(gram, true);
+			index.postings[slot] = list;
+			index.sizes[slot] = list.length;
+		}
+
+		return index;
+	}
+
+	/*
+	 * Internals
+	 */
+
+	private static int intersect(int[] target, int targetSize, int[] other, int otherSize) {
+		int kept = 0;
+		int j = 0;
+		for(int i = 0; i < targetSize && j < otherSize; i++){
+			int id = target[i];
+			while(j < otherSize && other[j] < id){
+				j++;
+			}
+			if(j < otherSize && other[j] == id){
+				target[kept++] = id;
+			}
+		}
+		return kept;
+	}
+
+	private static long gram(String key, int offset) {
+		return ((long) key.charAt(offset) << 32) | ((long) key.charAt(offset + 1) << 16) | key.charAt(offset + 2);
+	}
+
+	private static int hash(long gram) {
+		long h = gram * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private int slotFor(long gram, boolean create) {
+		int mask = grams.length - 1;
+		int slot = hash(gram) & mask;
+		while(grams[slot] != EMPTY){
+			if(grams[slot] == gram){
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		if(!create){
+			return -1;
+		}
+
+		if((gramCount + 1) * 2 > grams.length){
+			grow();
+			return slotFor(gram, true);
+		}
+
+		grams[slot] = gram;
+		postings[slot] = new int[2];
+		gramCount++;
+		return slot;
+	}
+
+	private void grow() {
+		long[] oldGrams = grams;
+		int[][] oldPostings = postings;
+		int[] oldSizes = sizes;
+
+		grams = new long[oldGrams.length * 2];
+		postings = new int[grams.length][];
+		sizes = new int[grams.length];
+		Arrays.fill(grams, EMPTY);
+
+		int mask = grams.length - 1;
+		for(int i = 0; i < oldGrams.length; i++){
+			if(oldGrams[i] == EMPTY){
+				continue;
+			}
+			int slot = hash(oldGrams[i]) & mask;
+			while(grams[slot] != EMPTY){
+				slot = (slot + 1) & mask;
+			}
+			grams[slot] = oldGrams[i];
+			postings[slot] = oldPostings[i];
+			sizes[slot] = oldSizes[i];
+		}
+	}
+}
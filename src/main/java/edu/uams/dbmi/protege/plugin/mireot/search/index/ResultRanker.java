@@ -0,0 +1,240 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.index;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Ranks the entities of matched entries by relevance.
+ *
+ * Every entry is scored by field and by where the query occurs: an exact label beats
+ * a label prefix, which beats a match at a word boundary, then any other substring of
+ * the label, then synonyms, then labels only matched with typos and finally definitions
+ * and comments.  Identifiers rank right below exact labels.  Synonyms are ordered among
+ * themselves by where the query occurs and then by scope, exact synonyms first.  Within
+ * a tier shorter values rank first.  An entity scores as its best entry.
+ *
+ * The best score of each entity is kept in an array indexed by entity id, and each
+ * entity is then offered once to a primitive min-heap bounded by the requested limit,
+ * so nothing is boxed and the sorting cost depends on the limit, not on the number of
+ * matches.
+ */
+public class ResultRanker {
+
+	static final int EXACT_LABEL = 9;
+	static final int IDENTIFIER = 8;
+	static final int LABEL_PREFIX = 7;
+	static final int LABEL_WORD = 6;
+	static final int LABEL_SUBSTRING = 5;
+	static final int SYNONYM = 4;
+	static final int FUZZY_LABEL = 3;
+	static final int TEXT_WORD = 2;
+	static final int TEXT_SUBSTRING = 1;
+
+	//where the query occurs in a synonym, weighed before its scope
+	private static final int EXACT = 3;
+	private static final int PREFIX = 2;
+	private static final int WORD = 1;
+	private static final int SUBSTRING = 0;
+
+	private final SearchIndex index;
+
+	public ResultRanker(SearchIndex index) {
+		this.index = index;
+	}
+
+	/**
+	 *
+	 * @param entry
+	 * @param query normalized query, see {@link SearchKeys}
+	 * @return relevance of the entry for query, higher is better
+	 */
+	public int score(int entry, String query) {
+		SearchField field = index.getField(entry);
+		String key = index.getKey(entry);
+
+		int tier;
+		int detail = 0;
+		if(field == SearchField.URI){
+			tier = IDENTIFIER;
+		} else if(field == SearchField.LABEL){
+			if(key.equals(query)){
+				tier = EXACT_LABEL;
+			} else if(key.startsWith(query)){
+				tier = LABEL_PREFIX;
+			} else if(isAtWordStart(key, query)){
+				tier = LABEL_WORD;
+			} else if(key.contains(query)){
+				tier = LABEL_SUBSTRING;
+			} else {
+				//only found within a few typos
+				tier = FUZZY_LABEL;
+			}
+		} else if(field.isSynonym()){
+			tier = SYNONYM;
+
+			int position;
+			if(key.equals(query)){
+				position = EXACT;
+			} else if(key.startsWith(query)){
+				position = PREFIX;
+			} else if(isAtWordStart(key, query)){
+				position = WORD;
+			} else {
+				position = SUBSTRING;
+			}
+			detail = position * 4 + getScopeWeight(field);
+		} else {
+			tier = isAtWordStart(key, query) ? TEXT_WORD : TEXT_SUBSTRING;
+		}
+
+		//within a tier, the closer the value is to the query the better
+		return (tier << 16) | (detail << 10) | (1023 - Math.min(key.length(), 1023));
+	}
+
+	/**
+	 *
+	 * @param entries matched entries
+	 * @param query normalized query, see {@link SearchKeys}
+	 * @param limit maximum number of entities to return
+	 * @param cancellation checked once per batch of entries
+	 * @return ids of the best scoring entities, best first; ties keep index order
+	 */
+	public int[] rank(int[] entries, String query, int limit, SearchCancellation cancellation) {
+		//an entity only counts once, with its best entry; every score is above 0
+		int[] best = new int[index.getEntityCount()];
+		IntList entities = new IntList();
+
+		for(int i = 0; i < entries.length; i++){
+			if(i % SearchCancellation.BATCH_SIZE == 0){
+				cancellation.checkCancelled();
+			}
+
+			int entity = index.getEntityId(entries[i]);
+			int score = score(entries[i], query);
+			if(best[entity] == 0){
+				entities.add(entity);
+			}
+			if(score > best[entity]){
+				best[entity] = score;
+			}
+		}
+
+		long[] heap = new long[Math.max(0, Math.min(limit, entities.size()))];
+		int count = 0;
+		for(int i = 0; i < entities.size(); i++){
+			if(i % SearchCancellation.BATCH_SIZE == 0){
+				cancellation.checkCancelled();
+			}
+
+			int entity = entities.get(i);
+			long key = rankKey(best[entity], entity);
+			if(count < heap.length){
+				heap[count] = key;
+				siftUp(heap, count++);
+			} else if(count > 0 && key > heap[0]){
+				heap[0] = key;
+				siftDown(heap, count);
+			}
+		}
+		Arrays.sort(heap, 0, count);
+
+		int[] ranked = new int[count];
+		for(int i = 0; i < count; i++){
+			ranked[i] = entityOf(heap[count - 1 - i]);
+		}
+		return ranked;
+	}
+
+	/**
+	 *
+	 * @param entries
+	 * @return number of distinct entities among entries
+	 */
+	public int countEntities(int[] entries) {
+		BitSet seen = new BitSet(index.getEntityCount());
+		for(int entry : entries){
+			seen.set(index.getEntityId(entry));
+		}
+		return seen.cardinality();
+	}
+
+	/*
+	 * Internals
+	 */
+
+	/**
+	 * Packs score and entity into one long, ordering by score and then by lower entity id
+	 */
+	private static long rankKey(int score, int entity) {
+		return ((long) score << 32) | (Integer.MAX_VALUE - entity);
+	}
+
+	private static int entityOf(long key) {
+		return Integer.MAX_VALUE - (int) (key & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Moves the key at position up the min-heap until its parent is no greater
+	 */
+	private static void siftUp(long[] heap, int position) {
+		long key = heap[position];
+		while(position > 0){
+			int parent = (position - 1) >>> 1;
+			if(heap[parent] <= key){
+				break;
+			}
+			heap[position] = heap[parent];
+			position = parent;
+		}
+		heap[position] = key;
+	}
+
+	/**
+	 * Moves the root of the min-heap of size keys down until its children are no less
+	 */
+	private static void siftDown(long[] heap, int size) {
+		long key = heap[0];
+		int position = 0;
+		int child;
+		while((child = 2 * position + 1) < size){
+			if(child + 1 < size && heap[child + 1] < heap[child]){
+				child++;
+			}
+			if(key <= heap[child]){
+				break;
+			}
+			heap[position] = heap[child];
+			position = child;
+		}
+		heap[position] = key;
+	}
+
+	/**
+	 *
+	 * @param synonym
+	 * @return weight of the synonym scope, from 3 for exact synonyms down to 0 for broad ones
+	 */
+	private static int getScopeWeight(SearchField synonym) {
+		switch(synonym){
+		case EXACT_SYNONYM:
+			return 3;
+		case RELATED_SYNONYM:
+			return 2;
+		case NARROW_SYNONYM:
+			return 1;
+		default:
+			return 0;
+		}
+	}
+
+	private static boolean isAtWordStart(String key, String query) {
+		int from = key.indexOf(query);
+		while(from >= 0){
+			if(from == 0 || !Character.isLetterOrDigit(key.charAt(from - 1))){
+				return true;
+			}
+			from = key.indexOf(query, from + 1);
+		}
+		return false;
+	}
+}
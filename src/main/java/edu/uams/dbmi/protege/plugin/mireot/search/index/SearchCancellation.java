@@ -0,0 +1,51 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.index;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Cooperative cancellation flag for a search.  Long running loops check it once per
+ * batch of entities and give up with a {@link CancellationException} when it is set.
+ */
+public class SearchCancellation {
+
+	/** number of entities or entries processed between two checks */
+	public static final int BATCH_SIZE = 1024;
+
+	private volatile boolean cancelled;
+
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * @throws CancellationException if the search has been cancelled
+	 */
+	public void checkCancelled() {
+		if(cancelled){
+			throw new CancellationException("Search cancelled");
+		}
+	}
+
+	/**
+	 * Called before a long running loop with the units of work it will do; does nothing
+	 * unless overridden to report progress
+	 *
+	 * @param total
+	 */
+	public void begin(long total) {
+	}
+
+	/**
+	 * Checks for cancellation after amount more units of work were done
+	 *
+	 * @param amount
+	 * @throws CancellationException if the search has been cancelled
+	 */
+	public void worked(int amount) {
+		checkCancelled();
+	}
+}
@@ -0,0 +1,67 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.index;
+
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+/**
+ * Fields of an entity that are indexed for searching
+ */
+public enum SearchField {
+
+	LABEL(OWLRDFVocabulary.RDFS_LABEL.getIRI()),
+	DEFINITION(IRI.create("http://purl.obolibrary.org/obo/IAO_0000115")),
+	COMMENT(OWLRDFVocabulary.RDFS_COMMENT.getIRI()),
+	URI(null),
+	EXACT_SYNONYM(IRI.create(SearchField.OBO_IN_OWL + "hasExactSynonym")),
+	RELATED_SYNONYM(IRI.create(SearchField.OBO_IN_OWL + "hasRelatedSynonym")),
+	NARROW_SYNONYM(IRI.create(SearchField.OBO_IN_OWL + "hasNarrowSynonym")),
+	BROAD_SYNONYM(IRI.create(SearchField.OBO_IN_OWL + "hasBroadSynonym"));
+
+	private static final String OBO_IN_OWL = "http://www.geneontology.org/formats/oboInOwl#";
+
+	private final IRI propertyIRI;
+
+	private SearchField(IRI propertyIRI) {
+		this.propertyIRI = propertyIRI;
+	}
+
+	/**
+	 *
+	 * @return IRI of the annotation property holding this field, or null if the field is not an annotation
+	 */
+	public IRI getPropertyIRI() {
+		return propertyIRI;
+	}
+
+	/**
+	 * URIs are matched as a whole identifier (IRI, CURIE or short form), every other
+	 * field is matched on substrings
+	 *
+	 * @return true if the query must identify the entity
+	 */
+	public boolean isExactMatch() {
+		return this == URI;
+	}
+
+	/**
+	 *
+	 * @return true for the oboInOwl synonym fields, whatever their scope
+	 */
+	public boolean isSynonym() {
+		return this == EXACT_SYNONYM || this == RELATED_SYNONYM || this == NARROW_SYNONYM || this == BROAD_SYNONYM;
+	}
+
+	/**
+	 *
+	 * @param propertyIRI
+	 * @return the field stored in the annotation property, or null if that property is not indexed
+	 */
+	public static SearchField forProperty(IRI propertyIRI) {
+		for(SearchField field : values()){
+			if(propertyIRI.equals(field.propertyIRI)){
+				return field;
+			}
+		}
+		return null;
+	}
+}
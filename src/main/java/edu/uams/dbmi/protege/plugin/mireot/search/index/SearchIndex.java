@@ -0,0 +1,617 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.index;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Pattern;
+
+import org.semanticweb.owlapi.model.EntityType;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+/**
+ * Search index over the classes and object properties of an ontology and its imports.
+ *
+ * Every indexed literal (and every entity IRI) is stored as an entry holding the entity,
+ * the field it came from, the original text and a normalized search key.  The keys
+ * are indexed by trigram, so a query only has to look at the entries that share all
+ * of its trigrams instead of walking the whole signature.  IRIs are looked up by
+ * identifier in an {@link IdentifierIndex} instead.
+ */
+public class SearchIndex {
+
+	private static final SearchField[] FIELDS = SearchField.values();
+
+	private static final ForkJoinPool POOL = ForkJoinPool.commonPool();
+
+	private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+	private static final int MIN_FUZZY_WORD_LENGTH = 4;
+
+	private final OWLOntology[] ontologies;
+
+	private final List<OWLEntity> entities = new ArrayList<OWLEntity>();
+	private final Map<OWLEntity, Integer> entityIds = new HashMap<OWLEntity, Integer>();
+
+	private int entryCount;
+	private int[] entryEntity = new int[1024];
+	private byte[] entryField = new byte[1024];
+	private int[] entrySource = new int[1024];
+	private String[] entryText = new String[1024];
+	private String[] entryKey = new String[1024];
+
+	private NGramIndex grams = new NGramIndex(1 << 16);
+	private IdentifierIndex identifiers = new IdentifierIndex();
+	private IntList uriEntries = new IntList(1024);
+
+	private volatile boolean parallel;
+
+	private BKTree labelTerms;
+
+	private final LabelTable labels;
+
+	SearchIndex(List<OWLOntology> ontologies, LabelTable labels) {
+		this.ontologies = ontologies.toArray(new OWLOntology[ontologies.size()]);
+		this.labels = labels;
+	}
+
+	/**
+	 * Indexes the labels, synonyms, definitions, comments and IRIs of every class and object
+	 * property in ontology and its imports, reading all annotations of an entity in one visit
+	 *
+	 * @param ontology
+	 * @param imports
+	 * @param labelLanguages language tags in order of preference for the display labels, see {@link LabelTable}
+	 * @param parallel if true, the signature of every ontology is read in parallel on the fork-join pool
+	 * @return the built index
+	 */
+	public static SearchIndex build(OWLOntology ontology, Collection<OWLOntology> imports, List<String> labelLanguages,
+			boolean parallel) {
+		return build(ontology, imports, labelLanguages, parallel, new SearchCancellation());
+	}
+
+	/**
+	 * Builds the index as above, giving up once cancellation is set
+	 *
+	 * @param ontology
+	 * @param imports
+	 * @param labelLanguages
+	 * @param parallel
+	 * @param cancellation told the number of entities to read, and checked once per batch of them
+	 * @return the built index
+	 * @throws java.util.concurrent.CancellationException if the build was cancelled
+	 */
+	public static SearchIndex build(OWLOntology ontology, Collection<OWLOntology> imports, List<String> labelLanguages,
+			boolean parallel, SearchCancellation cancellation) {
+		//list of ontology and imports
+		List<OWLOntology> ontologies = new ArrayList<OWLOntology>();
+		ontologies.add(ontology);
+		ontologies.addAll(imports);
+
+		SearchIndex index = new SearchIndex(ontologies, new LabelTable(labelLanguages));
+
+		Map<IRI, SearchField> fields = new HashMap<IRI, SearchField>();
+		for(SearchField field : SearchField.values()){
+			if(field.getPropertyIRI() != null){
+				fields.put(field.getPropertyIRI(), field);
+			}
+		}
+
+		index.setParallel(parallel);
+
+		//signatures are read up front, so the work to do is known before reading annotations
+		List<List<OWLEntity>> signatures = new ArrayList<List<OWLEntity>>(index.ontologies.length);
+		long total = 0;
+		for(OWLOntology ont : index.ontologies){
+			List<OWLEntity> signature = new ArrayList<OWLEntity>(ont.getClassesInSignature());
+			signature.addAll(ont.getObjectPropertiesInSignature());
+			signatures.add(signature);
+			total += signature.size();
+		}
+		cancellation.begin(total);
+
+		for(int source = 0; source < index.ontologies.length; source++){
+			OWLOntology ont = index.ontologies[source];
+			List<OWLEntity> signature = signatures.get(source);
+
+			EntityExtractor extractor = new EntityExtractor(ont, signature, 0, signature.size(), fields, index.labels,
+					parallel, cancellation);
+			ExtractedBatch batch = parallel ? POOL.invoke(extractor) : extractor.compute();
+
+			index.addBatch(batch, source);
+		}
+
+		index.finish();
+
+		return index;
+	}
+
+	/*
+	 * Queries
+	 */
+
+	/**
+	 * Finds the entries matching query in a single pass over the candidates, checking every
+	 * requested field of an entity in the same visit
+	 *
+	 * @param query the query as typed; text fields are matched on its normalized key, identifiers on the query itself
+	 * @param fields fields to match against
+	 * @param types entity types to restrict the search to
+	 * @param maxEdits if above 0, labels within this many typos of the query (or of one of its words) match too
+	 * @param cancellation checked once per batch of entries
+	 * @return ids of the matching entries; identifier matches first, then the others in index order
+	 */
+	public int[] search(String query, Set<SearchField> fields, Set<EntityType<?>> types, int maxEdits,
+			SearchCancellation cancellation) {
+		IntList matches = new IntList();
+		if(fields.isEmpty() || types.isEmpty()){
+			return matches.toArray();
+		}
+
+		boolean[] enabled = enabled(fields);
+		if(enabled[SearchField.URI.ordinal()]){
+			this.addIdentifierMatches(matches, query, types);
+		}
+
+		String key = SearchKeys.normalize(query);
+		if(key.isEmpty()){
+			//nothing but separators, which would match every text
+			return matches.toArray();
+		}
+
+		//without trigram candidates (query too short) every entry has to be checked
+		int[] candidates = grams.candidates(key);
+		int count = candidates == null ? entryCount : candidates.length;
+		matches.addAll(this.match(candidates, count, key, enabled, types, cancellation));
+
+		if(maxEdits > 0 && enabled[SearchField.LABEL.ordinal()]){
+			cancellation.checkCancelled();
+			addFuzzyMatches(matches, key, types, maxEdits);
+		}
+
+		return matches.toArray();
+	}
+
+	/**
+	 * Finds the entries matching query among the matches of an earlier search whose query
+	 * key is contained in the key of query.  A text containing the longer key contains the
+	 * shorter one too, so only those matches are checked instead of the trigram candidates;
+	 * identifiers are looked up again, as they are matched whole.
+	 *
+	 * @param previous entries found by a search without typos, see {@link #search}
+	 * @param query the query as typed
+	 * @param fields fields to match against, the ones previous was found in
+	 * @param types entity types to restrict the search to
+	 * @param cancellation checked once per batch of entries
+	 * @return ids of the matching entries, as {@link #search} would find them without typos
+	 */
+	public int[] refine(int[] previous, String query, Set<SearchField> fields, Set<EntityType<?>> types,
+			SearchCancellation cancellation) {
+		IntList matches = new IntList();
+		if(fields.isEmpty() || types.isEmpty()){
+			return matches.toArray();
+		}
+
+		boolean[] enabled = enabled(fields);
+		if(enabled[SearchField.URI.ordinal()]){
+			this.addIdentifierMatches(matches, query, types);
+		}
+
+		String key = SearchKeys.normalize(query);
+		if(key.isEmpty()){
+			return matches.toArray();
+		}
+
+		matches.addAll(this.match(previous, previous.length, key, enabled, types, cancellation));
+		return matches.toArray();
+	}
+
+	/*
+	 * Accessors
+	 */
+
+	/**
+	 *
+	 * @param entry
+	 * @return id of the entity the entry belongs to, shared by all entries of that entity
+	 */
+	public int getEntityId(int entry) {
+		return entryEntity[entry];
+	}
+
+	public OWLEntity getEntity(int entry) {
+		return entities.get(entryEntity[entry]);
+	}
+
+	public SearchField getField(int entry) {
+		return FIELDS[entryField[entry]];
+	}
+
+	/**
+	 *
+	 * @param entry
+	 * @return the original text of the entry, used as match context
+	 */
+	public String getText(int entry) {
+		return entryText[entry];
+	}
+
+	/**
+	 *
+	 * @param entry
+	 * @return the normalized key the entry is matched on, see {@link SearchKeys}
+	 */
+	public String getKey(int entry) {
+		return entryKey[entry];
+	}
+
+	/**
+	 *
+	 * @param entry
+	 * @return preferred label of the entry's entity, or the short form of its IRI if it has no label
+	 */
+	public String getLabel(int entry) {
+		String label = labels.getLabel(entryEntity[entry]);
+		if(label == null){
+			return entities.get(entryEntity[entry]).getIRI().getShortForm();
+		}
+		return label;
+	}
+
+	public LabelTable getLabelTable() {
+		return labels;
+	}
+
+	/**
+	 *
+	 * @param entry
+	 * @return ontology (from the imports closure) the entry was read from, or null if the index was built without one
+	 */
+	public OWLOntology getSource(int entry) {
+		return ontologies.length == 0 ? null : ontologies[entrySource[entry]];
+	}
+
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	/**
+	 * 
+	 * @param parallel if true, large candidate sets are matched in parallel on the fork-join pool
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	public int getEntityCount() {
+		return entities.size();
+	}
+
+	public int getEntryCount() {
+		return entryCount;
+	}
+
+	/**
+	 *
+	 * @return the ontology and its imports, in the order entries refer to them as source
+	 */
+	List<OWLOntology> getOntologies() {
+		return Arrays.asList(ontologies);
+	}
+
+	/*
+	 * Cache
+	 */
+
+	/**
+	 * Writes the index in the form read back by {@link #read}, everything but the sources
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	void write(DataOutputStream out) throws IOException {
+		labels.write(out);
+
+		out.writeInt(entities.size());
+		for(OWLEntity entity : entities){
+			out.writeBoolean(entity.isOWLClass());
+			IndexCache.writeString(out, entity.toStringID());
+		}
+
+		out.writeInt(entryCount);
+		IndexCache.writeInts(out, entryEntity, entryCount);
+		out.write(entryField, 0, entryCount);
+		IndexCache.writeInts(out, entrySource, entryCount);
+		for(int entry = 0; entry < entryCount; entry++){
+			IndexCache.writeString(out, entryText[entry]);
+			//most keys are their text, those are only stored once
+			IndexCache.writeString(out, entryKey[entry].equals(entryText[entry]) ? null : entryKey[entry]);
+		}
+
+		IndexCache.writeInts(out, uriEntries.toArray(), uriEntries.size());
+		grams.write(out);
+		identifiers.write(out);
+	}
+
+	/**
+	 *
+	 * @param in positioned at an index written by {@link #write}
+	 * @param ontologies the ontology and its imports, in the order they were written
+	 * @param factory used to recreate the indexed entities
+	 * @return the index
+	 * @throws IOException
+	 */
+	static SearchIndex read(DataInputStream in, List<OWLOntology> ontologies, OWLDataFactory factory) throws IOException {
+		SearchIndex index = new SearchIndex(ontologies, LabelTable.read(in));
+
+		int entityCount = in.readInt();
+		for(int id = 0; id < entityCount; id++){
+			boolean isClass = in.readBoolean();
+			IRI iri = IRI.create(IndexCache.readString(in));
+
+			OWLEntity entity = isClass ? factory.getOWLClass(iri) : factory.getOWLObjectProperty(iri);
+			index.entities.add(entity);
+			index.entityIds.put(entity, id);
+		}
+
+		index.entryCount = in.readInt();
+		index.entryEntity = IndexCache.readInts(in);
+		index.entryField = new byte[index.entryCount];
+		in.readFully(index.entryField);
+		index.entrySource = IndexCache.readInts(in);
+		index.entryText = new String[index.entryCount];
+		index.entryKey = new String[index.entryCount];
+		for(int entry = 0; entry < index.entryCount; entry++){
+			String text = IndexCache.readString(in);
+			String key = IndexCache.readString(in);
+			index.entryText[entry] = text;
+			index.entryKey[entry] = key == null ? text : key;
+		}
+
+		int[] uriEntries = IndexCache.readInts(in);
+		index.uriEntries = new IntList(uriEntries.length);
+		for(int entry : uriEntries){
+			index.uriEntries.add(entry);
+		}
+		index.grams = NGramIndex.read(in);
+		index.identifiers = IdentifierIndex.read(in);
+
+		return index;
+	}
+
+	/*
+	 * Internals
+	 */
+
+	private static boolean[] enabled(Set<SearchField> fields) {
+		boolean[] enabled = new boolean[FIELDS.length];
+		for(SearchField field : fields){
+			enabled[field.ordinal()] = true;
+		}
+		return enabled;
+	}
+
+	private void addIdentifierMatches(IntList matches, String query, Set<EntityType<?>> types) {
+		//exact identifier matches come straight from the hash index
+		for(int entity : identifiers.lookup(query)){
+			if(types.contains(entities.get(entity).getEntityType())){
+				matches.add(uriEntries.get(entity));
+			}
+		}
+	}
+
+	private IntList match(int[] candidates, int count, String key, boolean[] enabled, Set<EntityType<?>> types,
+			SearchCancellation cancellation) {
+		MatchTask task = new MatchTask(candidates, 0, count, key, enabled, types, cancellation);
+		if(parallel && count > MatchTask.THRESHOLD){
+			return POOL.invoke(task);
+		}
+		return task.compute();
+	}
+
+	private boolean matches(int entry, String query, boolean[] enabled, Set<EntityType<?>> types) {
+		if(!enabled[entryField[entry]]){
+			return false;
+		}
+		if(!types.contains(entities.get(entryEntity[entry]).getEntityType())){
+			return false;
+		}
+		if(FIELDS[entryField[entry]].isExactMatch()){
+			//only matched through the identifier index
+			return false;
+		}
+		return entryKey[entry].contains(query);
+	}
+
+	private void addFuzzyMatches(IntList matches, String query, Set<EntityType<?>> types, int maxEdits) {
+		IntList fuzzy = getLabelTerms().search(query, maxEdits);
+		BitSet added = new BitSet(entryCount);
+
+		for(int i = 0; i < fuzzy.size(); i++){
+			int entry = fuzzy.get(i);
+
+			//labels containing the query were already matched exactly
+			if(added.get(entry) || entryKey[entry].contains(query)){
+				continue;
+			}
+			if(types.contains(entities.get(entryEntity[entry]).getEntityType())){
+				matches.add(entry);
+				added.set(entry);
+			}
+		}
+	}
+
+	/**
+	 * The label vocabulary (whole labels and their longer words) is only built for the first fuzzy search,
+	 * so indexes that are never searched fuzzily don't pay for it
+	 *
+	 * @return BK-tree from label terms to label entries
+	 */
+	private synchronized BKTree getLabelTerms() {
+		if(labelTerms == null){
+			BKTree tree = new BKTree();
+			Set<String> words = new HashSet<String>();
+
+			for(int entry = 0; entry < entryCount; entry++){
+				if(entryField[entry] != SearchField.LABEL.ordinal()){
+					continue;
+				}
+
+				String key = entryKey[entry];
+				tree.add(key, entry);
+
+				words.clear();
+				for(String word : WORD_SEPARATOR.split(key)){
+					if(word.length() >= MIN_FUZZY_WORD_LENGTH && !word.equals(key) && words.add(word)){
+						tree.add(word, entry);
+					}
+				}
+			}
+
+			labelTerms = tree;
+		}
+		return labelTerms;
+	}
+
+	void addBatch(ExtractedBatch batch, int source) {
+		int entry = 0;
+
+		for(int i = 0; i < batch.entities.size(); i++){
+			OWLEntity entity = batch.entities.get(i);
+
+			Integer id = entityIds.get(entity);
+			if(id == null){
+				id = entities.size();
+				entities.add(entity);
+				entityIds.put(entity, id);
+
+				String uri = entity.toStringID();
+				identifiers.add(id, uri);
+				uriEntries.add(entryCount);
+				addEntry(id, SearchField.URI, source, uri, uri);
+			}
+
+			if(batch.labels.get(i) != null){
+				labels.offer(id, batch.labels.get(i), batch.labelRanks.get(i));
+			}
+
+			int last = entry + batch.entryCounts.get(i);
+			for(; entry < last; entry++){
+				addEntry(id, FIELDS[batch.fields.get(entry)], source, batch.texts.get(entry), batch.keys.get(entry));
+			}
+		}
+	}
+
+	private void addEntry(int entity, SearchField field, int source, String text, String key) {
+		if(entryCount == entryEntity.length){
+			int capacity = entryCount + (entryCount >> 1);
+			entryEntity = Arrays.copyOf(entryEntity, capacity);
+			entryField = Arrays.copyOf(entryField, capacity);
+			entrySource = Arrays.copyOf(entrySource, capacity);
+			entryText = Arrays.copyOf(entryText, capacity);
+			entryKey = Arrays.copyOf(entryKey, capacity);
+		}
+
+		entryEntity[entryCount] = entity;
+		entryField[entryCount] = (byte) field.ordinal();
+		entrySource[entryCount] = source;
+		entryText[entryCount] = text;
+		entryKey[entryCount] = key;
+
+		if(!field.isExactMatch()){
+			grams.add(entryCount, key);
+		}
+		entryCount++;
+	}
+
+	/**
+	 * Shrinks the index to its contents once every batch is added
+	 */
+	void finish() {
+		grams.trim();
+		trim();
+	}
+
+	private void trim() {
+		labels.trim(entities.size());
+		entryEntity = Arrays.copyOf(entryEntity, entryCount);
+		entryField = Arrays.copyOf(entryField, entryCount);
+		entrySource = Arrays.copyOf(entrySource, entryCount);
+		entryText = Arrays.copyOf(entryText, entryCount);
+		entryKey = Arrays.copyOf(entryKey, entryCount);
+	}
+
+	/**
+	 * Matches a range of candidate entries.  Large ranges are split and matched in parallel,
+	 * each half collecting into its own list; halves are concatenated in index order.
+	 */
+	private class MatchTask extends RecursiveTask<IntList> {
+
+		private static final long serialVersionUID = 1L;
+
+		static final int THRESHOLD = 16384;
+
+		private final int[] candidates;
+		private final int from;
+		private final int to;
+		private final String query;
+		private final boolean[] enabled;
+		private final Set<EntityType<?>> types;
+		private final SearchCancellation cancellation;
+
+		/**
+		 * @param candidates entries to check, or null to check every entry
+		 */
+		MatchTask(int[] candidates, int from, int to, String query, boolean[] enabled, Set<EntityType<?>> types,
+				SearchCancellation cancellation) {
+			this.candidates = candidates;
+			this.from = from;
+			this.to = to;
+			this.query = query;
+			this.enabled = enabled;
+			this.types = types;
+			this.cancellation = cancellation;
+		}
+
+		@Override
+		protected IntList compute() {
+			if(!parallel || to - from <= THRESHOLD){
+				IntList matches = new IntList();
+				for(int i = from; i < to; i++){
+					if((i - from) % SearchCancellation.BATCH_SIZE == 0){
+						cancellation.checkCancelled();
+					}
+
+					int entry = candidates == null ? i : candidates[i];
+					if(matches(entry, query, enabled, types)){
+						matches.add(entry);
+					}
+				}
+				return matches;
+			}
+
+			int middle = (from + to) >>> 1;
+			MatchTask left = new MatchTask(candidates, from, middle, query, enabled, types, cancellation);
+			MatchTask right = new MatchTask(candidates, middle, to, query, enabled, types, cancellation);
+
+			left.fork();
+			IntList rightMatches = right.compute();
+			IntList leftMatches = left.join();
+
+			leftMatches.addAll(rightMatches);
+			return leftMatches;
+		}
+	}
+}
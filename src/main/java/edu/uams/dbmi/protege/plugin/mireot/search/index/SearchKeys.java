@@ -0,0 +1,99 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.index;
+
+import java.util.Locale;
+
+import com.ibm.icu.lang.UCharacter;
+import com.ibm.icu.lang.UCharacterCategory;
+import com.ibm.icu.text.Normalizer2;
+
+/**
+ * Normalized keys that literals are indexed under and queries are compared with.
+ *
+ * Text is case folded and compatibility normalized (NFKC_Casefold), accents are dropped,
+ * Greek letters are spelled out in Latin (&beta; becomes beta) and every run of whitespace,
+ * dashes and underscores becomes a single space.  So "beta-alanine", "Beta alanine" and
+ * "&beta;-Alanine" all have the key "beta alanine".
+ */
+public class SearchKeys {
+
+	private static final Normalizer2 CASE_FOLD = Normalizer2.getNFKCCasefoldInstance();
+	private static final Normalizer2 DECOMPOSE = Normalizer2.getNFDInstance();
+
+	//names of the lower case Greek letters from U+03B1 (alpha) to U+03C9 (omega), final sigma included
+	private static final String[] GREEK_LETTERS = {
+		"alpha", "beta", "gamma", "delta", "epsilon", "zeta", "eta", "theta", "iota", "kappa", "lambda", "mu",
+		"nu", "xi", "omicron", "pi", "rho", "sigma", "sigma", "tau", "upsilon", "phi", "chi", "psi", "omega"
+	};
+	private static final int FIRST_GREEK_LETTER = 0x03B1;
+
+	private SearchKeys() {
+	}
+
+	/**
+	 *
+	 * @param text a literal or a query
+	 * @return the normalized key for text
+	 */
+	public static String normalize(String text) {
+		String folded;
+		if(isAscii(text)){
+			//nothing for ICU to fold or decompose
+			folded = text.toLowerCase(Locale.ROOT);
+		} else {
+			folded = DECOMPOSE.normalize(CASE_FOLD.normalize(text));
+		}
+
+		StringBuilder key = new StringBuilder(folded.length());
+		boolean separator = false;
+
+		for(int i = 0; i < folded.length();){
+			int c = folded.codePointAt(i);
+			i += Character.charCount(c);
+
+			int type = c < 0x80 ? -1 : UCharacter.getType(c);
+			if(type == UCharacterCategory.NON_SPACING_MARK){
+				//accents, split off the base letter by the decomposition
+				continue;
+			}
+			if(isSeparator(c, type)){
+				separator = key.length() > 0;
+				continue;
+			}
+
+			if(separator){
+				key.append(' ');
+				separator = false;
+			}
+
+			int greek = c - FIRST_GREEK_LETTER;
+			if(greek >= 0 && greek < GREEK_LETTERS.length){
+				key.append(GREEK_LETTERS[greek]);
+			} else {
+				key.appendCodePoint(c);
+			}
+		}
+
+		return key.toString();
+	}
+
+	/*
+	 * Internals
+	 */
+
+	private static boolean isAscii(String text) {
+		for(int i = 0; i < text.length(); i++){
+			if(text.charAt(i) >= 0x80){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isSeparator(int c, int type) {
+		if(c < 0x80){
+			return c == '-' || c == '_' || Character.isWhitespace(c);
+		}
+		return type == UCharacterCategory.DASH_PUNCTUATION || type == UCharacterCategory.CONNECTOR_PUNCTUATION
+				|| UCharacter.isUWhiteSpace(c);
+	}
+}
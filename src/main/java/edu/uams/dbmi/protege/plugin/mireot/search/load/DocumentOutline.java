@@ -0,0 +1,506 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.load;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.semanticweb.owlapi.model.EntityType;
+
+import edu.uams.dbmi.protege.plugin.mireot.search.index.IntList;
+
+/**
+ * The lines of a streamed document each subject is described on, so the description of
+ * one term can be read back by seeking to its lines instead of parsing the whole document.
+ *
+ * A subject's lines are those of the top-level elements (OBO stanzas) that reported it,
+ * found with a {@link Recorder} while the document is streamed for indexing.  Read back,
+ * they are wrapped in the document's header (the XML prolog and root start tag, or the OBO
+ * header) and the lines of the ontology and annotation property elements, which makes a
+ * small document of the same format.  A subject whose element shares a line with another
+ * element can't be told apart by line, and is left to a full parse.
+ */
+public class DocumentOutline {
+
+	//"MIRO", followed by the format version
+	private static final int MAGIC = 0x4D49524F;
+	private static final int VERSION = 1;
+
+	//byte offset of every LINE_STEP-th line is kept, the lines in between are counted
+	private static final int LINE_STEP = 256;
+
+	private final long[] lineOffsets;
+	private final int headerLines;
+	private final String footer;
+
+	//sorted hashes of the subjects; lines of subjects[i] are the pairs from subjectStarts[i] up to subjectStarts[i + 1]
+	private final int[] subjects;
+	private final int[] subjectStarts;
+	//first and last line of each element, first is -1 for elements sharing a line
+	private final int[] lines;
+	private final int[] sharedLines;
+
+	private DocumentOutline(long[] lineOffsets, int headerLines, String footer, int[] subjects, int[] subjectStarts,
+			int[] lines, int[] sharedLines) {
+		this.lineOffsets = lineOffsets;
+		this.headerLines = headerLines;
+		this.footer = footer;
+		this.subjects = subjects;
+		this.subjectStarts = subjectStarts;
+		this.lines = lines;
+		this.sharedLines = sharedLines;
+	}
+
+	/**
+	 * Reads the lines describing subject out of document
+	 *
+	 * @param document the document this outline was recorded from
+	 * @param subject IRI of the subject
+	 * @return a document of the same format holding the header, the shared elements and the
+	 * elements of subject (and of any subject with the same hash), or null if subject's lines aren't known
+	 * @throws IOException
+	 */
+	public byte[] read(File document, String subject) throws IOException {
+		int found = Arrays.binarySearch(subjects, subject.hashCode());
+		if(found < 0){
+			return null;
+		}
+
+		//first line to last line, in document order
+		Map<Integer, Integer> ranges = new TreeMap<Integer, Integer>();
+		for(int i = 2 * subjectStarts[found]; i < 2 * subjectStarts[found + 1]; i += 2){
+			if(lines[i] < 0){
+				return null;
+			}
+			ranges.put(lines[i], lines[i + 1]);
+		}
+		for(int i = 0; i < sharedLines.length; i += 2){
+			ranges.put(sharedLines[i], sharedLines[i + 1]);
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RandomAccessFile file = new RandomAccessFile(document, "r");
+		try {
+			copy(file, 1, headerLines, out);
+			for(Map.Entry<Integer, Integer> range : ranges.entrySet()){
+				copy(file, range.getKey(), range.getValue(), out);
+			}
+		} finally {
+			file.close();
+		}
+		out.write(footer.getBytes(StandardCharsets.UTF_8));
+		return out.toByteArray();
+	}
+
+	/*
+	 * Cache
+	 */
+
+	/**
+	 * Writes the outline to file, replacing it
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(headerLines);
+			out.writeUTF(footer);
+
+			out.writeInt(lineOffsets.length);
+			for(long offset : lineOffsets){
+				out.writeLong(offset);
+			}
+			writeInts(out, subjects);
+			writeInts(out, subjectStarts);
+			writeInts(out, lines);
+			writeInts(out, sharedLines);
+		} finally {
+			out.close();
+		}
+
+		//readers only ever see complete files
+		file.delete();
+		if(!temp.renameTo(file)){
+			temp.delete();
+			throw new IOException("could not rename " + temp + " to " + file);
+		}
+	}
+
+	/**
+	 *
+	 * @param file written by {@link #write}
+	 * @return the outline, or null if there is none or it can't be read
+	 */
+	public static DocumentOutline read(File file) {
+		if(!file.isFile()){
+			return null;
+		}
+
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+			try {
+				if(in.readInt() != MAGIC || in.readInt() != VERSION){
+					return null;
+				}
+				int headerLines = in.readInt();
+				String footer = in.readUTF();
+
+				long[] lineOffsets = new long[in.readInt()];
+				for(int i = 0; i < lineOffsets.length; i++){
+					lineOffsets[i] = in.readLong();
+				}
+				return new DocumentOutline(lineOffsets, headerLines, footer, readInts(in), readInts(in),
+						readInts(in), readInts(in));
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			System.out.println("Could not read document outline " + file + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/*
+	 * Internals
+	 */
+
+	private void copy(RandomAccessFile file, int firstLine, int lastLine, ByteArrayOutputStream out) throws IOException {
+		if(lastLine < firstLine){
+			return;
+		}
+		long start = this.lineStart(file, firstLine);
+		long end = this.lineStart(file, lastLine + 1);
+
+		byte[] buffer = new byte[(int) (end - start)];
+		file.seek(start);
+		file.readFully(buffer);
+		out.write(buffer);
+	}
+
+	/**
+	 *
+	 * @return byte offset line starts at, the length of file past the last line
+	 */
+	private long lineStart(RandomAccessFile file, int line) throws IOException {
+		int step = Math.min((line - 1) / LINE_STEP, lineOffsets.length - 1);
+		long offset = lineOffsets[step];
+		int current = step * LINE_STEP + 1;
+
+		byte[] buffer = new byte[1 << 13];
+		file.seek(offset);
+		while(current < line){
+			int read = file.read(buffer);
+			if(read < 0){
+				return offset;
+			}
+			for(int i = 0; i < read; i++){
+				if(buffer[i] == '\n' && ++current == line){
+					return offset + i + 1;
+				}
+			}
+			offset += read;
+		}
+		return offset;
+	}
+
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+		out.writeInt(values.length);
+		for(int value : values){
+			out.writeInt(value);
+		}
+	}
+
+	private static int[] readInts(DataInputStream in) throws IOException {
+		int[] values = new int[in.readInt()];
+		for(int i = 0; i < values.length; i++){
+			values[i] = in.readInt();
+		}
+		return values;
+	}
+
+	/**
+	 * Records an outline while a document is streamed through {@link StreamingParser}.  The
+	 * parser reports where the header and every top-level element end; the subjects an
+	 * element describes are those reported to the handler while it is read.
+	 *
+	 * Each element is only recorded once the next one is known to start on a later line.
+	 */
+	public static class Recorder {
+
+		private final IntList steps = new IntList();
+		private long[] lineOffsets = new long[64];
+		private int lineOffsetCount;
+		private boolean countable = true;
+
+		private boolean hasHeader;
+		private int headerLines;
+		private String footer;
+		private int lastEnd;
+
+		private boolean inElement;
+		private int currentFirst;
+		private boolean currentShared;
+		private List<String> current = new ArrayList<String>(2);
+
+		private List<String> pending;
+		private int pendingFirst;
+		private int pendingLast;
+		private boolean pendingShared;
+
+		//hash of the subject in the high int, index of the element in the low one
+		private long[] records = new long[1024];
+		private int recordCount;
+		private final IntList recordLines = new IntList(2048);
+
+		private final Set<String> sharedSubjects = new HashSet<String>();
+
+		public Recorder() {
+			lineOffsets[lineOffsetCount++] = 0;
+		}
+
+		/**
+		 *
+		 * @return the recorded outline, or null if the document can't be read back by line
+		 */
+		public DocumentOutline finish() {
+			if(!countable || !hasHeader){
+				return null;
+			}
+
+			long[] sorted = Arrays.copyOf(records, recordCount);
+			Arrays.sort(sorted);
+
+			IntList subjects = new IntList();
+			IntList subjectStarts = new IntList();
+			int[] lines = new int[2 * recordCount];
+			for(int i = 0; i < recordCount; i++){
+				int hash = (int) (sorted[i] >> 32);
+				int element = (int) sorted[i];
+				if(subjects.isEmpty() || subjects.get(subjects.size() - 1) != hash){
+					subjects.add(hash);
+					subjectStarts.add(i);
+				}
+				lines[2 * i] = recordLines.get(2 * element);
+				lines[2 * i + 1] = recordLines.get(2 * element + 1);
+			}
+			subjectStarts.add(recordCount);
+
+			int[] subjectArray = subjects.toArray();
+			int[] startArray = subjectStarts.toArray();
+
+			IntList shared = new IntList();
+			for(String subject : sharedSubjects){
+				int found = Arrays.binarySearch(subjectArray, subject.hashCode());
+				if(found < 0){
+					continue;
+				}
+				for(int i = 2 * startArray[found]; i < 2 * startArray[found + 1]; i += 2){
+					if(lines[i] < 0){
+						//no subject could be read back with its annotation property labels
+						return null;
+					}
+					shared.add(lines[i]);
+					shared.add(lines[i + 1]);
+				}
+			}
+
+			return new DocumentOutline(Arrays.copyOf(lineOffsets, lineOffsetCount), headerLines,
+					footer, subjectArray, startArray, lines, shared.toArray());
+		}
+
+		/*
+		 * Told by the parser
+		 */
+
+		/**
+		 *
+		 * @param in the raw document
+		 * @return in, counting the lines read through it
+		 */
+		InputStream count(InputStream in) {
+			return new LineCounter(in);
+		}
+
+		/**
+		 * Streams handler's reports through the recorder
+		 */
+		StreamingParser.Handler wrap(final StreamingParser.Handler handler) {
+			return new StreamingParser.Handler() {
+				@Override
+				public void ontology(String ontologyIRI, String versionIRI) {
+					sharedSubjects.add(ontologyIRI);
+					subject(ontologyIRI);
+					handler.ontology(ontologyIRI, versionIRI);
+				}
+
+				@Override
+				public void entity(String iri, EntityType<?> type) {
+					if(type == EntityType.ANNOTATION_PROPERTY){
+						sharedSubjects.add(iri);
+					}
+					subject(iri);
+					handler.entity(iri, type);
+				}
+
+				@Override
+				public void annotation(String subject, String property, String value, String language) {
+					subject(subject);
+					handler.annotation(subject, property, value, language);
+				}
+			};
+		}
+
+		/**
+		 *
+		 * @param lastLine last line of the header
+		 * @param footer closing tag of the root element, "" for none
+		 */
+		void header(int lastLine, String footer) {
+			this.hasHeader = true;
+			this.headerLines = lastLine;
+			this.footer = footer;
+			this.lastEnd = lastLine;
+		}
+
+		/**
+		 *
+		 * @param onNewLine whether the element starts on a line after the end of the last one, or of the header
+		 */
+		void startElement(boolean onNewLine) {
+			this.flushPending(!onNewLine);
+
+			inElement = true;
+			currentFirst = lastEnd + 1;
+			currentShared = !hasHeader || !onNewLine;
+		}
+
+		/**
+		 *
+		 * @param line line the element ends on
+		 */
+		void endElement(int line) {
+			pending = current;
+			pendingFirst = currentFirst;
+			pendingLast = line;
+			pendingShared = currentShared;
+
+			current = new ArrayList<String>(2);
+			inElement = false;
+			lastEnd = line;
+		}
+
+		/**
+		 *
+		 * @param onNewLine whether the root element ends on a line after the end of the last element
+		 */
+		void endRoot(boolean onNewLine) {
+			this.flushPending(!onNewLine);
+		}
+
+		private void flushPending(boolean lastLineShared) {
+			if(pending != null){
+				this.flush(pending, pendingFirst, pendingLast, pendingShared || lastLineShared);
+				pending = null;
+			}
+		}
+
+		private void subject(String subject) {
+			if(inElement && !current.contains(subject)){
+				current.add(subject);
+			}
+		}
+
+		private void flush(List<String> subjects, int first, int last, boolean shared) {
+			int element = recordLines.size() / 2;
+			recordLines.add(shared ? -1 : first);
+			recordLines.add(last);
+
+			for(String subject : subjects){
+				if(recordCount == records.length){
+					records = Arrays.copyOf(records, recordCount * 2);
+				}
+				records[recordCount++] = ((long) subject.hashCode() << 32) | element;
+			}
+		}
+
+		/**
+		 * Keeps the offset of every {@link DocumentOutline#LINE_STEP}-th line.  Lines end with
+		 * LF or CRLF; a lone CR, or a byte order mark of a two-byte encoding, makes the
+		 * lines uncountable by byte.
+		 */
+		private class LineCounter extends FilterInputStream {
+
+			private long position;
+			private int newlines;
+			private boolean afterCR;
+
+			LineCounter(InputStream in) {
+				super(in);
+			}
+
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if(b >= 0){
+					this.count((byte) b);
+				}
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int read = super.read(b, off, len);
+				for(int i = 0; i < read; i++){
+					this.count(b[off + i]);
+				}
+				return read;
+			}
+
+			@Override
+			public long skip(long n) throws IOException {
+				//skipped bytes can't be counted
+				countable = false;
+				return super.skip(n);
+			}
+
+			private void count(byte b) {
+				if(position < 2 && (b == (byte) 0xFE || b == (byte) 0xFF)){
+					countable = false;
+				}
+				if(afterCR && b != '\n'){
+					countable = false;
+				}
+				afterCR = b == '\r';
+
+				position++;
+				if(b == '\n' && ++newlines % LINE_STEP == 0){
+					if(lineOffsetCount == lineOffsets.length){
+						lineOffsets = Arrays.copyOf(lineOffsets, lineOffsetCount * 2);
+					}
+					lineOffsets[lineOffsetCount++] = position;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,491 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.load;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPInputStream;
+
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLOntologyIRIMapper;
+
+import edu.uams.dbmi.protege.plugin.mireot.search.index.IndexCache;
+
+/**
+ * Local copies of the ontology documents downloaded over HTTP.
+ *
+ * A document is downloaded once and revalidated on every later use with its ETag and
+ * Last-Modified date, so an unchanged document costs a single request and a disk read.
+ * When the server can't be reached, the local copy is used as it is.  Every document is
+ * stored next to a small properties file holding its URL, validators and content hash.
+ *
+ * As an IRI mapper, the store makes an ontology manager load documents, imports included,
+ * from their local copies.
+ *
+ * The least recently used documents are deleted once the copies take up more than the
+ * size limit, except for the most recent one and those pinned, such as the documents of
+ * a load in progress or of an ontology streamed from its local copy.
+ */
+public class DocumentStore implements OWLOntologyIRIMapper {
+
+	//the formats OWLAPI can parse, RDF/XML first, as OWLAPI asks for them
+	private static final String ACCEPT = "application/rdf+xml, application/owl+xml; q=0.9, application/xml; q=0.7, "
+			+ "text/xml; q=0.6, text/plain; q=0.1, */*; q=0.09";
+
+	private static final int MAX_REDIRECTS = 10;
+
+	private static final String DOCUMENT_SUFFIX = ".doc";
+	private static final String METADATA_SUFFIX = ".properties";
+
+	private static final String URL_PROPERTY = "url";
+	private static final String ETAG_PROPERTY = "etag";
+	private static final String LAST_MODIFIED_PROPERTY = "last-modified";
+	private static final String HASH_PROPERTY = "sha256";
+
+	private final File directory;
+
+	private int connectTimeout = 20000;
+	private int readTimeout = 60000;
+	private long maxBytes = 4L << 30;
+
+	//one download at a time per URL, different URLs are fetched concurrently
+	private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+	//pin count of each pinned document, by file name
+	private final Map<String, Integer> pins = new HashMap<String, Integer>();
+
+	/**
+	 *
+	 * @param directory where documents are kept, created when the first document is stored
+	 */
+	public DocumentStore(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 *
+	 * @return the document directory below the user's Protege directory
+	 */
+	public static File getDefaultDirectory() {
+		return new File(System.getProperty("user.home"),
+				".Protege" + File.separator + "mireot" + File.separator + "documents");
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 *
+	 * @param maxBytes size the local copies may take up before the least recently used ones are deleted
+	 */
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Keeps the local copy of url from being deleted to make room, until it is unpinned as
+	 * many times as it was pinned
+	 *
+	 * @param url
+	 */
+	public void pin(String url) {
+		String name = getFileName(url);
+		synchronized(pins){
+			Integer count = pins.get(name);
+			pins.put(name, count == null ? 1 : count + 1);
+		}
+	}
+
+	/**
+	 *
+	 * @param url pinned before, see {@link #pin(String)}
+	 */
+	public void unpin(String url) {
+		String name = getFileName(url);
+		synchronized(pins){
+			Integer count = pins.get(name);
+			if(count == null || count <= 1){
+				pins.remove(name);
+			} else {
+				pins.put(name, count - 1);
+			}
+		}
+	}
+
+	/**
+	 * Returns the local copy of the document at url, downloading it if it is new or changed
+	 *
+	 * @param url
+	 * @return the local copy, or null if url is not an HTTP(S) URL
+	 * @throws IOException if the document can't be downloaded and there is no local copy
+	 */
+	public File fetch(String url) throws IOException {
+		return fetch(url, null);
+	}
+
+	/**
+	 * Returns the local copy of the document at url as above, reporting the download to monitor
+	 *
+	 * @param url
+	 * @param monitor told the bytes downloaded, or null
+	 * @return the local copy, or null if url is not an HTTP(S) URL
+	 * @throws IOException if the document can't be downloaded and there is no local copy, or the
+	 * load was cancelled during the download
+	 */
+	public File fetch(String url, LoadMonitor monitor) throws IOException {
+		if(!isHttp(url)){
+			return null;
+		}
+
+		synchronized(lockFor(url)){
+			File document = getDocumentFile(url);
+			Properties metadata = readMetadata(url);
+			boolean cached = document.isFile() && metadata != null;
+
+			try {
+				HttpURLConnection connection = open(url, cached ? metadata : null);
+				try {
+					int status = connection.getResponseCode();
+
+					if(cached && status == HttpURLConnection.HTTP_NOT_MODIFIED){
+						//marks the document as recently used
+						document.setLastModified(System.currentTimeMillis());
+						return document;
+					}
+					if(status != HttpURLConnection.HTTP_OK){
+						throw new IOException("HTTP " + status + " " + connection.getResponseMessage() + " for " + url);
+					}
+
+					download(url, connection, document, monitor);
+				} finally {
+					connection.disconnect();
+				}
+			} catch (IOException e) {
+				if(!cached || (monitor != null && monitor.isCancelled())){
+					throw e;
+				}
+				System.out.println("Could not revalidate " + url + ", using the local copy: " + e.getMessage());
+				return document;
+			}
+
+			prune();
+			return document;
+		}
+	}
+
+	/**
+	 *
+	 * @param url
+	 * @return the local copy of url without revalidating it, or null if there is none
+	 */
+	public File getCachedFile(String url) {
+		File document = getDocumentFile(url);
+		return document.isFile() && readMetadata(url) != null ? document : null;
+	}
+
+	/**
+	 *
+	 * @param url
+	 * @return SHA-256 hash of the local copy of url, or null if there is none
+	 */
+	public byte[] getContentHash(String url) {
+		Properties metadata = readMetadata(url);
+		if(metadata == null || metadata.getProperty(HASH_PROPERTY) == null){
+			return null;
+		}
+		return fromHex(metadata.getProperty(HASH_PROPERTY));
+	}
+
+	/**
+	 * Maps HTTP(S) IRIs to their local copies, fetching them as needed.  Other IRIs, and
+	 * documents that can't be fetched, are left to the ontology manager.
+	 */
+	@Override
+	public IRI getDocumentIRI(IRI ontologyIRI) {
+		return getDocumentIRI(ontologyIRI, null);
+	}
+
+	/**
+	 * Maps an IRI to its local copy as above, reporting the download to monitor
+	 *
+	 * @param ontologyIRI
+	 * @param monitor told the bytes downloaded, or null
+	 * @return IRI of the local copy, or null if there is none
+	 */
+	public IRI getDocumentIRI(IRI ontologyIRI, LoadMonitor monitor) {
+		String url = ontologyIRI.toString();
+		if(!isHttp(url)){
+			return null;
+		}
+
+		try {
+			File document = fetch(url, monitor);
+			return document == null ? null : IRI.create(document);
+		} catch (IOException e) {
+			System.out.println("Could not fetch " + url + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/*
+	 * Internals
+	 */
+
+	/**
+	 * Opens url, following redirects across protocols (PURLs redirect from http to https,
+	 * which HttpURLConnection won't follow by itself)
+	 *
+	 * @param url
+	 * @param metadata validators of the local copy, or null to download unconditionally
+	 * @return the connection to the final location
+	 * @throws IOException
+	 */
+	private HttpURLConnection open(String url, Properties metadata) throws IOException {
+		URL location = new URL(url);
+
+		for(int redirects = 0; redirects <= MAX_REDIRECTS; redirects++){
+			HttpURLConnection connection = (HttpURLConnection) location.openConnection();
+			connection.setInstanceFollowRedirects(false);
+			connection.setConnectTimeout(connectTimeout);
+			connection.setReadTimeout(readTimeout);
+			connection.setRequestProperty("Accept", ACCEPT);
+			connection.setRequestProperty("Accept-Encoding", "gzip");
+
+			if(metadata != null){
+				if(metadata.getProperty(ETAG_PROPERTY) != null){
+					connection.setRequestProperty("If-None-Match", metadata.getProperty(ETAG_PROPERTY));
+				}
+				if(metadata.getProperty(LAST_MODIFIED_PROPERTY) != null){
+					connection.setRequestProperty("If-Modified-Since", metadata.getProperty(LAST_MODIFIED_PROPERTY));
+				}
+			}
+
+			int status = connection.getResponseCode();
+			if(!isRedirect(status)){
+				return connection;
+			}
+
+			String target = connection.getHeaderField("Location");
+			connection.disconnect();
+			if(target == null){
+				throw new IOException("HTTP " + status + " without a location for " + location);
+			}
+			location = new URL(location, target);
+		}
+
+		throw new IOException("Too many redirects for " + url);
+	}
+
+	/**
+	 * Downloads the response of connection into a temporary file and then replaces the
+	 * local copy of url with it, so a failed download leaves the old copy intact
+	 */
+	private void download(String url, URLConnection connection, File document, LoadMonitor monitor) throws IOException {
+		if(!directory.isDirectory() && !directory.mkdirs()){
+			throw new IOException("Could not create document directory " + directory);
+		}
+
+		File temp = new File(directory, document.getName() + ".tmp");
+		MessageDigest digest = IndexCache.newDigest();
+
+		InputStream in = connection.getInputStream();
+		if(monitor != null){
+			//counted before decompression, to compare with the content length
+			monitor.begin(LoadMonitor.Stage.DOWNLOAD, connection.getContentLengthLong());
+			in = new MonitoredInputStream(in, monitor);
+		}
+		if("gzip".equalsIgnoreCase(connection.getContentEncoding())){
+			in = new GZIPInputStream(in);
+		}
+		in = new DigestInputStream(in, digest);
+
+		try {
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), 1 << 16);
+			try {
+				byte[] buffer = new byte[1 << 16];
+				int read;
+				while((read = in.read(buffer)) > 0){
+					out.write(buffer, 0, read);
+				}
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			temp.delete();
+			throw e;
+		} finally {
+			in.close();
+		}
+
+		//without metadata, a half replaced document is never mistaken for a valid copy
+		File metadataFile = getMetadataFile(url);
+		metadataFile.delete();
+		document.delete();
+		if(!temp.renameTo(document)){
+			temp.delete();
+			throw new IOException("Could not rename " + temp + " to " + document);
+		}
+
+		Properties metadata = new Properties();
+		metadata.setProperty(URL_PROPERTY, url);
+		metadata.setProperty(HASH_PROPERTY, IndexCache.toHex(digest.digest()));
+		if(connection.getHeaderField("ETag") != null){
+			metadata.setProperty(ETAG_PROPERTY, connection.getHeaderField("ETag"));
+		}
+		if(connection.getHeaderField("Last-Modified") != null){
+			metadata.setProperty(LAST_MODIFIED_PROPERTY, connection.getHeaderField("Last-Modified"));
+		}
+
+		OutputStream out = new FileOutputStream(metadataFile);
+		try {
+			metadata.store(out, null);
+		} finally {
+			out.close();
+		}
+	}
+
+	private Properties readMetadata(String url) {
+		File metadataFile = getMetadataFile(url);
+		if(!metadataFile.isFile()){
+			return null;
+		}
+
+		Properties metadata = new Properties();
+		try {
+			InputStream in = new FileInputStream(metadataFile);
+			try {
+				metadata.load(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			System.out.println("Could not read " + metadataFile + ": " + e.getMessage());
+			return null;
+		}
+
+		//file names are hashes, so make sure this really is the document of url
+		return url.equals(metadata.getProperty(URL_PROPERTY)) ? metadata : null;
+	}
+
+	/**
+	 * Deletes the least recently used documents that don't fit in {@link #maxBytes}, keeping
+	 * the most recently used one and the pinned ones
+	 */
+	private void prune() {
+		File[] files = directory.listFiles();
+		if(files == null){
+			return;
+		}
+
+		List<File> documents = new ArrayList<File>();
+		for(File file : files){
+			if(file.getName().endsWith(DOCUMENT_SUFFIX)){
+				documents.add(file);
+			}
+		}
+
+		Collections.sort(documents, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				return Long.compare(b.lastModified(), a.lastModified());
+			}
+		});
+
+		long size = 0;
+		for(int i = 0; i < documents.size(); i++){
+			File document = documents.get(i);
+			String name = document.getName();
+			name = name.substring(0, name.length() - DOCUMENT_SUFFIX.length());
+
+			size += document.length();
+			if(i == 0 || size <= maxBytes || isPinned(name)){
+				continue;
+			}
+
+			size -= document.length();
+			new File(directory, name + METADATA_SUFFIX).delete();
+			document.delete();
+		}
+	}
+
+	private boolean isPinned(String name) {
+		synchronized(pins){
+			return pins.containsKey(name);
+		}
+	}
+
+	private File getDocumentFile(String url) {
+		return new File(directory, getFileName(url) + DOCUMENT_SUFFIX);
+	}
+
+	private File getMetadataFile(String url) {
+		return new File(directory, getFileName(url) + METADATA_SUFFIX);
+	}
+
+	private static String getFileName(String url) {
+		return IndexCache.toHex(IndexCache.newDigest().digest(url.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private Object lockFor(String url) {
+		Object lock = new Object();
+		Object existing = locks.putIfAbsent(url, lock);
+		return existing == null ? lock : existing;
+	}
+
+	private static boolean isHttp(String url) {
+		String lowerCase = url.toLowerCase();
+		return lowerCase.startsWith("http://") || lowerCase.startsWith("https://");
+	}
+
+	private static boolean isRedirect(int status) {
+		return status == HttpURLConnection.HTTP_MOVED_PERM || status == HttpURLConnection.HTTP_MOVED_TEMP
+				|| status == HttpURLConnection.HTTP_SEE_OTHER || status == 307 || status == 308;
+	}
+
+	private static byte[] fromHex(String hex) {
+		byte[] bytes = new byte[hex.length() / 2];
+		for(int i = 0; i < bytes.length; i++){
+			bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+		}
+		return bytes;
+	}
+}
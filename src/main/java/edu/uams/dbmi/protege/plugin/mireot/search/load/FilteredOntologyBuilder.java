@@ -0,0 +1,135 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.load;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyBuilder;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyID;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.OWLSubClassOfAxiom;
+import org.semanticweb.owlapi.model.OWLSubObjectPropertyOfAxiom;
+import org.semanticweb.owlapi.model.parameters.ChangeApplied;
+
+import uk.ac.manchester.cs.owl.owlapi.OWLOntologyFactoryImpl;
+import uk.ac.manchester.cs.owl.owlapi.OWLOntologyImpl;
+import uk.ac.manchester.cs.owl.owlapi.concurrent.ConcurrentOWLOntologyImpl;
+
+import edu.uams.dbmi.protege.plugin.mireot.search.index.IndexCache;
+
+/**
+ * Creates ontologies that only keep the axioms MIREOT uses: declarations, annotation
+ * assertions and subclass and subproperty edges between named entities.  Every other
+ * axiom is dropped as the parser adds it, so equivalences, disjointness and class
+ * expressions never take up heap.
+ *
+ * Installed as a manager's only ontology factory, the filter applies to the loaded
+ * ontology and every ontology it imports.
+ */
+public class FilteredOntologyBuilder implements OWLOntologyBuilder {
+
+	private static final long serialVersionUID = 1L;
+
+	private final boolean concurrent;
+
+	/**
+	 *
+	 * @param concurrent if true, the ontologies are guarded by a read-write lock, as the concurrent manager's are
+	 */
+	public FilteredOntologyBuilder(boolean concurrent) {
+		this.concurrent = concurrent;
+	}
+
+	/**
+	 * Makes manager create every ontology through a new builder
+	 *
+	 * @param manager
+	 * @param concurrent true for a manager created by OWLManager.createConcurrentOWLOntologyManager()
+	 * @return the installed builder
+	 */
+	public static FilteredOntologyBuilder install(OWLOntologyManager manager, boolean concurrent) {
+		FilteredOntologyBuilder builder = new FilteredOntologyBuilder(concurrent);
+		manager.getOntologyFactories().set(new OWLOntologyFactoryImpl(builder));
+		return builder;
+	}
+
+	/**
+	 *
+	 * @param documentHash content hash of a document
+	 * @return key of the snapshot of the filtered ontology parsed from it, apart from the full one
+	 */
+	public static byte[] snapshotKey(byte[] documentHash) {
+		MessageDigest digest = IndexCache.newDigest();
+		digest.update(documentHash);
+		digest.update("filtered".getBytes(StandardCharsets.UTF_8));
+		return digest.digest();
+	}
+
+	/**
+	 *
+	 * @param axiom
+	 * @return true if axiom is kept
+	 */
+	public static boolean isKept(OWLAxiom axiom) {
+		AxiomType<?> type = axiom.getAxiomType();
+
+		if(type == AxiomType.DECLARATION || type == AxiomType.ANNOTATION_ASSERTION
+				|| type == AxiomType.SUB_DATA_PROPERTY || type == AxiomType.SUB_ANNOTATION_PROPERTY_OF){
+			return true;
+		} else if(type == AxiomType.SUBCLASS_OF){
+			OWLSubClassOfAxiom subClassOf = (OWLSubClassOfAxiom) axiom;
+			return !subClassOf.getSubClass().isAnonymous() && !subClassOf.getSuperClass().isAnonymous();
+		} else if(type == AxiomType.SUB_OBJECT_PROPERTY){
+			OWLSubObjectPropertyOfAxiom subPropertyOf = (OWLSubObjectPropertyOfAxiom) axiom;
+			return !subPropertyOf.getSubProperty().isAnonymous() && !subPropertyOf.getSuperProperty().isAnonymous();
+		}
+		return false;
+	}
+
+	@Override
+	public OWLOntology createOWLOntology(OWLOntologyManager manager, OWLOntologyID ontologyID) {
+		FilteredOntology ontology = new FilteredOntology(manager, ontologyID);
+		if(concurrent){
+			return new ConcurrentOWLOntologyImpl(ontology, new ReentrantReadWriteLock());
+		}
+		return ontology;
+	}
+
+	/**
+	 * Ignores the axioms that aren't kept.  Every change the manager applies, parsers'
+	 * included, goes through {@link #applyChange} or {@link #applyChanges}.
+	 */
+	private class FilteredOntology extends OWLOntologyImpl {
+
+		private static final long serialVersionUID = 1L;
+
+		FilteredOntology(OWLOntologyManager manager, OWLOntologyID ontologyID) {
+			super(manager, ontologyID);
+		}
+
+		@Override
+		public ChangeApplied applyChange(OWLOntologyChange change) {
+			if(change.isAddAxiom() && !isKept(change.getAxiom())){
+				return ChangeApplied.NO_OPERATION;
+			}
+			return super.applyChange(change);
+		}
+
+		@Override
+		public ChangeApplied applyChanges(List<? extends OWLOntologyChange> changes) {
+			List<OWLOntologyChange> kept = new ArrayList<OWLOntologyChange>(changes.size());
+			for(OWLOntologyChange change : changes){
+				if(!change.isAddAxiom() || isKept(change.getAxiom())){
+					kept.add(change);
+				}
+			}
+			return super.applyChanges(kept);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.load;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.uams.dbmi.protege.plugin.mireot.search.index.SearchCancellation;
+
+/**
+ * Progress and cancellation of loading one source ontology.  A load goes through
+ * stages, each with its own amount of work, and the work done in the current stage is
+ * counted as it happens.  {@link #changed()} is called on every change, from the
+ * loading thread.
+ *
+ * Once cancelled, the download, parse and index build give up at their next check.
+ */
+public class LoadMonitor extends SearchCancellation {
+
+	public enum Stage {
+		DOWNLOAD("Downloading"),
+		PARSE("Parsing"),
+		IMPORTS("Resolving imports of"),
+		INDEX("Indexing");
+
+		private final String description;
+
+		private Stage(String description) {
+			this.description = description;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+	}
+
+	private final String source;
+
+	private volatile Stage stage;
+	private volatile long total = -1;
+	private final AtomicLong done = new AtomicLong();
+
+	/**
+	 *
+	 * @param source URL or file path being loaded
+	 */
+	public LoadMonitor(String source) {
+		this.source = source;
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 *
+	 * @return the current stage, or null before the first one
+	 */
+	public Stage getStage() {
+		return stage;
+	}
+
+	/**
+	 *
+	 * @return work done in the current stage
+	 */
+	public long getDone() {
+		return done.get();
+	}
+
+	/**
+	 *
+	 * @return work the current stage will do, or -1 if unknown
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * Moves on to stage, with no work done yet
+	 *
+	 * @param stage
+	 * @param total work the stage will do, or -1 if unknown
+	 */
+	public void begin(Stage stage, long total) {
+		this.stage = stage;
+		this.total = total;
+		this.done.set(0);
+		changed();
+	}
+
+	/**
+	 * Sets the work the current stage will do
+	 */
+	@Override
+	public void begin(long total) {
+		this.total = total;
+		this.done.set(0);
+		changed();
+	}
+
+	/**
+	 * Counts amount more work done in the current stage, without checking for cancellation
+	 *
+	 * @param amount
+	 */
+	public void add(long amount) {
+		done.addAndGet(amount);
+		changed();
+	}
+
+	@Override
+	public void worked(int amount) {
+		add(amount);
+		checkCancelled();
+	}
+
+	/**
+	 * Called after every change of stage or work done; does nothing unless overridden
+	 */
+	protected void changed() {
+	}
+}
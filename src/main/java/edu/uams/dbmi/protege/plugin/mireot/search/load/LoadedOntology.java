@@ -0,0 +1,106 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.load;
+
+import java.io.File;
+
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+import edu.uams.dbmi.protege.plugin.mireot.search.index.SearchIndex;
+
+/**
+ * A source ontology loaded for searching: the manager holding it and its imports, and its search index.
+ *
+ * An ontology indexed by streaming its document has no loaded ontology, only the index
+ * and the document to read terms back from, see {@link StreamingLoader}.
+ */
+public class LoadedOntology {
+
+	private final String source;
+	private final OWLOntologyManager manager;
+	private final OWLOntology ontology;
+	private final SearchIndex index;
+	private final long stamp;
+	private final File document;
+	private final DocumentOutline outline;
+
+	/**
+	 *
+	 * @param source URL or file path the ontology was loaded from
+	 * @param manager
+	 * @param ontology
+	 * @param index
+	 * @param stamp identifies the version of the source document, see {@link OntologyRegistry#get}
+	 */
+	public LoadedOntology(String source, OWLOntologyManager manager, OWLOntology ontology, SearchIndex index, long stamp) {
+		this(source, manager, ontology, index, stamp, null, null);
+	}
+
+	/**
+	 *
+	 * @param source URL or file path the document was read from
+	 * @param manager
+	 * @param index
+	 * @param stamp
+	 * @param document local copy of the streamed document
+	 * @param outline where the terms of document are described, or null if unknown
+	 */
+	public LoadedOntology(String source, OWLOntologyManager manager, SearchIndex index, long stamp, File document,
+			DocumentOutline outline) {
+		this(source, manager, null, index, stamp, document, outline);
+	}
+
+	private LoadedOntology(String source, OWLOntologyManager manager, OWLOntology ontology, SearchIndex index,
+			long stamp, File document, DocumentOutline outline) {
+		this.source = source;
+		this.manager = manager;
+		this.ontology = ontology;
+		this.index = index;
+		this.stamp = stamp;
+		this.document = document;
+		this.outline = outline;
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	public OWLOntologyManager getManager() {
+		return manager;
+	}
+
+	/**
+	 *
+	 * @return the loaded ontology, or null if it was streamed
+	 */
+	public OWLOntology getOntology() {
+		return ontology;
+	}
+
+	public SearchIndex getIndex() {
+		return index;
+	}
+
+	public long getStamp() {
+		return stamp;
+	}
+
+	/**
+	 *
+	 * @return local copy of the document the index was streamed from, or null if the ontology is loaded
+	 */
+	public File getDocument() {
+		return document;
+	}
+
+	/**
+	 *
+	 * @return where the terms of the streamed document are described, or null if unknown
+	 */
+	public DocumentOutline getOutline() {
+		return outline;
+	}
+
+	public boolean isStreamed() {
+		return document != null;
+	}
+}
@@ -0,0 +1,43 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.load;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.Reader;
+
+import org.semanticweb.owlapi.io.FileDocumentSource;
+
+/**
+ * Ontology document in a local file, read through a {@link MonitoredInputStream} so
+ * the parse reports its progress in bytes and stops once the load is cancelled.
+ */
+public class MonitoredDocumentSource extends FileDocumentSource {
+
+	private final File file;
+	private final LoadMonitor monitor;
+
+	public MonitoredDocumentSource(File file, LoadMonitor monitor) {
+		super(file);
+		this.file = file;
+		this.monitor = monitor;
+	}
+
+	/**
+	 * Parsers are given the monitored stream rather than a reader
+	 */
+	@Override
+	public boolean isReaderAvailable() {
+		return false;
+	}
+
+	@Override
+	public Reader getReader() {
+		return null;
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		//every parser tried reads the document from the start
+		monitor.begin(LoadMonitor.Stage.PARSE, file.length());
+		return new MonitoredInputStream(super.getInputStream(), monitor);
+	}
+}
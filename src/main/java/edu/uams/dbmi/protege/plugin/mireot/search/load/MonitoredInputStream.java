@@ -0,0 +1,54 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.load;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * Counts the bytes read as work done on a {@link LoadMonitor}.  Once the load is
+ * cancelled every read fails, so whoever is reading gives up.
+ */
+class MonitoredInputStream extends FilterInputStream {
+
+	private final LoadMonitor monitor;
+
+	MonitoredInputStream(InputStream in, LoadMonitor monitor) {
+		super(in);
+		this.monitor = monitor;
+	}
+
+	@Override
+	public int read() throws IOException {
+		checkCancelled();
+		int b = super.read();
+		if(b >= 0){
+			monitor.add(1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		checkCancelled();
+		int read = super.read(b, off, len);
+		if(read > 0){
+			monitor.add(read);
+		}
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		checkCancelled();
+		long skipped = super.skip(n);
+		monitor.add(skipped);
+		return skipped;
+	}
+
+	private void checkCancelled() throws IOException {
+		if(monitor.isCancelled()){
+			throw new InterruptedIOException("Loading " + monitor.getSource() + " cancelled");
+		}
+	}
+}
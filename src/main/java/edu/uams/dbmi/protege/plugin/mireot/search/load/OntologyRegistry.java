@@ -0,0 +1,255 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.load;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Source ontologies kept loaded, with their indexes, so switching back to one of them
+ * doesn't load it again.
+ *
+ * Ontologies are kept in least recently used order, up to a maximum count.  On top of
+ * that, a usage threshold at the heap budget is set on the heap memory pools: once a
+ * pool is still above it after a garbage collection, every ontology but the most
+ * recently used one is evicted.  {@link #removed} is told every ontology dropped.
+ *
+ * The pools are shared by the whole JVM, so their thresholds are shared by every
+ * registry and the budget set last applies.  A pool that already has a threshold set by
+ * someone else, such as Protege, is left alone.
+ */
+public class OntologyRegistry {
+
+	//names of the heap pools whose thresholds registries set, guarding the count of registries too
+	private static final Set<String> watchedPools = new HashSet<String>();
+	private static int registryCount;
+
+	private final Map<String, LoadedOntology> ontologies = new LinkedHashMap<String, LoadedOntology>(16, 0.75f, true);
+
+	private int maxOntologies;
+	private double heapBudget;
+
+	private final Executor evictor;
+
+	private final NotificationListener memoryListener = new NotificationListener() {
+		@Override
+		public void handleNotification(Notification notification, Object handback) {
+			String type = notification.getType();
+			if(!MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type)
+					&& !MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(type)){
+				return;
+			}
+
+			String pool = MemoryNotificationInfo.from((CompositeData) notification.getUserData()).getPoolName();
+			synchronized(watchedPools){
+				if(!watchedPools.contains(pool)){
+					return;
+				}
+			}
+
+			try {
+				evictor.execute(new Runnable() {
+					@Override
+					public void run() {
+						evictForMemory();
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				//shutting down, every ontology is dropped anyway
+			}
+		}
+	};
+
+	/**
+	 *
+	 * @param maxOntologies most ontologies kept at once
+	 * @param heapBudget fraction of the maximum heap the registry may let the heap fill up to
+	 * @param evictor runs the evictions of a full heap, instead of the thread reporting it
+	 */
+	public OntologyRegistry(int maxOntologies, double heapBudget, Executor evictor) {
+		this.maxOntologies = maxOntologies;
+		this.evictor = evictor;
+
+		synchronized(watchedPools){
+			registryCount++;
+		}
+		setHeapBudget(heapBudget);
+
+		((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(memoryListener, null, null);
+	}
+
+	/**
+	 *
+	 * @param source URL or file path
+	 * @param stamp version of the source document now, see {@link LoadedOntology#getStamp()}
+	 * @return the ontology loaded from source, or null if it isn't loaded or was loaded from another version
+	 */
+	public synchronized LoadedOntology get(String source, long stamp) {
+		LoadedOntology loaded = ontologies.get(source);
+		if(loaded != null && loaded.getStamp() != stamp){
+			ontologies.remove(source);
+			removed(loaded);
+			return null;
+		}
+		return loaded;
+	}
+
+	/**
+	 * Adds loaded as the most recently used ontology, evicting the least recently used ones beyond the maximum count
+	 *
+	 * @param loaded
+	 */
+	public synchronized void put(LoadedOntology loaded) {
+		LoadedOntology replaced = ontologies.put(loaded.getSource(), loaded);
+		if(replaced != null && replaced != loaded){
+			removed(replaced);
+		}
+		evict(maxOntologies);
+	}
+
+	public synchronized void remove(String source) {
+		LoadedOntology loaded = ontologies.remove(source);
+		if(loaded != null){
+			removed(loaded);
+		}
+	}
+
+	/**
+	 *
+	 * @return sources of the loaded ontologies, least recently used first
+	 */
+	public synchronized List<String> getSources() {
+		return new ArrayList<String>(ontologies.keySet());
+	}
+
+	public synchronized int size() {
+		return ontologies.size();
+	}
+
+	public synchronized int getMaxOntologies() {
+		return maxOntologies;
+	}
+
+	public synchronized void setMaxOntologies(int maxOntologies) {
+		this.maxOntologies = maxOntologies;
+		evict(maxOntologies);
+	}
+
+	public double getHeapBudget() {
+		return heapBudget;
+	}
+
+	/**
+	 * Sets the usage threshold of every heap pool that supports one, and has no threshold
+	 * set by anyone else, to the given fraction of its maximum size
+	 *
+	 * @param heapBudget between 0 and 1
+	 */
+	public void setHeapBudget(double heapBudget) {
+		this.heapBudget = heapBudget;
+
+		synchronized(watchedPools){
+			for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+				//only the old generation supports usage thresholds, young pools are emptied by every collection
+				long max = pool.getUsage() == null ? -1 : pool.getUsage().getMax();
+				if(pool.getType() != MemoryType.HEAP || !pool.isUsageThresholdSupported() || max <= 0){
+					continue;
+				}
+
+				if(getThreshold(pool) > 0 && !watchedPools.contains(pool.getName())){
+					continue;
+				}
+
+				setThreshold(pool, (long) (max * heapBudget));
+				watchedPools.add(pool.getName());
+			}
+		}
+	}
+
+	/**
+	 * Stops watching the heap and drops every ontology.  The last registry disposed clears
+	 * the thresholds the registries set.
+	 */
+	public void dispose() {
+		try {
+			((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(memoryListener);
+		} catch (ListenerNotFoundException e) {
+			//already removed
+		}
+
+		synchronized(watchedPools){
+			registryCount--;
+			if(registryCount == 0){
+				for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+					if(watchedPools.contains(pool.getName())){
+						setThreshold(pool, 0);
+					}
+				}
+				watchedPools.clear();
+			}
+		}
+
+		synchronized(this){
+			for(String source : getSources()){
+				remove(source);
+			}
+		}
+	}
+
+	/**
+	 * Called with every ontology dropped from the registry, while holding its lock; does
+	 * nothing unless overridden
+	 *
+	 * @param loaded
+	 */
+	protected void removed(LoadedOntology loaded) {
+	}
+
+	/*
+	 * Internals
+	 */
+
+	private synchronized void evictForMemory() {
+		//the most recently used ontology is the one being searched
+		evict(1);
+	}
+
+	/**
+	 * After a collection, usage is live data only, so that is the threshold to watch when there is one
+	 */
+	private static long getThreshold(MemoryPoolMXBean pool) {
+		return pool.isCollectionUsageThresholdSupported() ? pool.getCollectionUsageThreshold() : pool.getUsageThreshold();
+	}
+
+	private static void setThreshold(MemoryPoolMXBean pool, long threshold) {
+		if(pool.isCollectionUsageThresholdSupported()){
+			pool.setCollectionUsageThreshold(threshold);
+		} else {
+			pool.setUsageThreshold(threshold);
+		}
+	}
+
+	private void evict(int keep) {
+		Iterator<LoadedOntology> loaded = ontologies.values().iterator();
+		while(ontologies.size() > keep && loaded.hasNext()){
+			LoadedOntology evicted = loaded.next();
+			loaded.remove();
+			removed(evicted);
+		}
+	}
+}
@@ -0,0 +1,644 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.load;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.AddOntologyAnnotation;
+import org.semanticweb.owlapi.model.EntityType;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLAnnotationSubject;
+import org.semanticweb.owlapi.model.OWLAnnotationValue;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLDeclarationAxiom;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLImportsDeclaration;
+import org.semanticweb.owlapi.model.OWLLiteral;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyID;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.OWLSubClassOfAxiom;
+import org.semanticweb.owlapi.model.OWLSubObjectPropertyOfAxiom;
+
+import com.google.common.base.Optional;
+
+/**
+ * Binary snapshot of a loaded ontology and its imports.
+ *
+ * The snapshot is a stream of records, one per axiom for the axioms that make up the
+ * bulk of the ontologies we import from: declarations, annotation assertions and
+ * subclass and subproperty axioms between named entities, each with its annotations.
+ * IRIs and literals are interned: the first occurrence is written in full and later
+ * ones refer to it by number.  Every import is written with the ontology of the snapshot
+ * it resolved to, since an import often names a document (such as a PURL) rather than
+ * the ID of the ontology found there.  Any other axiom is written with Java serialization, in
+ * blocks, and so is anything annotated with an anonymous individual.
+ *
+ * The decoder reads one record at a time and adds axioms to the ontologies in batches,
+ * so the snapshot is never held in memory as a whole.
+ */
+public class OntologySnapshot {
+
+	//"MIRS", followed by the format version
+	private static final int MAGIC = 0x4D495253;
+	private static final int VERSION = 1;
+
+	private static final int ONTOLOGY = 1;
+	private static final int IMPORT = 2;
+	private static final int ONTOLOGY_ANNOTATION = 3;
+	private static final int DECLARATION = 4;
+	private static final int ANNOTATION_ASSERTION = 5;
+	private static final int SUB_CLASS = 6;
+	private static final int SUB_OBJECT_PROPERTY = 7;
+	private static final int SERIALIZED = 8;
+	private static final int SERIALIZED_ONTOLOGY_ANNOTATION = 9;
+	private static final int END = 0;
+
+	private static final int VALUE_IRI = 0;
+	private static final int VALUE_LITERAL = 1;
+
+	//axioms are added to an ontology, and serialized, this many at a time
+	private static final int BATCH_SIZE = 10000;
+
+	@SuppressWarnings("unchecked")
+	private static final EntityType<? extends OWLEntity>[] ENTITY_TYPES = new EntityType[] {
+		EntityType.CLASS, EntityType.OBJECT_PROPERTY, EntityType.DATA_PROPERTY, EntityType.ANNOTATION_PROPERTY,
+		EntityType.NAMED_INDIVIDUAL, EntityType.DATATYPE
+	};
+
+	private OntologySnapshot() {
+	}
+
+	/**
+	 * Writes ontology followed by its imports
+	 *
+	 * @param ontology
+	 * @param imports imports closure of ontology, ontology excluded
+	 * @param out
+	 * @throws IOException
+	 */
+	public static void write(OWLOntology ontology, List<OWLOntology> imports, DataOutputStream out) throws IOException {
+		Encoder encoder = new Encoder(out);
+
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+
+		List<OWLOntology> ontologies = new ArrayList<OWLOntology>();
+		ontologies.add(ontology);
+		ontologies.addAll(imports);
+
+		for(OWLOntology ont : ontologies){
+			encoder.writeOntology(ont, ontologies);
+		}
+
+		out.writeByte(END);
+	}
+
+	/**
+	 * Recreates the ontologies of a snapshot in manager
+	 *
+	 * @param in
+	 * @param manager
+	 * @return the ontology the snapshot was written for, with its imports loaded into manager too
+	 * @throws IOException if the snapshot can't be read; ontologies created so far are removed again
+	 */
+	public static OWLOntology read(DataInputStream in, OWLOntologyManager manager) throws IOException {
+		Decoder decoder = new Decoder(in, manager);
+		try {
+			if(in.readInt() != MAGIC || in.readInt() != VERSION){
+				throw new IOException("not a snapshot, or written by another version");
+			}
+
+			decoder.readRecords();
+			return decoder.finish();
+		} catch (IOException e) {
+			decoder.discard();
+			throw e;
+		} catch (RuntimeException e) {
+			decoder.discard();
+			throw new IOException("corrupt snapshot: " + e, e);
+		}
+	}
+
+	/*
+	 * Variable length integers; most references are small
+	 */
+
+	static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		while((value & ~0x7F) != 0){
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	static int readVarInt(DataInputStream in) throws IOException {
+		int value = 0;
+		for(int shift = 0; shift < 32; shift += 7){
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0){
+				return value;
+			}
+		}
+		throw new IOException("malformed variable length integer");
+	}
+
+	/**
+	 * Writes records, interning IRIs and literals as it goes
+	 */
+	private static class Encoder {
+
+		private final DataOutputStream out;
+
+		private final Map<IRI, Integer> iris = new HashMap<IRI, Integer>();
+		private final Map<OWLLiteral, Integer> literals = new HashMap<OWLLiteral, Integer>();
+
+		private final List<OWLAxiom> serialized = new ArrayList<OWLAxiom>();
+
+		Encoder(DataOutputStream out) {
+			this.out = out;
+		}
+
+		/**
+		 *
+		 * @param ontology
+		 * @param ontologies every ontology of the snapshot, in the order they are written
+		 * @throws IOException
+		 */
+		void writeOntology(OWLOntology ontology, List<OWLOntology> ontologies) throws IOException {
+			OWLOntologyID id = ontology.getOntologyID();
+
+			out.writeByte(ONTOLOGY);
+			writeOptionalIRI(id.getOntologyIRI());
+			writeOptionalIRI(id.getVersionIRI());
+
+			for(OWLImportsDeclaration declaration : ontology.getImportsDeclarations()){
+				out.writeByte(IMPORT);
+				writeIRI(declaration.getIRI());
+				//0 for an import that did not resolve, otherwise the number of the ontology plus one
+				OWLOntology imported = ontology.getOWLOntologyManager().getImportedOntology(declaration);
+				writeVarInt(out, ontologies.indexOf(imported) + 1);
+			}
+
+			for(OWLAnnotation annotation : ontology.getAnnotations()){
+				if(isEncodable(annotation)){
+					out.writeByte(ONTOLOGY_ANNOTATION);
+					writeAnnotation(annotation);
+				} else {
+					out.writeByte(SERIALIZED_ONTOLOGY_ANNOTATION);
+					writeSerialized(annotation);
+				}
+			}
+
+			for(OWLAxiom axiom : ontology.getAxioms()){
+				if(!writeAxiom(axiom)){
+					serialized.add(axiom);
+					if(serialized.size() == BATCH_SIZE){
+						flushSerialized();
+					}
+				}
+			}
+			flushSerialized();
+		}
+
+		/**
+		 *
+		 * @param axiom
+		 * @return false if axiom has no record of its own and has to be serialized
+		 */
+		private boolean writeAxiom(OWLAxiom axiom) throws IOException {
+			if(!isEncodable(axiom.getAnnotations())){
+				return false;
+			}
+
+			if(axiom instanceof OWLDeclarationAxiom){
+				OWLEntity entity = ((OWLDeclarationAxiom) axiom).getEntity();
+
+				out.writeByte(DECLARATION);
+				out.writeByte(getEntityTypeCode(entity.getEntityType()));
+				writeIRI(entity.getIRI());
+			} else if(axiom instanceof OWLAnnotationAssertionAxiom){
+				OWLAnnotationAssertionAxiom assertion = (OWLAnnotationAssertionAxiom) axiom;
+				if(!(assertion.getSubject() instanceof IRI) || !isEncodable(assertion.getValue())){
+					return false;
+				}
+
+				out.writeByte(ANNOTATION_ASSERTION);
+				writeIRI(assertion.getProperty().getIRI());
+				writeIRI((IRI) assertion.getSubject());
+				writeValue(assertion.getValue());
+			} else if(axiom instanceof OWLSubClassOfAxiom){
+				OWLSubClassOfAxiom subClassOf = (OWLSubClassOfAxiom) axiom;
+				if(subClassOf.getSubClass().isAnonymous() || subClassOf.getSuperClass().isAnonymous()){
+					return false;
+				}
+
+				out.writeByte(SUB_CLASS);
+				writeIRI(subClassOf.getSubClass().asOWLClass().getIRI());
+				writeIRI(subClassOf.getSuperClass().asOWLClass().getIRI());
+			} else if(axiom instanceof OWLSubObjectPropertyOfAxiom){
+				OWLSubObjectPropertyOfAxiom subPropertyOf = (OWLSubObjectPropertyOfAxiom) axiom;
+				if(subPropertyOf.getSubProperty().isAnonymous() || subPropertyOf.getSuperProperty().isAnonymous()){
+					return false;
+				}
+
+				out.writeByte(SUB_OBJECT_PROPERTY);
+				writeIRI(subPropertyOf.getSubProperty().asOWLObjectProperty().getIRI());
+				writeIRI(subPropertyOf.getSuperProperty().asOWLObjectProperty().getIRI());
+			} else {
+				return false;
+			}
+
+			writeAnnotations(axiom.getAnnotations());
+			return true;
+		}
+
+		private void flushSerialized() throws IOException {
+			if(serialized.isEmpty()){
+				return;
+			}
+
+			out.writeByte(SERIALIZED);
+			writeSerialized(new ArrayList<OWLAxiom>(serialized));
+			serialized.clear();
+		}
+
+		private void writeSerialized(Object object) throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream objects = new ObjectOutputStream(bytes);
+			objects.writeObject(object);
+			objects.close();
+
+			writeVarInt(out, bytes.size());
+			bytes.writeTo(out);
+		}
+
+		private void writeAnnotations(Set<OWLAnnotation> annotations) throws IOException {
+			writeVarInt(out, annotations.size());
+			for(OWLAnnotation annotation : annotations){
+				writeAnnotation(annotation);
+			}
+		}
+
+		private void writeAnnotation(OWLAnnotation annotation) throws IOException {
+			writeIRI(annotation.getProperty().getIRI());
+			writeValue(annotation.getValue());
+			writeAnnotations(annotation.getAnnotations());
+		}
+
+		private void writeValue(OWLAnnotationValue value) throws IOException {
+			if(value instanceof IRI){
+				out.writeByte(VALUE_IRI);
+				writeIRI((IRI) value);
+			} else {
+				out.writeByte(VALUE_LITERAL);
+				writeLiteral((OWLLiteral) value);
+			}
+		}
+
+		/**
+		 * Writes the number of an IRI already written, or 0 followed by the IRI itself
+		 */
+		private void writeIRI(IRI iri) throws IOException {
+			Integer number = iris.get(iri);
+			if(number != null){
+				writeVarInt(out, number);
+				return;
+			}
+
+			iris.put(iri, iris.size() + 1);
+			writeVarInt(out, 0);
+			out.writeUTF(iri.toString());
+		}
+
+		private void writeOptionalIRI(Optional<IRI> iri) throws IOException {
+			out.writeBoolean(iri.isPresent());
+			if(iri.isPresent()){
+				writeIRI(iri.get());
+			}
+		}
+
+		private void writeLiteral(OWLLiteral literal) throws IOException {
+			Integer number = literals.get(literal);
+			if(number != null){
+				writeVarInt(out, number);
+				return;
+			}
+
+			literals.put(literal, literals.size() + 1);
+			writeVarInt(out, 0);
+			writeLongUTF(literal.getLiteral());
+			if(literal.hasLang()){
+				out.writeBoolean(true);
+				out.writeUTF(literal.getLang());
+			} else {
+				out.writeBoolean(false);
+				writeIRI(literal.getDatatype().getIRI());
+			}
+		}
+
+		/**
+		 * Literals such as definitions can exceed the 64k limit of writeUTF
+		 */
+		private void writeLongUTF(String value) throws IOException {
+			byte[] bytes = value.getBytes("UTF-8");
+			writeVarInt(out, bytes.length);
+			out.write(bytes);
+		}
+
+		private static boolean isEncodable(OWLAnnotation annotation) {
+			return isEncodable(annotation.getValue()) && isEncodable(annotation.getAnnotations());
+		}
+
+		private static boolean isEncodable(Set<OWLAnnotation> annotations) {
+			for(OWLAnnotation annotation : annotations){
+				if(!isEncodable(annotation)){
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static boolean isEncodable(OWLAnnotationValue value) {
+			//anonymous individuals only make sense together with the rest of their ontology
+			return value instanceof IRI || value instanceof OWLLiteral;
+		}
+
+		private static int getEntityTypeCode(EntityType<?> type) {
+			for(int code = 0; code < ENTITY_TYPES.length; code++){
+				if(ENTITY_TYPES[code] == type){
+					return code;
+				}
+			}
+			throw new IllegalArgumentException("unknown entity type " + type);
+		}
+	}
+
+	/**
+	 * Reads records into new ontologies of a manager
+	 */
+	private static class Decoder {
+
+		private final DataInputStream in;
+		private final OWLOntologyManager manager;
+		private final OWLDataFactory factory;
+
+		private final List<IRI> iris = new ArrayList<IRI>();
+		private final List<OWLLiteral> literals = new ArrayList<OWLLiteral>();
+
+		private final List<OWLOntology> ontologies = new ArrayList<OWLOntology>();
+		private final List<List<IRI>> imports = new ArrayList<List<IRI>>();
+		//ontology each import resolved to when written, by number plus one, 0 if it did not resolve
+		private final List<List<Integer>> importTargets = new ArrayList<List<Integer>>();
+
+		private OWLOntology current;
+		private Set<OWLAxiom> pending = new HashSet<OWLAxiom>();
+
+		Decoder(DataInputStream in, OWLOntologyManager manager) {
+			this.in = in;
+			this.manager = manager;
+			this.factory = manager.getOWLDataFactory();
+		}
+
+		void readRecords() throws IOException {
+			while(true){
+				int record = in.readUnsignedByte();
+				switch(record){
+				case END:
+					flush();
+					return;
+				case ONTOLOGY:
+					flush();
+					startOntology();
+					break;
+				case IMPORT:
+					imports.get(imports.size() - 1).add(readIRI());
+					importTargets.get(importTargets.size() - 1).add(readVarInt(in));
+					break;
+				case ONTOLOGY_ANNOTATION:
+					manager.applyChange(new AddOntologyAnnotation(current, readAnnotation()));
+					break;
+				case SERIALIZED_ONTOLOGY_ANNOTATION:
+					manager.applyChange(new AddOntologyAnnotation(current, (OWLAnnotation) readSerialized()));
+					break;
+				case DECLARATION:
+					EntityType<?> type = ENTITY_TYPES[in.readUnsignedByte()];
+					OWLEntity entity = factory.getOWLEntity(type, readIRI());
+					add(factory.getOWLDeclarationAxiom(entity, readAnnotations()));
+					break;
+				case ANNOTATION_ASSERTION:
+					OWLAnnotationProperty property = factory.getOWLAnnotationProperty(readIRI());
+					OWLAnnotationSubject subject = readIRI();
+					OWLAnnotationValue value = readValue();
+					add(factory.getOWLAnnotationAssertionAxiom(property, subject, value, readAnnotations()));
+					break;
+				case SUB_CLASS:
+					IRI subClass = readIRI();
+					IRI superClass = readIRI();
+					add(factory.getOWLSubClassOfAxiom(factory.getOWLClass(subClass), factory.getOWLClass(superClass),
+							readAnnotations()));
+					break;
+				case SUB_OBJECT_PROPERTY:
+					IRI subProperty = readIRI();
+					IRI superProperty = readIRI();
+					add(factory.getOWLSubObjectPropertyOfAxiom(factory.getOWLObjectProperty(subProperty),
+							factory.getOWLObjectProperty(superProperty), readAnnotations()));
+					break;
+				case SERIALIZED:
+					for(OWLAxiom axiom : readSerializedAxioms()){
+						add(axiom);
+					}
+					break;
+				default:
+					throw new IOException("unknown record " + record);
+				}
+			}
+		}
+
+		/**
+		 * Declares the imports once every ontology exists, so they resolve to the ontologies of the snapshot
+		 *
+		 * @return the first ontology
+		 */
+		OWLOntology finish() throws IOException {
+			if(ontologies.isEmpty()){
+				throw new IOException("empty snapshot");
+			}
+
+			for(int i = 0; i < ontologies.size(); i++){
+				for(int j = 0; j < imports.get(i).size(); j++){
+					IRI imported = imports.get(i).get(j);
+					int target = importTargets.get(i).get(j);
+					if(target > ontologies.size()){
+						throw new IOException("import of " + imported + " refers to ontology " + target);
+					}
+
+					//an import naming the document rather than the ontology resolves by document IRI
+					if(target > 0 && !names(ontologies.get(target - 1).getOntologyID(), imported)){
+						manager.setOntologyDocumentIRI(ontologies.get(target - 1), imported);
+					}
+					manager.applyChange(new AddImport(ontologies.get(i), factory.getOWLImportsDeclaration(imported)));
+				}
+			}
+
+			OWLOntology root = ontologies.get(0);
+			if(manager.getImportsClosure(root).size() != ontologies.size()){
+				throw new IOException("imports of the snapshot don't resolve to its ontologies");
+			}
+			return root;
+		}
+
+		void discard() {
+			for(OWLOntology ontology : ontologies){
+				manager.removeOntology(ontology);
+			}
+			ontologies.clear();
+		}
+
+		private void startOntology() throws IOException {
+			Optional<IRI> ontologyIRI = readOptionalIRI();
+			Optional<IRI> versionIRI = readOptionalIRI();
+
+			try {
+				if(ontologyIRI.isPresent()){
+					current = manager.createOntology(new OWLOntologyID(ontologyIRI, versionIRI));
+				} else {
+					current = manager.createOntology();
+				}
+			} catch (OWLOntologyCreationException e) {
+				throw new IOException("could not create ontology " + ontologyIRI.orNull() + ": " + e.getMessage(), e);
+			}
+
+			ontologies.add(current);
+			imports.add(new ArrayList<IRI>());
+			importTargets.add(new ArrayList<Integer>());
+		}
+
+		/**
+		 *
+		 * @param id
+		 * @param iri
+		 * @return true if iri is the ontology or version IRI of id
+		 */
+		private boolean names(OWLOntologyID id, IRI iri) {
+			return iri.equals(id.getOntologyIRI().orNull()) || iri.equals(id.getVersionIRI().orNull());
+		}
+
+		private void add(OWLAxiom axiom) {
+			pending.add(axiom);
+			if(pending.size() == BATCH_SIZE){
+				flush();
+			}
+		}
+
+		private void flush() {
+			if(!pending.isEmpty()){
+				manager.addAxioms(current, pending);
+				pending = new HashSet<OWLAxiom>();
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private List<OWLAxiom> readSerializedAxioms() throws IOException {
+			return (List<OWLAxiom>) readSerialized();
+		}
+
+		private Object readSerialized() throws IOException {
+			byte[] bytes = new byte[readVarInt(in)];
+			in.readFully(bytes);
+
+			ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(bytes));
+			try {
+				return objects.readObject();
+			} catch (ClassNotFoundException e) {
+				throw new IOException("snapshot written by another OWL API: " + e.getMessage(), e);
+			} finally {
+				objects.close();
+			}
+		}
+
+		private Set<OWLAnnotation> readAnnotations() throws IOException {
+			int count = readVarInt(in);
+			if(count == 0){
+				return Collections.emptySet();
+			}
+
+			Set<OWLAnnotation> annotations = new HashSet<OWLAnnotation>();
+			for(int i = 0; i < count; i++){
+				annotations.add(readAnnotation());
+			}
+			return annotations;
+		}
+
+		private OWLAnnotation readAnnotation() throws IOException {
+			OWLAnnotationProperty property = factory.getOWLAnnotationProperty(readIRI());
+			OWLAnnotationValue value = readValue();
+			return factory.getOWLAnnotation(property, value, readAnnotations());
+		}
+
+		private OWLAnnotationValue readValue() throws IOException {
+			int kind = in.readUnsignedByte();
+			if(kind == VALUE_IRI){
+				return readIRI();
+			}
+			if(kind == VALUE_LITERAL){
+				return readLiteral();
+			}
+			throw new IOException("unknown annotation value " + kind);
+		}
+
+		private IRI readIRI() throws IOException {
+			int number = readVarInt(in);
+			if(number > 0){
+				return iris.get(number - 1);
+			}
+
+			IRI iri = IRI.create(in.readUTF());
+			iris.add(iri);
+			return iri;
+		}
+
+		private Optional<IRI> readOptionalIRI() throws IOException {
+			return in.readBoolean() ? Optional.of(readIRI()) : Optional.<IRI> absent();
+		}
+
+		private OWLLiteral readLiteral() throws IOException {
+			int number = readVarInt(in);
+			if(number > 0){
+				return literals.get(number - 1);
+			}
+
+			byte[] bytes = new byte[readVarInt(in)];
+			in.readFully(bytes);
+			String lexical = new String(bytes, "UTF-8");
+
+			OWLLiteral literal;
+			if(in.readBoolean()){
+				literal = factory.getOWLLiteral(lexical, in.readUTF());
+			} else {
+				literal = factory.getOWLLiteral(lexical, factory.getOWLDatatype(readIRI()));
+			}
+
+			literals.add(literal);
+			return literal;
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.load;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/**
+ * Directory of {@link OntologySnapshot}s, keyed by the content hash of the document the
+ * ontology was parsed from.  Only the most recently used snapshots are kept.
+ *
+ * The key only covers the document of the ontology itself, so a snapshot is reused
+ * until that document changes, even if a document it imports changes in between.
+ */
+public class SnapshotStore {
+
+	private static final String SUFFIX = ".snapshot";
+	private static final int MAX_SNAPSHOTS = 8;
+
+	private final File directory;
+
+	/**
+	 *
+	 * @param directory where snapshots are kept, created when the first snapshot is stored
+	 */
+	public SnapshotStore(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 *
+	 * @return the snapshot directory below the user's Protege directory
+	 */
+	public static File getDefaultDirectory() {
+		return new File(System.getProperty("user.home"),
+				".Protege" + File.separator + "mireot" + File.separator + "snapshots");
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Reads the snapshot of a document into manager
+	 *
+	 * @param documentHash content hash of the document
+	 * @param manager
+	 * @return the ontology, with its imports loaded into manager too, or null if there is
+	 * no usable snapshot of the document
+	 */
+	public OWLOntology load(byte[] documentHash, OWLOntologyManager manager) {
+		File file = getFile(documentHash);
+		if(!file.isFile()){
+			return null;
+		}
+
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+			try {
+				OWLOntology ontology = OntologySnapshot.read(in, manager);
+
+				//marks the snapshot as recently used
+				file.setLastModified(System.currentTimeMillis());
+				return ontology;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			System.out.println("Discarding unreadable snapshot " + file + ": " + e.getMessage());
+			file.delete();
+			return null;
+		}
+	}
+
+	/**
+	 * Stores a snapshot of ontology and its imports, replacing any snapshot of the same document
+	 *
+	 * @param documentHash content hash of the document ontology was parsed from
+	 * @param ontology
+	 * @param imports imports closure of ontology, ontology excluded
+	 */
+	public void store(byte[] documentHash, OWLOntology ontology, List<OWLOntology> imports) {
+		if(!directory.isDirectory() && !directory.mkdirs()){
+			System.out.println("Could not create snapshot directory " + directory);
+			return;
+		}
+
+		File file = getFile(documentHash);
+		File temp = new File(directory, file.getName() + ".tmp");
+
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+			try {
+				OntologySnapshot.write(ontology, imports, out);
+			} finally {
+				out.close();
+			}
+
+			//readers only ever see complete snapshots
+			file.delete();
+			if(!temp.renameTo(file)){
+				throw new IOException("could not rename " + temp + " to " + file);
+			}
+		} catch (IOException e) {
+			System.out.println("Could not store snapshot " + file + ": " + e.getMessage());
+			temp.delete();
+			return;
+		}
+
+		prune();
+	}
+
+	/*
+	 * Internals
+	 */
+
+	private File getFile(byte[] documentHash) {
+		StringBuilder name = new StringBuilder();
+		for(byte b : documentHash){
+			name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return new File(directory, name + SUFFIX);
+	}
+
+	/**
+	 * Deletes the least recently used snapshots beyond {@link #MAX_SNAPSHOTS}
+	 */
+	private void prune() {
+		File[] files = directory.listFiles();
+		if(files == null){
+			return;
+		}
+
+		List<File> snapshots = new ArrayList<File>();
+		for(File file : files){
+			if(file.getName().endsWith(SUFFIX)){
+				snapshots.add(file);
+			}
+		}
+
+		Collections.sort(snapshots, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				return Long.compare(b.lastModified(), a.lastModified());
+			}
+		});
+
+		for(int i = MAX_SNAPSHOTS; i < snapshots.size(); i++){
+			snapshots.get(i).delete();
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.load;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.semanticweb.owlapi.model.AddAxiom;
+import org.semanticweb.owlapi.model.EntityType;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLLiteral;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyID;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+import com.google.common.base.Optional;
+
+import edu.uams.dbmi.protege.plugin.mireot.search.index.IndexBuilder;
+import edu.uams.dbmi.protege.plugin.mireot.search.index.SearchIndex;
+
+/**
+ * Searches a source ontology without loading it: the search index is built while the
+ * document streams through a {@link StreamingParser}, and the annotations of a term are
+ * read back from the document once the term is copied.
+ *
+ * This keeps only the index in memory, at the cost of reading the document again for
+ * every copied term.  With a {@link DocumentOutline} recorded while indexing, only the
+ * lines describing the term are read.
+ */
+public class StreamingLoader {
+
+	private static final String RDFS_LABEL = "http://www.w3.org/2000/01/rdf-schema#label";
+
+	private StreamingLoader() {
+	}
+
+	/**
+	 * Builds the search index of document
+	 *
+	 * @param document local copy of the ontology document
+	 * @param format as detected by {@link StreamingParser#detect}
+	 * @param documentIRI IRI the document was published under
+	 * @param labelLanguages label language preference, see {@link IndexBuilder}
+	 * @param factory
+	 * @param monitor told the parse and index build progress
+	 * @param outline told where each term is described, or null
+	 * @return the index, without source ontologies
+	 * @throws IOException if the document can't be read or parsed
+	 * @throws java.util.concurrent.CancellationException if the load was cancelled
+	 */
+	public static SearchIndex index(File document, StreamingParser.Format format, String documentIRI,
+			List<String> labelLanguages, OWLDataFactory factory, LoadMonitor monitor, DocumentOutline.Recorder outline)
+			throws IOException {
+		final IndexBuilder builder = new IndexBuilder(labelLanguages, factory);
+
+		try {
+			StreamingParser.parse(document, format, documentIRI, new StreamingParser.Handler() {
+				@Override
+				public void ontology(String ontologyIRI, String versionIRI) {
+				}
+
+				@Override
+				public void entity(String iri, EntityType<?> type) {
+					builder.addEntity(iri, type);
+				}
+
+				@Override
+				public void annotation(String subject, String property, String value, String language) {
+					builder.addAnnotation(subject, property, value, language);
+				}
+			}, monitor, outline);
+		} catch (IOException e) {
+			monitor.checkCancelled();
+			throw e;
+		}
+		monitor.checkCancelled();
+
+		monitor.begin(LoadMonitor.Stage.INDEX, builder.size());
+		return builder.build(monitor);
+	}
+
+	/**
+	 * Reads the annotations of one entity back from document, into an ontology holding
+	 * just them: the entity's declaration, its literal annotation assertions and the labels
+	 * of the annotation properties they use.  The ontology has the ID of the document's
+	 * ontology, so the copied term can say where it came from.
+	 *
+	 * @param document local copy of the ontology document
+	 * @param documentIRI IRI the document was published under
+	 * @param entity
+	 * @param manager creates the ontology
+	 * @param outline recorded while indexing document, or null to read all of it
+	 * @return the new ontology
+	 * @throws IOException if the document can't be read or parsed
+	 * @throws OWLOntologyCreationException
+	 */
+	public static OWLOntology extract(File document, String documentIRI, final OWLEntity entity,
+			OWLOntologyManager manager, DocumentOutline outline) throws IOException, OWLOntologyCreationException {
+		StreamingParser.Format format = StreamingParser.detect(document);
+		if(format == null){
+			throw new IOException("The format of " + document + " can't be streamed.");
+		}
+
+		final OWLDataFactory factory = manager.getOWLDataFactory();
+		final String entityIRI = entity.getIRI().toString();
+
+		final String[] ids = new String[2];
+		final List<String[]> annotations = new ArrayList<String[]>();
+		final List<String[]> propertyLabels = new ArrayList<String[]>();
+		final Set<String> annotationProperties = new HashSet<String>();
+
+		final boolean[] found = new boolean[1];
+
+		StreamingParser.Handler handler = new StreamingParser.Handler() {
+			@Override
+			public void ontology(String ontologyIRI, String versionIRI) {
+				if(ids[0] == null){
+					ids[0] = ontologyIRI;
+					ids[1] = versionIRI;
+				}
+			}
+
+			@Override
+			public void entity(String iri, EntityType<?> type) {
+				if(type == EntityType.ANNOTATION_PROPERTY){
+					annotationProperties.add(iri);
+				}
+				if(iri.equals(entityIRI)){
+					found[0] = true;
+				}
+			}
+
+			@Override
+			public void annotation(String subject, String property, String value, String language) {
+				if(subject.equals(entityIRI)){
+					annotations.add(new String[]{property, value, language});
+				} else if(annotationProperties.contains(subject) && property.equals(RDFS_LABEL)){
+					//which property labels are needed is only known once every annotation is read
+					propertyLabels.add(new String[]{subject, value, language});
+				}
+			}
+		};
+
+		byte[] fragment = outline == null ? null : outline.read(document, entityIRI);
+		if(fragment != null){
+			try {
+				StreamingParser.parse(new ByteArrayInputStream(fragment), format, documentIRI, handler);
+			} catch (IOException e) {
+				//the document changed since it was outlined, or the lines don't stand on their own
+				found[0] = false;
+			}
+		}
+		if(!found[0]){
+			ids[0] = null;
+			annotations.clear();
+			propertyLabels.clear();
+			annotationProperties.clear();
+			StreamingParser.parse(document, format, documentIRI, handler, null);
+		}
+
+		OWLOntologyID id = ids[0] == null
+				? new OWLOntologyID()
+				: new OWLOntologyID(Optional.of(IRI.create(ids[0])),
+						Optional.fromNullable(ids[1] == null ? null : IRI.create(ids[1])));
+		OWLOntology ontology = manager.createOntology(id);
+
+		List<OWLOntologyChange> changes = new ArrayList<OWLOntologyChange>();
+		changes.add(new AddAxiom(ontology, factory.getOWLDeclarationAxiom(entity)));
+
+		Set<String> properties = new LinkedHashSet<String>();
+		for(String[] annotation : annotations){
+			OWLAnnotationProperty property = factory.getOWLAnnotationProperty(IRI.create(annotation[0]));
+			changes.add(new AddAxiom(ontology, factory.getOWLAnnotationAssertionAxiom(property, entity.getIRI(),
+					literal(factory, annotation[1], annotation[2]))));
+			properties.add(annotation[0]);
+		}
+
+		for(String[] label : propertyLabels){
+			if(properties.contains(label[0])){
+				changes.add(new AddAxiom(ontology, factory.getOWLAnnotationAssertionAxiom(factory.getRDFSLabel(),
+						IRI.create(label[0]), literal(factory, label[1], label[2]))));
+			}
+		}
+
+		manager.applyChanges(changes);
+		return ontology;
+	}
+
+	private static OWLLiteral literal(OWLDataFactory factory, String value, String language) {
+		return language.isEmpty() ? factory.getOWLLiteral(value) : factory.getOWLLiteral(value, language);
+	}
+}
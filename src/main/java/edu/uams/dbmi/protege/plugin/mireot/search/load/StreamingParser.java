@@ -0,0 +1,925 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.load;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.semanticweb.owlapi.model.EntityType;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Reads the entity declarations and literal annotations of an ontology document as it
+ * streams past, without building an ontology.
+ *
+ * RDF/XML and OWL/XML are read with a SAX parser, OBO line by line.  Only what searching
+ * and copying a term need is reported: the ontology IRIs, the type of every named entity
+ * and every literal value given to a named subject.  Everything else, axioms and
+ * anonymous nodes included, is skipped.  Imports are not followed.
+ */
+public class StreamingParser {
+
+	public enum Format {
+		RDF_XML,
+		OWL_XML,
+		OBO
+	}
+
+	/**
+	 * Told what is read, in document order
+	 */
+	public interface Handler {
+
+		/**
+		 *
+		 * @param ontologyIRI
+		 * @param versionIRI null if the ontology has none
+		 */
+		void ontology(String ontologyIRI, String versionIRI);
+
+		void entity(String iri, EntityType<?> type);
+
+		/**
+		 *
+		 * @param subject IRI of the annotated entity
+		 * @param property IRI of the property
+		 * @param value literal value
+		 * @param language language tag of the value, "" for none
+		 */
+		void annotation(String subject, String property, String value, String language);
+	}
+
+	private static final String RDF = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+	private static final String RDFS = "http://www.w3.org/2000/01/rdf-schema#";
+	private static final String OWL = "http://www.w3.org/2002/07/owl#";
+	private static final String XML = "http://www.w3.org/XML/1998/namespace";
+	private static final String OBO = "http://purl.obolibrary.org/obo/";
+	private static final String OBO_IN_OWL = "http://www.geneontology.org/formats/oboInOwl#";
+
+	private static final int DETECT_LENGTH = 1 << 16;
+
+	//the JDK parser's own limits, which documents smaller than they allow for are held to
+	private static final long ENTITY_EXPANSION_LIMIT = 64000;
+	private static final long TOTAL_ENTITY_SIZE_LIMIT = 50000000;
+
+	private static final Pattern RDF_XML_ROOT = Pattern.compile("<(\\w+:)?RDF[\\s>]");
+	private static final Pattern OWL_XML_ROOT = Pattern.compile("<(\\w+:)?Ontology[\\s>]");
+	private static final Pattern OBO_HEADER = Pattern.compile("^(format-version|ontology|data-version):|^\\[Term\\]",
+			Pattern.MULTILINE);
+
+	private static final Map<String, EntityType<?>> TYPES = new HashMap<String, EntityType<?>>();
+	static {
+		TYPES.put(OWL + "Class", EntityType.CLASS);
+		TYPES.put(OWL + "ObjectProperty", EntityType.OBJECT_PROPERTY);
+		//these characteristics only apply to object properties
+		TYPES.put(OWL + "TransitiveProperty", EntityType.OBJECT_PROPERTY);
+		TYPES.put(OWL + "SymmetricProperty", EntityType.OBJECT_PROPERTY);
+		TYPES.put(OWL + "AsymmetricProperty", EntityType.OBJECT_PROPERTY);
+		TYPES.put(OWL + "ReflexiveProperty", EntityType.OBJECT_PROPERTY);
+		TYPES.put(OWL + "IrreflexiveProperty", EntityType.OBJECT_PROPERTY);
+		TYPES.put(OWL + "InverseFunctionalProperty", EntityType.OBJECT_PROPERTY);
+		TYPES.put(OWL + "DatatypeProperty", EntityType.DATA_PROPERTY);
+		TYPES.put(OWL + "AnnotationProperty", EntityType.ANNOTATION_PROPERTY);
+		TYPES.put(OWL + "NamedIndividual", EntityType.NAMED_INDIVIDUAL);
+		TYPES.put(RDFS + "Datatype", EntityType.DATATYPE);
+	}
+
+	private static final Map<String, EntityType<?>> DECLARATIONS = new HashMap<String, EntityType<?>>();
+	static {
+		DECLARATIONS.put("Class", EntityType.CLASS);
+		DECLARATIONS.put("ObjectProperty", EntityType.OBJECT_PROPERTY);
+		DECLARATIONS.put("DataProperty", EntityType.DATA_PROPERTY);
+		DECLARATIONS.put("AnnotationProperty", EntityType.ANNOTATION_PROPERTY);
+		DECLARATIONS.put("NamedIndividual", EntityType.NAMED_INDIVIDUAL);
+		DECLARATIONS.put("Datatype", EntityType.DATATYPE);
+	}
+
+	private StreamingParser() {
+	}
+
+	/**
+	 * Guesses the format of a document from its first bytes
+	 *
+	 * @param document
+	 * @return the format, or null if it is none of the streamed formats
+	 * @throws IOException
+	 */
+	public static Format detect(File document) throws IOException {
+		byte[] head = new byte[DETECT_LENGTH];
+		int length = 0;
+
+		InputStream in = new FileInputStream(document);
+		try {
+			int read;
+			while(length < head.length && (read = in.read(head, length, head.length - length)) > 0){
+				length += read;
+			}
+		} finally {
+			in.close();
+		}
+
+		//the markup and OBO tags are ASCII, whatever the encoding of the text around them
+		String text = new String(head, 0, length, StandardCharsets.ISO_8859_1);
+
+		if(RDF_XML_ROOT.matcher(text).find()){
+			return Format.RDF_XML;
+		} else if(OWL_XML_ROOT.matcher(text).find()){
+			return Format.OWL_XML;
+		} else if(OBO_HEADER.matcher(text).find()){
+			return Format.OBO;
+		}
+		return null;
+	}
+
+	/**
+	 * Streams document through handler
+	 *
+	 * @param document
+	 * @param format
+	 * @param documentIRI IRI the document was published under, relative IRIs are resolved against it
+	 * @param handler
+	 * @param monitor told the bytes read as {@link LoadMonitor.Stage#PARSE} work, or null
+	 * @throws IOException if the document can't be read or parsed, or the load was cancelled
+	 */
+	public static void parse(File document, Format format, String documentIRI, Handler handler, LoadMonitor monitor)
+			throws IOException {
+		parse(document, format, documentIRI, handler, monitor, null);
+	}
+
+	/**
+	 * Streams document through handler, recording the lines each subject is described on
+	 *
+	 * @param document
+	 * @param format
+	 * @param documentIRI IRI the document was published under, relative IRIs are resolved against it
+	 * @param handler
+	 * @param monitor told the bytes read as {@link LoadMonitor.Stage#PARSE} work, or null
+	 * @param outline told where the elements of the document are, or null
+	 * @throws IOException if the document can't be read or parsed, or the load was cancelled
+	 */
+	public static void parse(File document, Format format, String documentIRI, Handler handler, LoadMonitor monitor,
+			DocumentOutline.Recorder outline) throws IOException {
+		InputStream in = new FileInputStream(document);
+		if(outline != null){
+			in = outline.count(in);
+			handler = outline.wrap(handler);
+		}
+		if(monitor != null){
+			monitor.begin(LoadMonitor.Stage.PARSE, document.length());
+			in = new MonitoredInputStream(in, monitor);
+		}
+
+		try {
+			parse(in, format, documentIRI, handler, outline, document.length());
+		} catch (SAXException e) {
+			throw new IOException("Could not parse " + document + ": " + e.getMessage(), e);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Streams a document read from in through handler, such as the part of a document read
+	 * back with a {@link DocumentOutline}
+	 *
+	 * @param in the document, closed by the caller
+	 * @param format
+	 * @param documentIRI IRI the document was published under, relative IRIs are resolved against it
+	 * @param handler
+	 * @throws IOException if the document can't be read or parsed
+	 */
+	public static void parse(InputStream in, Format format, String documentIRI, Handler handler) throws IOException {
+		try {
+			parse(in, format, documentIRI, handler, null, 0);
+		} catch (SAXException e) {
+			throw new IOException("Could not parse " + documentIRI + ": " + e.getMessage(), e);
+		}
+	}
+
+	private static void parse(InputStream in, Format format, String documentIRI, Handler handler,
+			DocumentOutline.Recorder outline, long documentSize) throws IOException, SAXException {
+		if(format == Format.OBO){
+			parseOBO(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16), handler, outline);
+		} else {
+			InputSource source = new InputSource(in);
+			source.setSystemId(documentIRI);
+
+			DefaultHandler xmlHandler = format == Format.RDF_XML
+					? new RDFXMLHandler(documentIRI, handler, outline)
+					: new OWLXMLHandler(documentIRI, handler, outline);
+			newParser(documentSize).parse(source, xmlHandler);
+		}
+	}
+
+	/*
+	 * XML
+	 */
+
+	/**
+	 *
+	 * @param documentSize bytes in the document, or 0 if not known
+	 * @return parser that reads no external entities and expands entities in proportion to documentSize
+	 */
+	private static SAXParser newParser(long documentSize) throws IOException {
+		SAXParserFactory factory = SAXParserFactory.newInstance();
+		factory.setNamespaceAware(true);
+
+		try {
+			factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+			factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+			factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+
+			SAXParser parser = factory.newSAXParser();
+			//entity-heavy ontologies (every IRI written as &obo;...) hit the JDK's default limits, so they
+			//grow with the document; a reference takes at least three bytes and rarely expands sixteenfold
+			long expansions = Math.max(ENTITY_EXPANSION_LIMIT, documentSize / 3);
+			long entitySize = Math.max(TOTAL_ENTITY_SIZE_LIMIT, documentSize * 16);
+			setLimit(parser, "http://www.oracle.com/xml/jaxp/properties/entityExpansionLimit", expansions);
+			setLimit(parser, "http://www.oracle.com/xml/jaxp/properties/totalEntitySizeLimit", entitySize);
+			return parser;
+		} catch (ParserConfigurationException e) {
+			throw new IOException("No XML parser available: " + e.getMessage(), e);
+		} catch (SAXException e) {
+			throw new IOException("No XML parser available: " + e.getMessage(), e);
+		}
+	}
+
+	private static void setLimit(SAXParser parser, String property, long limit) {
+		try {
+			parser.setProperty(property, String.valueOf(Math.min(limit, Integer.MAX_VALUE)));
+		} catch (SAXException e) {
+			//not the JDK parser, its own limits apply
+		}
+	}
+
+	/**
+	 * Resolves iri against base, the way xml:base and rdf:ID resolve
+	 */
+	private static String resolve(String base, String iri) {
+		if(base == null || iri.contains(":") && !iri.startsWith("#")){
+			return iri;
+		}
+		if(iri.isEmpty()){
+			return stripFragment(base);
+		}
+		try {
+			return new URI(base).resolve(iri).toString();
+		} catch (URISyntaxException e) {
+			return base + iri;
+		} catch (IllegalArgumentException e) {
+			return base + iri;
+		}
+	}
+
+	private static String stripFragment(String base) {
+		int hash = base.indexOf('#');
+		return hash < 0 ? base : base.substring(0, hash);
+	}
+
+	/**
+	 * RDF/XML is read as a stack of frames alternating between nodes and properties, the
+	 * striped syntax of the format.  Only named nodes and literal property values are kept.
+	 */
+	private static class RDFXMLHandler extends DefaultHandler {
+
+		private enum Kind {
+			ROOT,
+			NODES,
+			NODE,
+			PROPERTY,
+			IGNORE
+		}
+
+		private static class Frame {
+
+			Kind kind;
+			String base;
+			String language;
+
+			//NODE: IRI of a named node, null for a blank one
+			String subject;
+			boolean ontology;
+			String versionIRI;
+
+			//PROPERTY
+			String property;
+			StringBuilder text;
+			boolean hasNode;
+		}
+
+		private final Handler handler;
+		private final Deque<Frame> frames = new ArrayDeque<Frame>();
+
+		private final DocumentOutline.Recorder outline;
+		private Locator locator;
+		//whether a line ended since the last node element of the document ended
+		private boolean newLine;
+
+		RDFXMLHandler(String documentIRI, Handler handler, DocumentOutline.Recorder outline) {
+			this.handler = handler;
+			this.outline = outline;
+
+			Frame root = new Frame();
+			root.kind = Kind.ROOT;
+			root.base = documentIRI;
+			root.language = "";
+			frames.push(root);
+		}
+
+		@Override
+		public void setDocumentLocator(Locator locator) {
+			this.locator = locator;
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			Frame parent = frames.peek();
+
+			Frame frame = new Frame();
+			frame.base = attributes.getValue(XML, "base") == null
+					? parent.base : resolve(parent.base, attributes.getValue(XML, "base"));
+			frame.language = attributes.getValue(XML, "lang") == null ? parent.language : attributes.getValue(XML, "lang");
+
+			String element = uri + localName;
+
+			if(parent.kind == Kind.IGNORE){
+				frame.kind = Kind.IGNORE;
+			} else if(parent.kind == Kind.ROOT && element.equals(RDF + "RDF")){
+				frame.kind = Kind.NODES;
+				if(outline != null && locator != null){
+					outline.header(locator.getLineNumber(), "</" + qName + ">\n");
+					newLine = false;
+				}
+			} else if(parent.kind == Kind.NODE){
+				startProperty(parent, frame, element, attributes);
+			} else {
+				if(parent.kind == Kind.PROPERTY){
+					//the value is a node, not text
+					parent.hasNode = true;
+				}
+				if(outline != null && parent.kind == Kind.NODES){
+					outline.startElement(newLine);
+				}
+				startNode(frame, element, attributes);
+			}
+
+			frames.push(frame);
+		}
+
+		private void startNode(Frame frame, String element, Attributes attributes) {
+			frame.kind = Kind.NODE;
+
+			if(attributes.getValue(RDF, "about") != null){
+				frame.subject = resolve(frame.base, attributes.getValue(RDF, "about"));
+			} else if(attributes.getValue(RDF, "ID") != null){
+				frame.subject = stripFragment(frame.base) + "#" + attributes.getValue(RDF, "ID");
+			}
+
+			if(!element.equals(RDF + "Description")){
+				type(frame, element);
+			}
+
+			for(int i = 0; i < attributes.getLength(); i++){
+				String attribute = attributes.getURI(i) + attributes.getLocalName(i);
+				if(attribute.equals(RDF + "type")){
+					type(frame, resolve(frame.base, attributes.getValue(i)));
+				} else if(!attributes.getURI(i).equals(RDF) && !attributes.getURI(i).equals(XML)
+						&& !attributes.getURI(i).isEmpty()){
+					//property attributes are literal values
+					literal(frame, attribute, attributes.getValue(i), frame.language);
+				}
+			}
+		}
+
+		private void startProperty(Frame node, Frame frame, String element, Attributes attributes) {
+			String resource = attributes.getValue(RDF, "resource");
+			String parseType = attributes.getValue(RDF, "parseType");
+
+			if(resource != null){
+				resource = resolve(frame.base, resource);
+				if(element.equals(RDF + "type")){
+					type(node, resource);
+				} else if(node.ontology && element.equals(OWL + "versionIRI")){
+					node.versionIRI = resource;
+				}
+				frame.kind = Kind.IGNORE;
+			} else if("Resource".equals(parseType)){
+				//the property value is a blank node whose properties follow
+				frame.kind = Kind.NODE;
+			} else if(parseType != null || attributes.getValue(RDF, "nodeID") != null){
+				frame.kind = Kind.IGNORE;
+			} else {
+				frame.kind = Kind.PROPERTY;
+				frame.subject = node.subject;
+				frame.property = element;
+				frame.text = new StringBuilder();
+			}
+		}
+
+		private void type(Frame node, String type) {
+			if(node.subject == null){
+				return;
+			}
+
+			if(type.equals(OWL + "Ontology")){
+				node.ontology = true;
+			}
+
+			EntityType<?> entityType = TYPES.get(type);
+			if(entityType != null){
+				handler.entity(node.subject, entityType);
+			}
+		}
+
+		private void literal(Frame node, String property, String value, String language) {
+			if(node.subject != null){
+				handler.annotation(node.subject, property, value, language);
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			Frame frame = frames.peek();
+			if(frame.kind == Kind.PROPERTY && !frame.hasNode){
+				frame.text.append(ch, start, length);
+			} else if(frame.kind == Kind.NODES && !newLine){
+				newLine = containsNewLine(ch, start, length);
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			Frame frame = frames.pop();
+
+			if(frame.kind == Kind.PROPERTY && !frame.hasNode && frame.subject != null){
+				handler.annotation(frame.subject, frame.property, frame.text.toString(), frame.language);
+			} else if(frame.kind == Kind.NODE && frame.ontology){
+				handler.ontology(frame.subject, frame.versionIRI);
+			}
+
+			if(outline != null && locator != null){
+				if(frame.kind == Kind.NODES){
+					outline.endRoot(newLine);
+				} else if(frames.peek().kind == Kind.NODES){
+					outline.endElement(locator.getLineNumber());
+					newLine = false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * OWL/XML keeps declarations and annotation assertions as direct children of the
+	 * ontology element, so only those are read
+	 */
+	private static class OWLXMLHandler extends DefaultHandler {
+
+		private final Handler handler;
+
+		private final DocumentOutline.Recorder outline;
+		private Locator locator;
+		//the header ends once the first element after the prefixes starts
+		private int headerEnd;
+		private String footer;
+		//whether a line ended since the last element at depth 2 ended
+		private boolean newLine;
+
+		private final Map<String, String> prefixes = new HashMap<String, String>();
+		private final Deque<String> bases = new ArrayDeque<String>();
+
+		private int depth;
+
+		//element read at depth 2, the axiom
+		private String axiom;
+
+		//AnnotationAssertion parts, in the order they appear
+		private int nestedAnnotations;
+		private String property;
+		private String subject;
+		private String value;
+		private String language;
+		private boolean literal;
+
+		//element whose text is collected, if any
+		private String textElement;
+		private StringBuilder text = new StringBuilder();
+
+		OWLXMLHandler(String documentIRI, Handler handler, DocumentOutline.Recorder outline) {
+			this.handler = handler;
+			this.outline = outline;
+			bases.push(documentIRI);
+		}
+
+		@Override
+		public void setDocumentLocator(Locator locator) {
+			this.locator = locator;
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			depth++;
+			String base = attributes.getValue(XML, "base");
+			bases.push(base == null ? bases.peek() : resolve(bases.peek(), base));
+
+			if(outline != null && locator != null){
+				if(depth == 1){
+					headerEnd = locator.getLineNumber();
+					footer = "</" + qName + ">\n";
+				} else if(depth == 2 && !(footer != null && isPrefix(uri, localName))){
+					if(footer != null){
+						outline.header(headerEnd, footer);
+						footer = null;
+					}
+					outline.startElement(newLine);
+				}
+			}
+
+			if(!OWL.equals(uri)){
+				return;
+			}
+
+			if(depth == 1 && localName.equals("Ontology")){
+				String ontologyIRI = attributes.getValue("ontologyIRI");
+				if(ontologyIRI != null){
+					handler.ontology(resolve(bases.peek(), ontologyIRI), attributes.getValue("versionIRI"));
+				}
+			} else if(depth == 2){
+				axiom = localName;
+				if(localName.equals("Prefix")){
+					prefixes.put(attributes.getValue("name"), attributes.getValue("IRI"));
+				} else if(localName.equals("AnnotationAssertion")){
+					nestedAnnotations = 0;
+					property = null;
+					subject = null;
+					value = null;
+					language = "";
+					literal = false;
+				}
+			} else if(depth == 3 && "Declaration".equals(axiom)){
+				EntityType<?> type = DECLARATIONS.get(localName);
+				String iri = iri(attributes);
+				if(type != null && iri != null){
+					handler.entity(iri, type);
+				}
+			} else if("AnnotationAssertion".equals(axiom) && nestedAnnotations == 0){
+				if(localName.equals("Annotation")){
+					nestedAnnotations = depth;
+				} else if(depth == 3 && localName.equals("AnnotationProperty")){
+					property = iri(attributes);
+				} else if(depth == 3 && (localName.equals("IRI") || localName.equals("AbbreviatedIRI"))){
+					startText(localName);
+				} else if(depth == 3 && localName.equals("Literal")){
+					literal = true;
+					String lang = attributes.getValue(XML, "lang");
+					language = lang == null ? "" : lang;
+					startText(localName);
+				}
+			}
+		}
+
+		private void startText(String element) {
+			textElement = element;
+			text.setLength(0);
+		}
+
+		private String iri(Attributes attributes) {
+			if(attributes.getValue("IRI") != null){
+				return resolve(bases.peek(), attributes.getValue("IRI"));
+			}
+			return expand(attributes.getValue("abbreviatedIRI"));
+		}
+
+		private String expand(String abbreviated) {
+			if(abbreviated == null){
+				return null;
+			}
+			int colon = abbreviated.indexOf(':');
+			String prefix = colon < 0 ? null : prefixes.get(abbreviated.substring(0, colon));
+			return prefix == null ? abbreviated : prefix + abbreviated.substring(colon + 1);
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			if(textElement != null){
+				text.append(ch, start, length);
+			} else if(depth == 1 && !newLine){
+				newLine = containsNewLine(ch, start, length);
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			if(textElement != null && textElement.equals(localName) && depth == 3){
+				String content = text.toString();
+				textElement = null;
+
+				if(localName.equals("Literal")){
+					value = content;
+				} else if(subject == null){
+					//the subject comes before the value
+					subject = localName.equals("IRI") ? resolve(bases.peek(), content.trim()) : expand(content.trim());
+				}
+			}
+
+			if(nestedAnnotations == depth){
+				nestedAnnotations = 0;
+			}
+
+			if(depth == 2 && "AnnotationAssertion".equals(axiom)){
+				if(literal && property != null && subject != null && value != null){
+					handler.annotation(subject, property, value, language);
+				}
+				axiom = null;
+			}
+
+			if(outline != null && locator != null){
+				if(depth == 1){
+					outline.endRoot(newLine);
+				} else if(depth == 2 && footer != null && isPrefix(uri, localName)){
+					//the prefixes are needed to read any other element
+					headerEnd = locator.getLineNumber();
+					newLine = false;
+				} else if(depth == 2){
+					outline.endElement(locator.getLineNumber());
+					newLine = false;
+				}
+			}
+
+			bases.pop();
+			depth--;
+		}
+
+		private static boolean isPrefix(String uri, String localName) {
+			return OWL.equals(uri) && localName.equals("Prefix");
+		}
+	}
+
+	private static boolean containsNewLine(char[] ch, int start, int length) {
+		for(int i = start; i < start + length; i++){
+			if(ch[i] == '\n'){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * OBO
+	 */
+
+	private static final Pattern OBO_ID = Pattern.compile("([A-Za-z][A-Za-z0-9_]*):([^\\s:]+)");
+
+	/**
+	 * Reads an OBO 1.4 flat file, translating its tags to the annotation properties the
+	 * OBO to OWL mapping uses
+	 */
+	private static void parseOBO(BufferedReader reader, Handler handler, DocumentOutline.Recorder outline)
+			throws IOException {
+		String ontology = null;
+		String version = null;
+		boolean header = true;
+
+		String stanza = null;
+		List<String[]> tags = new ArrayList<String[]>();
+
+		int number = 0;
+		String line;
+		while((line = reader.readLine()) != null){
+			number++;
+			line = line.trim();
+			if(line.isEmpty() || line.startsWith("!")){
+				continue;
+			}
+
+			if(line.startsWith("[") && line.endsWith("]")){
+				if(header){
+					header = false;
+					if(outline != null){
+						outline.header(number - 1, "");
+					}
+					startOBO(ontology, version, handler);
+				}
+				endStanza(stanza, tags, ontology, handler);
+				if(outline != null){
+					if(stanza != null){
+						outline.endElement(number - 1);
+					}
+					outline.startElement(true);
+				}
+				stanza = line.substring(1, line.length() - 1).trim();
+				tags.clear();
+				continue;
+			}
+
+			int colon = line.indexOf(':');
+			if(colon < 0){
+				continue;
+			}
+			String tag = line.substring(0, colon).trim();
+			String value = line.substring(colon + 1).trim();
+
+			if(header){
+				if(tag.equals("ontology")){
+					ontology = stripComment(value);
+				} else if(tag.equals("data-version")){
+					version = stripComment(value);
+				}
+			} else {
+				tags.add(new String[]{tag, value});
+			}
+		}
+
+		if(header){
+			if(outline != null){
+				outline.header(number, "");
+			}
+			startOBO(ontology, version, handler);
+		}
+		endStanza(stanza, tags, ontology, handler);
+		if(outline != null){
+			if(stanza != null){
+				outline.endElement(number);
+			}
+			outline.endRoot(true);
+		}
+	}
+
+	private static void startOBO(String ontology, String version, Handler handler) {
+		if(ontology == null){
+			return;
+		}
+		String versionIRI = version == null ? null : OBO + ontology + "/" + version + "/" + ontology + ".owl";
+		handler.ontology(OBO + ontology + ".owl", versionIRI);
+	}
+
+	private static void endStanza(String stanza, List<String[]> tags, String ontology, Handler handler) {
+		EntityType<?> type;
+		if("Term".equals(stanza)){
+			type = EntityType.CLASS;
+		} else if("Typedef".equals(stanza)){
+			type = EntityType.OBJECT_PROPERTY;
+		} else {
+			return;
+		}
+
+		String iri = null;
+		for(String[] tag : tags){
+			if(tag[0].equals("id")){
+				iri = oboIRI(stripComment(tag[1]), ontology);
+				break;
+			}
+		}
+		if(iri == null){
+			return;
+		}
+
+		handler.entity(iri, type);
+
+		for(String[] tag : tags){
+			String name = tag[0];
+			String value = tag[1];
+
+			if(name.equals("name")){
+				handler.annotation(iri, RDFS + "label", stripComment(value), "");
+			} else if(name.equals("comment")){
+				handler.annotation(iri, RDFS + "comment", stripComment(value), "");
+			} else if(name.equals("def")){
+				String text = quoted(value);
+				if(text != null){
+					handler.annotation(iri, OBO + "IAO_0000115", text, "");
+				}
+			} else if(name.equals("synonym")){
+				String text = quoted(value);
+				if(text != null){
+					handler.annotation(iri, OBO_IN_OWL + synonymProperty(value), text, "");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Maps an OBO identifier to an IRI: prefixed IDs become OBO PURLs, unprefixed ones
+	 * (mostly relations) are made local to the ontology
+	 */
+	private static String oboIRI(String id, String ontology) {
+		if(id.startsWith("http://") || id.startsWith("https://")){
+			return id;
+		}
+
+		Matcher matcher = OBO_ID.matcher(id);
+		if(matcher.matches()){
+			return OBO + matcher.group(1) + "_" + matcher.group(2);
+		}
+		return OBO + (ontology == null ? "" : ontology) + "#" + id;
+	}
+
+	private static String synonymProperty(String value) {
+		//the scope follows the closing quote of the synonym text
+		int end = closingQuote(value);
+		String rest = end < 0 ? "" : value.substring(end + 1).trim();
+
+		if(rest.startsWith("EXACT")){
+			return "hasExactSynonym";
+		} else if(rest.startsWith("NARROW")){
+			return "hasNarrowSynonym";
+		} else if(rest.startsWith("BROAD")){
+			return "hasBroadSynonym";
+		}
+		return "hasRelatedSynonym";
+	}
+
+	/**
+	 *
+	 * @param value tag value starting with a quoted string
+	 * @return the unescaped string, or null if value doesn't start with one
+	 */
+	private static String quoted(String value) {
+		int end = closingQuote(value);
+		if(end < 0){
+			return null;
+		}
+		return unescape(value.substring(1, end));
+	}
+
+	private static int closingQuote(String value) {
+		if(!value.startsWith("\"")){
+			return -1;
+		}
+		for(int i = 1; i < value.length(); i++){
+			char c = value.charAt(i);
+			if(c == '\\'){
+				i++;
+			} else if(c == '"'){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Drops trailing modifiers ({...}) and comments (! ...) from an unquoted tag value
+	 */
+	private static String stripComment(String value) {
+		StringBuilder text = new StringBuilder(value.length());
+		for(int i = 0; i < value.length(); i++){
+			char c = value.charAt(i);
+			if(c == '\\' && i + 1 < value.length()){
+				text.append(c).append(value.charAt(++i));
+			} else if(c == '!' && (i == 0 || Character.isWhitespace(value.charAt(i - 1)))
+					|| c == '{' && value.lastIndexOf('}') > i){
+				break;
+			} else {
+				text.append(c);
+			}
+		}
+		return unescape(text.toString().trim());
+	}
+
+	private static String unescape(String value) {
+		if(value.indexOf('\\') < 0){
+			return value;
+		}
+
+		StringBuilder text = new StringBuilder(value.length());
+		for(int i = 0; i < value.length(); i++){
+			char c = value.charAt(i);
+			if(c != '\\' || i + 1 == value.length()){
+				text.append(c);
+				continue;
+			}
+
+			char escaped = value.charAt(++i);
+			if(escaped == 'n'){
+				text.append('\n');
+			} else if(escaped == 't'){
+				text.append('\t');
+			} else if(escaped == 'W'){
+				text.append(' ');
+			} else {
+				text.append(escaped);
+			}
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,336 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.result;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+import edu.uams.dbmi.protege.plugin.mireot.search.index.IntList;
+import edu.uams.dbmi.protege.plugin.mireot.search.index.SearchField;
+import edu.uams.dbmi.protege.plugin.mireot.search.index.SearchIndex;
+import edu.uams.dbmi.protege.plugin.mireot.search.load.LoadedOntology;
+
+/**
+ * Search results kept in columns of ints rather than as one object per result.
+ *
+ * A row is the source it was found in and the index entries of the entity that matched.
+ * Everything shown for a row (entity, label, match types and contexts) is read from the
+ * source's {@link SearchIndex} when asked for, so the texts are shared with the index and
+ * a row costs a few ints.  {@link #get(int)} wraps a row in a read-only
+ * {@link SearchResult}.
+ */
+public class ResultStore extends AbstractList<SearchResult> {
+
+	private final String[] matchTypes;
+
+	//sources the rows were found in, in the order they were first added
+	private final List<LoadedOntology> sources = new ArrayList<LoadedOntology>(1);
+
+	private IntList rowSources = new IntList(64);
+	//entries of row r are entries[rowStarts[r]] up to entries[rowStarts[r + 1]]
+	private IntList rowStarts = new IntList(65);
+	private IntList entries = new IntList(128);
+
+	/**
+	 *
+	 * @param matchTypes match type shown for each {@link SearchField}, by ordinal
+	 */
+	public ResultStore(String[] matchTypes) {
+		this.matchTypes = matchTypes;
+		rowStarts.add(0);
+	}
+
+	/**
+	 * Adds a row for one entity
+	 *
+	 * @param source ontology the entries were found in
+	 * @param group index entries of the entity that matched, best first
+	 */
+	public void add(LoadedOntology source, IntList group) {
+		rowSources.add(this.getSourceId(source));
+		entries.addAll(group);
+		rowStarts.add(entries.size());
+	}
+
+	/**
+	 * Appends every row of other, copying its columns
+	 *
+	 * @param other
+	 */
+	public void append(ResultStore other) {
+		for(int row = 0; row < other.size(); row++){
+			rowSources.add(this.getSourceId(other.sources.get(other.rowSources.get(row))));
+			for(int i = other.rowStarts.get(row); i < other.rowStarts.get(row + 1); i++){
+				entries.add(other.entries.get(i));
+			}
+			rowStarts.add(entries.size());
+		}
+	}
+
+	/**
+	 *
+	 * @param matched entries to keep, by source
+	 * @return the rows without any matched entry, which {@link #retain} would remove, in ascending order
+	 */
+	public IntList unmatched(Map<LoadedOntology, BitSet> matched) {
+		IntList unmatched = new IntList();
+		for(int row = 0; row < size(); row++){
+			BitSet kept = matched.get(this.getSource(row));
+			int i = rowStarts.get(row);
+			while(i < rowStarts.get(row + 1) && (kept == null || !kept.get(entries.get(i)))){
+				i++;
+			}
+			if(i == rowStarts.get(row + 1)){
+				unmatched.add(row);
+			}
+		}
+		return unmatched;
+	}
+
+	/**
+	 * Removes the rows from first to last, inclusive
+	 *
+	 * @param first
+	 * @param last
+	 */
+	public void remove(int first, int last) {
+		if(first < 0 || first > last || last >= size()){
+			throw new IndexOutOfBoundsException(first + ".." + last + " of " + size());
+		}
+
+		int entryStart = rowStarts.get(first);
+		int entryEnd = rowStarts.get(last + 1);
+
+		rowSources.removeRange(first, last + 1);
+		entries.removeRange(entryStart, entryEnd);
+		rowStarts.removeRange(first + 1, last + 2);
+		for(int row = first + 1; row < rowStarts.size(); row++){
+			rowStarts.set(row, rowStarts.get(row) - (entryEnd - entryStart));
+		}
+	}
+
+	/**
+	 * Keeps only the matched entries of every row, and removes the rows left without any.
+	 * The rows kept stay in order.
+	 *
+	 * @param matched entries to keep, by source; rows of the other sources are removed
+	 * @return the rows kept that lost some of their entries, by their new position, in ascending order
+	 */
+	public IntList retain(Map<LoadedOntology, BitSet> matched) {
+		IntList changed = new IntList();
+
+		IntList keptSources = new IntList(rowSources.size());
+		IntList keptStarts = new IntList(rowStarts.size());
+		IntList keptEntries = new IntList(entries.size());
+		keptStarts.add(0);
+
+		for(int row = 0; row < size(); row++){
+			BitSet kept = matched.get(this.getSource(row));
+			int start = keptEntries.size();
+			for(int i = rowStarts.get(row); i < rowStarts.get(row + 1); i++){
+				if(kept != null && kept.get(entries.get(i))){
+					keptEntries.add(entries.get(i));
+				}
+			}
+
+			if(keptEntries.size() > start){
+				if(keptEntries.size() - start < rowStarts.get(row + 1) - rowStarts.get(row)){
+					changed.add(keptSources.size());
+				}
+				keptSources.add(rowSources.get(row));
+				keptStarts.add(keptEntries.size());
+			}
+		}
+
+		rowSources = keptSources;
+		rowStarts = keptStarts;
+		entries = keptEntries;
+		return changed;
+	}
+
+	@Override
+	public SearchResult get(int row) {
+		if(row < 0 || row >= size()){
+			throw new IndexOutOfBoundsException(row + " >= " + size());
+		}
+		return new Row(row);
+	}
+
+	@Override
+	public int size() {
+		return rowSources.size();
+	}
+
+	/*
+	 * Columns, read without wrapping the row
+	 */
+
+	public LoadedOntology getSource(int row) {
+		return sources.get(rowSources.get(row));
+	}
+
+	public OWLEntity getEntity(int row) {
+		return this.getIndex(row).getEntity(entries.get(rowStarts.get(row)));
+	}
+
+	/**
+	 *
+	 * @param row
+	 * @return id of the entity in the index of its source, see {@link SearchIndex#getEntityId(int)}
+	 */
+	public int getEntityId(int row) {
+		return this.getIndex(row).getEntityId(entries.get(rowStarts.get(row)));
+	}
+
+	/**
+	 *
+	 * @return the sources rows were found in, each once
+	 */
+	public List<LoadedOntology> getSources() {
+		return Collections.unmodifiableList(sources);
+	}
+
+	/**
+	 *
+	 * @param row
+	 * @return preferred label of the entity, or the short form of its IRI if it has none
+	 */
+	public String getLabel(int row) {
+		return this.getIndex(row).getLabel(entries.get(rowStarts.get(row)));
+	}
+
+	/**
+	 *
+	 * @param row
+	 * @return every distinct match type of the row, in entry order
+	 */
+	public List<String> getMatchTypes(int row) {
+		SearchIndex index = this.getIndex(row);
+
+		List<String> types = new ArrayList<String>(2);
+		for(int i = rowStarts.get(row); i < rowStarts.get(row + 1); i++){
+			String type = matchTypes[index.getField(entries.get(i)).ordinal()];
+			if(!types.contains(type)){
+				types.add(type);
+			}
+		}
+		return types;
+	}
+
+	/**
+	 *
+	 * @param row
+	 * @return every distinct match context of the row, in entry order
+	 */
+	public List<String> getMatchContexts(int row) {
+		SearchIndex index = this.getIndex(row);
+
+		List<String> contexts = new ArrayList<String>(2);
+		for(int i = rowStarts.get(row); i < rowStarts.get(row + 1); i++){
+			int entry = entries.get(i);
+			String context = index.getField(entry) == SearchField.URI ? "NA" : index.getText(entry);
+			if(!contexts.contains(context)){
+				contexts.add(context);
+			}
+		}
+		return contexts;
+	}
+
+	/*
+	 * Internals
+	 */
+
+	private SearchIndex getIndex(int row) {
+		return this.getSource(row).getIndex();
+	}
+
+	private int getSourceId(LoadedOntology source) {
+		//rows mostly come from the source added last
+		for(int id = sources.size() - 1; id >= 0; id--){
+			if(sources.get(id) == source){
+				return id;
+			}
+		}
+		sources.add(source);
+		return sources.size() - 1;
+	}
+
+	private static String join(List<String> values, String separator) {
+		StringBuilder joined = new StringBuilder();
+		for(String value : values){
+			if(joined.length() > 0){
+				joined.append(separator);
+			}
+			joined.append(value);
+		}
+		return joined.toString();
+	}
+
+	/**
+	 * One row seen as a search result
+	 */
+	private class Row implements SearchResult {
+
+		private final int row;
+
+		Row(int row) {
+			this.row = row;
+		}
+
+		@Override
+		public String getType() {
+			return this.getOWLEntity().isOWLClass() ? "Class" : "Object Property";
+		}
+
+		@Override
+		public IRI getIRI() {
+			return this.getOWLEntity().getIRI();
+		}
+
+		@Override
+		public String getName() {
+			return getLabel(row);
+		}
+
+		@Override
+		public String getMatchType() {
+			return join(this.getMatchTypes(), ", ");
+		}
+
+		@Override
+		public String getMatchContext() {
+			return join(this.getMatchContexts(), " | ");
+		}
+
+		@Override
+		public List<String> getMatchTypes() {
+			return Collections.unmodifiableList(ResultStore.this.getMatchTypes(row));
+		}
+
+		@Override
+		public List<String> getMatchContexts() {
+			return Collections.unmodifiableList(ResultStore.this.getMatchContexts(row));
+		}
+
+		@Override
+		public OWLOntology getOntology() {
+			return ResultStore.this.getSource(row).getOntology();
+		}
+
+		@Override
+		public String getSource() {
+			return ResultStore.this.getSource(row).getSource();
+		}
+
+		@Override
+		public OWLEntity getOWLEntity() {
+			return getEntity(row);
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package edu.uams.dbmi.protege.plugin.mireot.search.result;
 
+import java.util.List;
+
 import org.semanticweb.owlapi.model.IRI;
 import org.semanticweb.owlapi.model.OWLEntity;
 import org.semanticweb.owlapi.model.OWLOntology;
@@ -45,12 +47,30 @@ public interface SearchResult {
 	 */
 	public String getMatchContext();
 
+	/**
+	 * 
+	 * @return every annotation type where a match occurred, in the order they were found
+	 */
+	public List<String> getMatchTypes();
+
+	/**
+	 * 
+	 * @return every context of a match, in the order they were found
+	 */
+	public List<String> getMatchContexts();
+
 	/**
 	 * 
 	 * @return Ontology from which the Entity was found to have matching annotations
 	 */
 	public OWLOntology getOntology();
 
+	/**
+	 * 
+	 * @return URL or file path of the source ontology the Entity was found in
+	 */
+	public String getSource();
+
 	/**
 	 * 
 	 * @return Entity which matched
@@ -0,0 +1,529 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.result.table;
+
+import java.awt.EventQueue;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.Timer;
+
+import org.semanticweb.owlapi.model.EntityType;
+
+import com.ibm.icu.text.CollationKey;
+import com.ibm.icu.text.Collator;
+
+import edu.uams.dbmi.protege.plugin.mireot.search.index.IntList;
+import edu.uams.dbmi.protege.plugin.mireot.search.index.SearchCancellation;
+import edu.uams.dbmi.protege.plugin.mireot.search.index.SearchField;
+import edu.uams.dbmi.protege.plugin.mireot.search.index.SearchIndex;
+import edu.uams.dbmi.protege.plugin.mireot.search.load.LoadedOntology;
+import edu.uams.dbmi.protege.plugin.mireot.search.result.ResultStore;
+
+/**
+ * Sorts and filters the rows of a {@link ResultTableModel} without comparing strings.
+ *
+ * Sorting by a column computes an ICU collation key for each row of that column once, and
+ * keeps it as rows are appended, removed or reordered, so later sorts only compare keys
+ * and appended rows only cost their own keys; they are merged into the order shown.
+ * Filtering runs the filter text through the search index of each source the results
+ * came from and keeps the rows whose entity the index matched, so it matches the same
+ * fields and spellings a search does.  The indexes are searched on a thread of their own
+ * once typing pauses, and the rows shown change when the matches are known.
+ *
+ * Only one column is sorted at a time.  Rows that compare equal keep the order of the
+ * model, that is their rank.
+ */
+public class ResultRowSorter extends RowSorter<ResultTableModel> {
+
+	private static final Set<EntityType<?>> FILTER_TYPES = new HashSet<EntityType<?>>(
+			Arrays.<EntityType<?>>asList(EntityType.CLASS, EntityType.OBJECT_PROPERTY));
+
+	//the filter is applied once typing pauses this long
+	private static final int FILTER_DELAY_MILLIS = 250;
+
+	private final ResultTableModel model;
+	private final Collator collator = Collator.getInstance();
+
+	private List<SortKey> sortKeys = Collections.emptyList();
+
+	//filter shown, and the one typed and waiting to be applied
+	private String filter = "";
+	private Set<SearchField> filterFields = EnumSet.noneOf(SearchField.class);
+	private String requestedFilter = "";
+	private Set<SearchField> requestedFields = EnumSet.noneOf(SearchField.class);
+	//counts filter changes, so matches of an older filter are dropped
+	private int generation;
+	private SearchCancellation filterCancellation = new SearchCancellation();
+
+	private final Timer filterTimer;
+	private final ExecutorService filterExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "MIREOT filter");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	//results the keys and matches below were computed for
+	private ResultStore store;
+	//collation keys of each column, by model row, null where not computed yet
+	private CollationKey[][] keys = new CollationKey[0][];
+	//for each source, which of its entities the filter matched
+	private final Map<LoadedOntology, boolean[]> matched = new IdentityHashMap<LoadedOntology, boolean[]>();
+	//sources whose matches are being searched for; their rows are hidden until then
+	private final Set<LoadedOntology> matching = Collections.newSetFromMap(new IdentityHashMap<LoadedOntology, Boolean>());
+
+	private int[] viewToModel = new int[0];
+	private int[] modelToView = new int[0];
+
+	public ResultRowSorter(ResultTableModel model) {
+		this.model = model;
+		this.filterTimer = new Timer(FILTER_DELAY_MILLIS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				applyFilter();
+			}
+		});
+		filterTimer.setRepeats(false);
+		this.update();
+	}
+
+	/**
+	 * Shows only the rows whose entity matches text in one of fields, as a search for it
+	 * would.  The filter is applied once no other filter is set for a moment.
+	 *
+	 * @param text filter text, "" to show every row
+	 * @param fields fields searched for text
+	 */
+	public void setFilter(String text, Set<SearchField> fields) {
+		requestedFilter = text.trim();
+		requestedFields = EnumSet.noneOf(SearchField.class);
+		requestedFields.addAll(fields);
+		filterTimer.restart();
+	}
+
+	public String getFilter() {
+		return filter;
+	}
+
+	@Override
+	public ResultTableModel getModel() {
+		return model;
+	}
+
+	@Override
+	public void toggleSortOrder(int column) {
+		SortOrder order = SortOrder.ASCENDING;
+		if(!sortKeys.isEmpty() && sortKeys.get(0).getColumn() == column
+				&& sortKeys.get(0).getSortOrder() == SortOrder.ASCENDING){
+			order = SortOrder.DESCENDING;
+		}
+		this.setSortKeys(Collections.singletonList(new SortKey(column, order)));
+	}
+
+	@Override
+	public void setSortKeys(List<? extends SortKey> keys) {
+		List<SortKey> sorted = Collections.emptyList();
+		if(keys != null && !keys.isEmpty() && keys.get(0).getSortOrder() != SortOrder.UNSORTED){
+			sorted = Collections.singletonList(keys.get(0));
+		}
+		if(sorted.equals(sortKeys)){
+			return;
+		}
+		sortKeys = sorted;
+		fireSortOrderChanged();
+		this.sortChanged();
+	}
+
+	@Override
+	public List<? extends SortKey> getSortKeys() {
+		return sortKeys;
+	}
+
+	@Override
+	public int convertRowIndexToModel(int index) {
+		if(index < 0 || index >= viewToModel.length){
+			throw new IndexOutOfBoundsException(index + " >= " + viewToModel.length);
+		}
+		return viewToModel[index];
+	}
+
+	@Override
+	public int convertRowIndexToView(int index) {
+		if(index < 0 || index >= modelToView.length){
+			throw new IndexOutOfBoundsException(index + " >= " + modelToView.length);
+		}
+		return modelToView[index];
+	}
+
+	@Override
+	public int getViewRowCount() {
+		return viewToModel.length;
+	}
+
+	@Override
+	public int getModelRowCount() {
+		return model.getRowCount();
+	}
+
+	/*
+	 * Model changes.  The table ignores the events fired while it tells the sorter about a
+	 * change of its model, and reads the new order once the sorter returns.
+	 */
+
+	@Override
+	public void modelStructureChanged() {
+		//a new search, or a status message; the sort column is kept if there still is one
+		if(!sortKeys.isEmpty() && sortKeys.get(0).getColumn() >= model.getColumnCount()){
+			sortKeys = Collections.emptyList();
+			fireSortOrderChanged();
+		}
+		this.sortChanged();
+	}
+
+	@Override
+	public void allRowsChanged() {
+		this.sortChanged();
+	}
+
+	@Override
+	public void rowsInserted(int firstRow, int endRow) {
+		if(model.getResults() != store || store == null || firstRow != modelToView.length){
+			this.sortChanged();
+			return;
+		}
+
+		//rows are only ever appended, the new ones are sorted among themselves and merged in
+		IntList added = new IntList(endRow - firstRow + 1);
+		for(int row = firstRow; row <= endRow; row++){
+			if(this.isShown(row)){
+				added.add(row);
+			}
+		}
+
+		int[] last = viewToModel;
+		int[] rows = added.toArray();
+		if(!sortKeys.isEmpty() && rows.length > 0){
+			Comparator<Integer> comparator = this.getComparator(sortKeys.get(0));
+			this.sort(rows, comparator);
+			viewToModel = this.merge(viewToModel, rows, comparator);
+		} else {
+			viewToModel = Arrays.copyOf(viewToModel, viewToModel.length + rows.length);
+			System.arraycopy(rows, 0, viewToModel, last.length, rows.length);
+		}
+
+		this.updateModelToView();
+		fireRowSorterChanged(last);
+	}
+
+	@Override
+	public void rowsDeleted(int firstRow, int endRow) {
+		if(model.getResults() != store || store == null){
+			this.sortChanged();
+			return;
+		}
+
+		//the keys and the order of the other rows stay, shifted past the deleted rows
+		for(int column = 0; column < keys.length; column++){
+			keys[column] = remove(keys[column], firstRow, endRow);
+		}
+
+		int removed = endRow - firstRow + 1;
+		IntList rows = new IntList(viewToModel.length);
+		for(int row : viewToModel){
+			if(row < firstRow){
+				rows.add(row);
+			} else if(row > endRow){
+				rows.add(row - removed);
+			}
+		}
+
+		int[] last = viewToModel;
+		viewToModel = rows.toArray();
+		this.updateModelToView();
+		fireRowSorterChanged(last);
+	}
+
+	@Override
+	public void rowsUpdated(int firstRow, int endRow) {
+		//the values, and so the keys, of the updated rows may have changed
+		for(int column = 0; column < keys.length; column++){
+			this.forgetKeys(column, firstRow, endRow);
+		}
+		this.sortChanged();
+	}
+
+	@Override
+	public void rowsUpdated(int firstRow, int endRow, int column) {
+		if(column < keys.length){
+			this.forgetKeys(column, firstRow, endRow);
+		}
+		this.sortChanged();
+	}
+
+	/**
+	 * Cancels the filter being applied and stops the filter thread
+	 */
+	public void dispose() {
+		filterTimer.stop();
+		filterCancellation.cancel();
+		filterExecutor.shutdownNow();
+	}
+
+	/*
+	 * Internals
+	 */
+
+	/**
+	 * Searches the indexes for the filter typed last, and shows its matches once every
+	 * source of the results is searched
+	 */
+	private void applyFilter() {
+		final String text = requestedFilter;
+		final Set<SearchField> fields = requestedFields;
+		if(text.equals(filter) && fields.equals(filterFields)){
+			return;
+		}
+
+		final int filterGeneration = ++generation;
+		filterCancellation.cancel();
+		final SearchCancellation cancellation = new SearchCancellation();
+		filterCancellation = cancellation;
+
+		final List<LoadedOntology> sources = store == null || text.isEmpty()
+				? Collections.<LoadedOntology>emptyList() : new ArrayList<LoadedOntology>(store.getSources());
+
+		filterExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				final Map<LoadedOntology, boolean[]> found = new IdentityHashMap<LoadedOntology, boolean[]>();
+				try {
+					for(LoadedOntology source : sources){
+						found.put(source, match(source, text, fields, cancellation));
+					}
+				} catch (CancellationException e) {
+					//superseded by a newer filter
+					return;
+				}
+
+				EventQueue.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						if(filterGeneration != generation){
+							return;
+						}
+						filter = text;
+						filterFields = fields;
+						matched.clear();
+						matched.putAll(found);
+						matching.clear();
+						sortChanged();
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Searches the index of a source the filter wasn't matched against yet, such as one
+	 * whose results arrived after the filter was applied
+	 */
+	private void matchLater(final LoadedOntology source) {
+		//once disposed, results arriving late stay hidden
+		if(filterExecutor.isShutdown() || !matching.add(source)){
+			return;
+		}
+
+		final int filterGeneration = generation;
+		final String text = filter;
+		final Set<SearchField> fields = filterFields;
+		final SearchCancellation cancellation = filterCancellation;
+
+		filterExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				final boolean[] entities;
+				try {
+					entities = match(source, text, fields, cancellation);
+				} catch (CancellationException e) {
+					return;
+				}
+
+				EventQueue.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						if(filterGeneration != generation || !matching.remove(source)){
+							return;
+						}
+						matched.put(source, entities);
+						sortChanged();
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Runs on the filter thread
+	 *
+	 * @return which entities of source's index match text
+	 */
+	private static boolean[] match(LoadedOntology source, String text, Set<SearchField> fields,
+			SearchCancellation cancellation) {
+		SearchIndex index = source.getIndex();
+		boolean[] entities = new boolean[index.getEntityCount()];
+		for(int entry : index.search(text, fields, FILTER_TYPES, 0, cancellation)){
+			entities[index.getEntityId(entry)] = true;
+		}
+		return entities;
+	}
+
+	private void sortChanged() {
+		int[] last = viewToModel;
+		this.update();
+		fireRowSorterChanged(last);
+	}
+
+	private void update() {
+		ResultStore results = model.getResults();
+		if(results != store || keys.length != model.getColumnCount()){
+			store = results;
+			keys = new CollationKey[model.getColumnCount()][];
+			matched.clear();
+			matching.clear();
+		}
+
+		int rowCount = model.getRowCount();
+		IntList rows = new IntList(rowCount);
+		for(int row = 0; row < rowCount; row++){
+			if(this.isShown(row)){
+				rows.add(row);
+			}
+		}
+		viewToModel = rows.toArray();
+
+		if(results != null && !sortKeys.isEmpty() && viewToModel.length > 1){
+			this.sort(viewToModel, this.getComparator(sortKeys.get(0)));
+		}
+
+		this.updateModelToView();
+	}
+
+	private void updateModelToView() {
+		modelToView = new int[model.getRowCount()];
+		Arrays.fill(modelToView, -1);
+		for(int view = 0; view < viewToModel.length; view++){
+			modelToView[viewToModel[view]] = view;
+		}
+	}
+
+	private Comparator<Integer> getComparator(SortKey key) {
+		final CollationKey[] columnKeys = this.getKeys(key.getColumn());
+		final boolean descending = key.getSortOrder() == SortOrder.DESCENDING;
+
+		return new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				int compared = columnKeys[a].compareTo(columnKeys[b]);
+				return descending ? -compared : compared;
+			}
+		};
+	}
+
+	private void sort(int[] rows, Comparator<Integer> comparator) {
+		Integer[] order = new Integer[rows.length];
+		for(int i = 0; i < order.length; i++){
+			order[i] = rows[i];
+		}
+
+		//a stable sort, so equal rows stay in rank order either way
+		Arrays.sort(order, comparator);
+
+		for(int i = 0; i < order.length; i++){
+			rows[i] = order[i];
+		}
+	}
+
+	/**
+	 * Merges two sorted runs of rows; rows of shown come first among equal ones, as they rank higher
+	 */
+	private int[] merge(int[] shown, int[] added, Comparator<Integer> comparator) {
+		int[] merged = new int[shown.length + added.length];
+		int i = 0;
+		int j = 0;
+		for(int k = 0; k < merged.length; k++){
+			if(j == added.length || i < shown.length && comparator.compare(shown[i], added[j]) <= 0){
+				merged[k] = shown[i++];
+			} else {
+				merged[k] = added[j++];
+			}
+		}
+		return merged;
+	}
+
+	private CollationKey[] getKeys(int column) {
+		CollationKey[] columnKeys = keys[column];
+		int rowCount = store.size();
+		if(columnKeys == null || columnKeys.length != rowCount){
+			columnKeys = columnKeys == null ? new CollationKey[rowCount] : Arrays.copyOf(columnKeys, rowCount);
+			keys[column] = columnKeys;
+		}
+
+		//only appended and updated rows are missing keys
+		for(int row = 0; row < rowCount; row++){
+			if(columnKeys[row] == null){
+				Object value = model.getValueAt(row, column);
+				columnKeys[row] = collator.getCollationKey(value == null ? "" : value.toString());
+			}
+		}
+		return columnKeys;
+	}
+
+	private void forgetKeys(int column, int firstRow, int endRow) {
+		CollationKey[] columnKeys = keys[column];
+		if(columnKeys != null && firstRow < columnKeys.length){
+			Arrays.fill(columnKeys, firstRow, Math.min(endRow + 1, columnKeys.length), null);
+		}
+	}
+
+	private static CollationKey[] remove(CollationKey[] columnKeys, int firstRow, int endRow) {
+		if(columnKeys == null || firstRow >= columnKeys.length){
+			return columnKeys;
+		}
+		int end = Math.min(endRow + 1, columnKeys.length);
+		CollationKey[] kept = new CollationKey[columnKeys.length - (end - firstRow)];
+		System.arraycopy(columnKeys, 0, kept, 0, firstRow);
+		System.arraycopy(columnKeys, end, kept, firstRow, columnKeys.length - end);
+		return kept;
+	}
+
+	private boolean isShown(int row) {
+		if(store == null || filter.isEmpty()){
+			return true;
+		}
+
+		LoadedOntology source = store.getSource(row);
+		boolean[] entities = matched.get(source);
+		if(entities == null){
+			this.matchLater(source);
+			return false;
+		}
+		return entities[store.getEntityId(row)];
+	}
+}
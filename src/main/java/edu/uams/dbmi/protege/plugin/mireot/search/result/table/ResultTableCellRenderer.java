@@ -1,13 +1,15 @@
 package edu.uams.dbmi.protege.plugin.mireot.search.result.table;
 
 import java.awt.Component;
-import java.util.HashMap;
-import java.util.Map;
 
 import javax.swing.JLabel;
 import javax.swing.JTable;
 import javax.swing.table.TableCellRenderer;
 
+/**
+ * Renders the match type column.  The tooltip of a cell, the contexts the result matched
+ * in, is only read from the {@link ResultTableModel} when the mouse rests on the cell.
+ */
 public class ResultTableCellRenderer extends JLabel implements TableCellRenderer {
 
 	/**
@@ -15,8 +17,9 @@ public class ResultTableCellRenderer extends JLabel implements TableCellRenderer
 	 */
 	private static final long serialVersionUID = 3868063988973472570L;
 	
-	Map<Integer, String> tooltipStrings = new HashMap<Integer, String>();
-	
+	//cell last rendered, the one a tooltip is asked for
+	private JTable table;
+	private int row;
 	
 	public Component getTableCellRendererComponent(JTable table, Object value,
 			boolean isSelected, boolean hasFocus, int rowIndex, int vColIndex) {
@@ -32,18 +35,26 @@ public class ResultTableCellRenderer extends JLabel implements TableCellRenderer
 		if(value != null){
 			// Configure the component with the specified value
 			setText(value.toString());
-
-
-			setToolTipText(this.wrapTooltip(this.tooltipStrings.get(rowIndex)));
 		} else {
 			setText("");
-			setToolTipText(null);
 		}
 
+		this.table = table;
+		this.row = table.convertRowIndexToModel(rowIndex);
+
 		// Since the renderer is a component, return itself
 		return this;
 	}
 	
+	@Override
+	public String getToolTipText() {
+		if(table == null || !(table.getModel() instanceof ResultTableModel)){
+			return null;
+		}
+		String tooltip = ((ResultTableModel) table.getModel()).getToolTip(row);
+		return tooltip == null ? null : this.wrapTooltip(tooltip);
+	}
+	
 	private String wrapTooltip(String tooltip) {
 		StringBuilder wrappedTooltip = new StringBuilder();
 		String[] tooltipTokens = tooltip.split(" ");
@@ -68,8 +79,4 @@ public class ResultTableCellRenderer extends JLabel implements TableCellRenderer
 		return wrappedTooltip.toString();
 	}
 
-	public void setTooltip(int rowIndex, String ttString){
-		this.tooltipStrings.put(rowIndex, ttString);
-	}
-
 }
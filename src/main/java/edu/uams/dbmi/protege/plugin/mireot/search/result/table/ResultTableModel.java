@@ -0,0 +1,180 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.result.table;
+
+import java.util.BitSet;
+import java.util.Map;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.AbstractTableModel;
+
+import edu.uams.dbmi.protege.plugin.mireot.search.AdditionalOntologySearcher;
+import edu.uams.dbmi.protege.plugin.mireot.search.index.IntList;
+import edu.uams.dbmi.protege.plugin.mireot.search.load.LoadedOntology;
+import edu.uams.dbmi.protege.plugin.mireot.search.result.ResultStore;
+import edu.uams.dbmi.protege.plugin.mireot.search.result.SearchResult;
+
+/**
+ * Table model reading its rows straight from a {@link ResultStore}, so showing results
+ * copies nothing: cells are read from the store when the table paints them, and every
+ * appended batch is announced as one range of inserted rows.
+ *
+ * Between searches the model shows a single status message instead.
+ */
+public class ResultTableModel extends AbstractTableModel {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String[] STATUS_COLUMNS = { "Status" };
+
+	private static final int MATCH_TYPE_COLUMN = 3;
+
+	private String[] columnNames = STATUS_COLUMNS;
+
+	private ResultStore results;
+	private String status;
+
+	/**
+	 * Shows a single status message in place of results
+	 *
+	 * @param status
+	 */
+	public void setStatus(String status) {
+		this.status = status;
+		this.results = null;
+		this.columnNames = STATUS_COLUMNS;
+		fireTableStructureChanged();
+	}
+
+	/**
+	 * Shows the rows of results, as they are appended
+	 *
+	 * @param columnNames "Entity Type", "Label", "URI", "Match Type" and, when several ontologies are searched, "Ontology"
+	 * @param results
+	 */
+	public void showResults(String[] columnNames, ResultStore results) {
+		this.status = null;
+		this.results = results;
+		this.columnNames = columnNames;
+		fireTableStructureChanged();
+	}
+
+	/**
+	 * Appends batch to the results shown
+	 *
+	 * @param batch
+	 */
+	public void append(ResultStore batch) {
+		if(results == null || batch.isEmpty()){
+			return;
+		}
+		int first = results.size();
+		results.append(batch);
+		fireTableRowsInserted(first, results.size() - 1);
+	}
+
+	/**
+	 * Narrows the results shown to the matched entries, see {@link ResultStore#retain}.
+	 * Each run of unmatched rows is removed and then announced as one deletion, the last
+	 * run first, so every event describes the rows the model has at that point.  Rows that
+	 * lost some of their matches are then announced as updates of the match type column.
+	 *
+	 * @param matched entries to keep, by source
+	 */
+	public void retain(Map<LoadedOntology, BitSet> matched) {
+		if(results == null){
+			return;
+		}
+
+		IntList removed = results.unmatched(matched);
+		int i = removed.size() - 1;
+		while(i >= 0){
+			int last = removed.get(i);
+			int first = last;
+			while(i > 0 && removed.get(i - 1) == first - 1){
+				first = removed.get(--i);
+			}
+			i--;
+			results.remove(first, last);
+			fireTableRowsDeleted(first, last);
+		}
+
+		IntList changed = results.retain(matched);
+		i = 0;
+		while(i < changed.size()){
+			int first = changed.get(i);
+			int last = first;
+			while(i + 1 < changed.size() && changed.get(i + 1) == last + 1){
+				last = changed.get(++i);
+			}
+			i++;
+			fireTableChanged(new TableModelEvent(this, first, last, MATCH_TYPE_COLUMN));
+		}
+	}
+
+	/**
+	 * Removes every row, keeping the columns
+	 */
+	public void clear() {
+		status = null;
+		results = null;
+		fireTableDataChanged();
+	}
+
+	/**
+	 *
+	 * @return the results shown, or null while a status is shown
+	 */
+	public ResultStore getResults() {
+		return results;
+	}
+
+	/**
+	 *
+	 * @param row
+	 * @return every context the result of row matched in, read when asked for, or null for a status row
+	 */
+	public String getToolTip(int row) {
+		if(results == null || row >= results.size()){
+			return null;
+		}
+		return results.get(row).getMatchContext();
+	}
+
+	@Override
+	public int getRowCount() {
+		if(results != null){
+			return results.size();
+		}
+		return status != null ? 1 : 0;
+	}
+
+	@Override
+	public int getColumnCount() {
+		return columnNames.length;
+	}
+
+	@Override
+	public String getColumnName(int column) {
+		return columnNames[column];
+	}
+
+	@Override
+	public Object getValueAt(int row, int column) {
+		if(results == null){
+			return status;
+		}
+
+		SearchResult result = results.get(row);
+		switch(column){
+		case 0:
+			return result.getType();
+		case 1:
+			return result.getName();
+		case 2:
+			return result.getIRI();
+		case MATCH_TYPE_COLUMN:
+			return result.getMatchType();
+		default:
+			return AdditionalOntologySearcher.getSourceName(result.getSource());
+		}
+	}
+}
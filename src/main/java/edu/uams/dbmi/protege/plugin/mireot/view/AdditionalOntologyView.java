@@ -2,12 +2,19 @@ package edu.uams.dbmi.protege.plugin.mireot.view;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.Cursor;
+import java.awt.datatransfer.DataFlavor;
 import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.AbstractAction;
 import javax.swing.BorderFactory;
@@ -19,30 +26,43 @@ import javax.swing.JComboBox;
 import javax.swing.JComponent;
 import javax.swing.JDialog;
 import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
 import javax.swing.JTable;
 import javax.swing.JTextField;
 import javax.swing.ListSelectionModel;
 import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.ToolTipManager;
 import javax.swing.TransferHandler;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
 
 import org.protege.editor.owl.model.event.OWLModelManagerListener;
 import org.protege.editor.owl.ui.view.AbstractOWLViewComponent;
 import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLEntity;
 import org.semanticweb.owlapi.model.OWLObjectProperty;
-import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyStorageException;
 
 import edu.uams.dbmi.protege.plugin.mireot.search.AdditionalOntologyList;
 import edu.uams.dbmi.protege.plugin.mireot.search.AdditionalOntologySearcher;
-import edu.uams.dbmi.protege.plugin.mireot.search.result.ClassSearchResult;
-import edu.uams.dbmi.protege.plugin.mireot.search.result.ObjectPropertySearchResult;
+import edu.uams.dbmi.protege.plugin.mireot.search.LoadListener;
+import edu.uams.dbmi.protege.plugin.mireot.search.SearchListener;
+import edu.uams.dbmi.protege.plugin.mireot.search.load.LoadMonitor;
+import edu.uams.dbmi.protege.plugin.mireot.search.load.LoadedOntology;
+import edu.uams.dbmi.protege.plugin.mireot.search.result.ResultStore;
 import edu.uams.dbmi.protege.plugin.mireot.search.result.SearchResult;
+import edu.uams.dbmi.protege.plugin.mireot.search.result.table.ResultRowSorter;
+import edu.uams.dbmi.protege.plugin.mireot.search.result.table.ResultTableModel;
 import edu.uams.dbmi.protege.plugin.mireot.search.transferable.OWLClassTransferable;
 import edu.uams.dbmi.protege.plugin.mireot.search.transferable.OWLObjectPropertyTransferable;
 
@@ -56,30 +76,47 @@ public class AdditionalOntologyView extends AbstractOWLViewComponent {
     private static final long serialVersionUID = -4515710047558710080L;
 
     private JTextField searchBox;
+    private JTextField filterBox;
     private JCheckBox showSearchCommentCheckBox;
     private JCheckBox showSearchLabelCheckBox;
     private JCheckBox showSearchDefinitionCheckBox;
+    private JCheckBox showSearchSynonymCheckBox;
 	private JCheckBox showSearchURICheckBox;
     private JCheckBox clsCheckBox;
     private JCheckBox objPropCheckBox;
+    private JCheckBox fuzzyCheckBox;
+    private JCheckBox parallelCheckBox;
+    private JCheckBox lowMemoryCheckBox;
+    private JCheckBox skipLogicCheckBox;
 
     private JButton executeButton;
+    private JButton showMoreButton;
+    private JLabel resultCountLabel;
     private OWLModelManagerListener listener;
     private static AdditionalOntologyList ddla = new AdditionalOntologyList();
     private String query;
-    private ArrayList<SearchResult> resultList;
+    private List<SearchResult> resultList;
     private JTable resultTable;
     private JScrollPane scrollPane;
     private String[] columnNames = { "Entity Type", "Label", "URI", "Match Type" };
+    private String[] federatedColumnNames = { "Entity Type", "Label", "URI", "Match Type", "Ontology" };
     public AdditionalOntologySearcher saoi;
-    private DefaultTableModel tableModel = new DefaultTableModel();
+    private ResultTableModel tableModel = new ResultTableModel();
+    private ResultRowSorter resultSorter = new ResultRowSorter(tableModel);
     private String ontologyURL = null;
     private File ontoFile = null;
 
     private JTextField currentOntologyBox;
 
+    private JLabel loadStatusLabel;
+    private JProgressBar loadProgressBar;
+    private JButton cancelLoadButton;
+
     private JComboBox ontologySelectBox;
 
+    //reads the selected term of a streamed ontology, so dragging it doesn't wait for its document
+    private TermReader termReader;
+
 
 
 
@@ -102,6 +139,8 @@ public class AdditionalOntologyView extends AbstractOWLViewComponent {
 
         //setting up the searcher
         this.saoi = new AdditionalOntologySearcher();
+        this.saoi.setSearchListener(new ResultCountListener());
+        this.saoi.setLoadListener(new LoadStatusListener());
 
         //setting it so that tooltips last longer
         //this will probably affect other tabs
@@ -170,15 +209,42 @@ public class AdditionalOntologyView extends AbstractOWLViewComponent {
         resultTable = new JTable(InitResultData, columnNames);
         resultTable.setFillsViewportHeight(true);
         resultTable.setModel(tableModel);
+        resultTable.setRowSorter(resultSorter);
         resultTable.setRowSelectionAllowed(true);
         resultTable.setColumnSelectionAllowed(false);
         resultTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         resultTable.setTransferHandler(new FromTransferHandler());
+        resultTable.getSelectionModel().addListSelectionListener(new ListSelectionListener() {
+            public void valueChanged(ListSelectionEvent e) {
+                if(!e.getValueIsAdjusting()){
+                    readSelectedTerm();
+                }
+            }
+        });
 
         resultTable.setDragEnabled(true);
         scrollPane = new JScrollPane(resultTable);
         resultsPanel.add(scrollPane);
 
+        //narrows the results shown as the text is typed, matched like a search
+        filterBox = new JTextField();
+        filterBox.getDocument().addDocumentListener(new FilterListener());
+
+        JPanel filterHolder = new JPanel(new BorderLayout(5, 5));
+        filterHolder.add(new JLabel("Filter results:"), BorderLayout.WEST);
+        filterHolder.add(filterBox, BorderLayout.CENTER);
+        resultsPanel.add(filterHolder, BorderLayout.NORTH);
+
+        resultCountLabel = new JLabel(" ");
+        showMoreButton = new JButton("Show more");
+        showMoreButton.setEnabled(false);
+        showMoreButton.addActionListener(new ShowMoreListener());
+
+        JPanel resultCountHolder = new JPanel(new BorderLayout());
+        resultCountHolder.add(resultCountLabel, BorderLayout.CENTER);
+        resultCountHolder.add(showMoreButton, BorderLayout.EAST);
+        resultsPanel.add(resultCountHolder, BorderLayout.SOUTH);
+
         return resultsPanel;
     }
 
@@ -200,6 +266,7 @@ public class AdditionalOntologyView extends AbstractOWLViewComponent {
         JButton loadFromFileButton = new JButton("Load From File");
         JButton loadFromURLButton = new JButton("Load From URL");
         JButton selectFromListButton = new JButton("Select from list");
+        JButton searchLoadedButton = new JButton("Search loaded ontologies");
         
         LoadFromFileListener lffl = new LoadFromFileListener();
         loadFromFileButton.addActionListener(lffl);
@@ -210,6 +277,9 @@ public class AdditionalOntologyView extends AbstractOWLViewComponent {
         SelectFromListListener sfll = new SelectFromListListener();
         selectFromListButton.addActionListener(sfll);
 
+        SearchLoadedListener sll = new SearchLoadedListener();
+        searchLoadedButton.addActionListener(sll);
+
         
         JComponent ontSelectBoxHolder = new JPanel(new BorderLayout());
         
@@ -225,6 +295,37 @@ public class AdditionalOntologyView extends AbstractOWLViewComponent {
         buttonHolder.add(loadFromFileButton, BorderLayout.EAST);
         thirdButtonHolder.add(buttonHolder, BorderLayout.WEST);
         thirdButtonHolder.add(selectFromListButton, BorderLayout.EAST);
+        thirdButtonHolder.add(searchLoadedButton);
+
+        lowMemoryCheckBox = new JCheckBox(
+                new AbstractAction("Low memory") {
+                    /**
+                     *
+                     */
+                    private static final long serialVersionUID = 1L;
+
+                    public void actionPerformed(ActionEvent e) {
+                        saoi.setStreamingLoadFlag(lowMemoryCheckBox.isSelected());
+                    }
+                });
+        lowMemoryCheckBox.setToolTipText("Index RDF/XML, OWL/XML and OBO ontologies without loading them;"
+                + " terms are read from the document when copied");
+        thirdButtonHolder.add(lowMemoryCheckBox);
+
+        skipLogicCheckBox = new JCheckBox(
+                new AbstractAction("Skip logical axioms") {
+                    /**
+                     *
+                     */
+                    private static final long serialVersionUID = 1L;
+
+                    public void actionPerformed(ActionEvent e) {
+                        saoi.setFilteredLoadFlag(skipLogicCheckBox.isSelected());
+                    }
+                });
+        skipLogicCheckBox.setToolTipText("Load only declarations, annotations and named subclass and subproperty"
+                + " axioms of the ontology");
+        thirdButtonHolder.add(skipLogicCheckBox);
         
         ontSelectBoxHolder.add(thirdButtonHolder, BorderLayout.WEST);
         ontSelectPanel.add(ontSelectBoxHolder, BorderLayout.NORTH);
@@ -239,7 +340,21 @@ public class AdditionalOntologyView extends AbstractOWLViewComponent {
                 .createEmptyBorder(3, 3, 3, 3)));
 
 
-        ontSelectPanel.add(this.currentOntologyBox, BorderLayout.SOUTH);
+        ontSelectPanel.add(this.currentOntologyBox, BorderLayout.CENTER);
+
+        //progress of the ontologies being loaded
+        loadStatusLabel = new JLabel(" ");
+        loadProgressBar = new JProgressBar(0, 1000);
+        loadProgressBar.setVisible(false);
+        cancelLoadButton = new JButton("Cancel");
+        cancelLoadButton.setEnabled(false);
+        cancelLoadButton.addActionListener(new CancelLoadListener());
+
+        JPanel loadStatusHolder = new JPanel(new BorderLayout(5, 0));
+        loadStatusHolder.add(loadStatusLabel, BorderLayout.WEST);
+        loadStatusHolder.add(loadProgressBar, BorderLayout.CENTER);
+        loadStatusHolder.add(cancelLoadButton, BorderLayout.EAST);
+        ontSelectPanel.add(loadStatusHolder, BorderLayout.SOUTH);
 
         return ontSelectPanel;
     }
@@ -321,6 +436,25 @@ public class AdditionalOntologyView extends AbstractOWLViewComponent {
         searchByBox.add(showSearchLabelCheckBox);
         searchByBox.add(Box.createHorizontalStrut(1));
 
+        showSearchSynonymCheckBox = new JCheckBox(
+                new AbstractAction("Synonym") {
+                    /**
+                     *
+                     */
+                    private static final long serialVersionUID = 1L;
+
+                    public void actionPerformed(ActionEvent e) {
+                        if(showSearchSynonymCheckBox.isSelected()){
+                            saoi.setSearchBySynonymFlag(true);
+                        } else {
+                            saoi.setSearchBySynonymFlag(false);
+                        }
+                    }
+                });
+
+        searchByBox.add(showSearchSynonymCheckBox);
+        searchByBox.add(Box.createHorizontalStrut(1));
+
         showSearchDefinitionCheckBox = new JCheckBox(
                 new AbstractAction("Definition") {
                     /**
@@ -383,8 +517,54 @@ public class AdditionalOntologyView extends AbstractOWLViewComponent {
         searchByBox.add(showSearchCommentCheckBox);
         searchByBox.add(Box.createHorizontalStrut(1));
 
+        Box matchingBox = new Box(BoxLayout.X_AXIS);
+        matchingBox.setBorder(BorderFactory.createTitledBorder(
+                BorderFactory.createLineBorder(Color.LIGHT_GRAY),
+                "Matching"));
+
+        fuzzyCheckBox = new JCheckBox(
+                new AbstractAction("Fuzzy") {
+                    /**
+                     *
+                     */
+                    private static final long serialVersionUID = 1L;
+
+                    public void actionPerformed(ActionEvent e) {
+                        if(fuzzyCheckBox.isSelected()){
+                            saoi.setSearchFuzzyFlag(true);
+                        } else {
+                            saoi.setSearchFuzzyFlag(false);
+                        }
+                    }
+                });
+        fuzzyCheckBox.setToolTipText("Also find labels that match with a few typos");
+
+        matchingBox.add(fuzzyCheckBox);
+        matchingBox.add(Box.createHorizontalStrut(1));
+
+        parallelCheckBox = new JCheckBox(
+                new AbstractAction("Parallel") {
+                    /**
+                     *
+                     */
+                    private static final long serialVersionUID = 1L;
+
+                    public void actionPerformed(ActionEvent e) {
+                        if(parallelCheckBox.isSelected()){
+                            saoi.setParallelSearchFlag(true);
+                        } else {
+                            saoi.setParallelSearchFlag(false);
+                        }
+                    }
+                });
+        parallelCheckBox.setToolTipText("Load, index and search ontologies on all processors");
+
+        matchingBox.add(parallelCheckBox);
+        matchingBox.add(Box.createHorizontalStrut(1));
+
         optionsPanel.add(searchBox);
         optionsPanel.add(searchByBox);
+        optionsPanel.add(matchingBox);
 
         optionsPanel.setBorder(BorderFactory.createCompoundBorder(BorderFactory
                 .createTitledBorder(
@@ -397,6 +577,8 @@ public class AdditionalOntologyView extends AbstractOWLViewComponent {
 
     protected void disposeOWLView() {
         getOWLModelManager().removeListener(listener);
+        saoi.dispose();
+        resultSorter.dispose();
     }
 
 
@@ -417,8 +599,11 @@ public class AdditionalOntologyView extends AbstractOWLViewComponent {
                 saoi.setFile(ontoFile);
                 
 
+                resultCountLabel.setText(" ");
+                showMoreButton.setEnabled(false);
+
                 try {
-                    saoi.buildResultTable(columnNames, tableModel, resultTable);
+                    saoi.buildResultTable(saoi.isFederated() ? federatedColumnNames : columnNames, tableModel, resultTable);
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
@@ -427,6 +612,114 @@ public class AdditionalOntologyView extends AbstractOWLViewComponent {
         }
     }
     
+    private class ShowMoreListener implements ActionListener {
+
+        public void actionPerformed(ActionEvent e) {
+            //the button is enabled again once the next page has been shown
+            if(saoi.showMoreResults()){
+                showMoreButton.setEnabled(false);
+            }
+        }
+    }
+
+    private class FilterListener implements DocumentListener {
+
+        public void insertUpdate(DocumentEvent e) {
+            resultSorter.setFilter(filterBox.getText(), getSearcher().getEnabledFields());
+        }
+
+        public void removeUpdate(DocumentEvent e) {
+            resultSorter.setFilter(filterBox.getText(), getSearcher().getEnabledFields());
+        }
+
+        public void changedUpdate(DocumentEvent e) {
+        }
+    }
+
+    private class ResultCountListener implements SearchListener {
+
+        public void resultsShown(int shown, int total) {
+            if(total == 0){
+                resultCountLabel.setText(" ");
+            } else if(shown < total){
+                resultCountLabel.setText("Showing " + shown + " of " + total + " matches");
+            } else {
+                resultCountLabel.setText(total + " matches");
+            }
+            showMoreButton.setEnabled(shown < total);
+        }
+    }
+
+    private class LoadStatusListener implements LoadListener {
+
+        //loads in progress, the one that reported last is shown
+        private final List<LoadMonitor> loading = new ArrayList<LoadMonitor>();
+
+        public void loadProgress(LoadMonitor monitor) {
+            if(!loading.contains(monitor)){
+                loading.add(monitor);
+            }
+            show(monitor);
+        }
+
+        public void loadFinished(LoadMonitor monitor) {
+            loading.remove(monitor);
+
+            if(loading.isEmpty()){
+                loadStatusLabel.setText(" ");
+                loadProgressBar.setVisible(false);
+                cancelLoadButton.setEnabled(false);
+            } else {
+                show(loading.get(loading.size() - 1));
+            }
+        }
+
+        private void show(LoadMonitor monitor) {
+            LoadMonitor.Stage stage = monitor.getStage();
+            if(stage == null){
+                return;
+            }
+
+            long done = monitor.getDone();
+            long total = monitor.getTotal();
+
+            StringBuilder status = new StringBuilder();
+            status.append(stage.getDescription()).append(" ").append(AdditionalOntologySearcher.getSourceName(monitor.getSource()));
+
+            if(stage == LoadMonitor.Stage.DOWNLOAD){
+                status.append(": ").append(String.format("%.1f", done / 1048576.0));
+                if(total > 0){
+                    status.append(" of ").append(String.format("%.1f", total / 1048576.0));
+                }
+                status.append(" MB");
+            } else if(stage == LoadMonitor.Stage.IMPORTS){
+                status.append(": ").append(done).append(" loaded");
+            } else if(total > 0){
+                status.append(": ").append(Math.min(done, total) * 100 / total).append("%");
+            }
+
+            if(loading.size() > 1){
+                status.append(" (").append(loading.size() - 1).append(" more loading)");
+            }
+
+            loadStatusLabel.setText(status.toString());
+
+            loadProgressBar.setVisible(true);
+            loadProgressBar.setIndeterminate(total <= 0);
+            if(total > 0){
+                loadProgressBar.setValue((int) (Math.min(done, total) * 1000 / total));
+            }
+            cancelLoadButton.setEnabled(true);
+        }
+    }
+
+    private class CancelLoadListener implements ActionListener {
+
+        public void actionPerformed(ActionEvent e) {
+            saoi.cancelLoading();
+        }
+    }
+
     private class LoadFromFileListener implements ActionListener {
 
 		@Override
@@ -438,8 +731,12 @@ public class AdditionalOntologyView extends AbstractOWLViewComponent {
 			if(returnVal == JFileChooser.APPROVE_OPTION){
 				ontoFile = fc.getSelectedFile();
 				ontologyURL = null;
+				saoi.setFederatedSources(Collections.<String>emptyList());
 				
 				currentOntologyBox.setText(ontoFile.getAbsolutePath());
+
+				//loaded while the query is typed
+				saoi.preload(null, ontoFile);
 			} 
 		}
     	
@@ -460,9 +757,12 @@ public class AdditionalOntologyView extends AbstractOWLViewComponent {
 			if(url != null && !url.equals("")){
 				ontologyURL = url;
 				ontoFile = null;
+				saoi.setFederatedSources(Collections.<String>emptyList());
 				
 		        currentOntologyBox.setText(ontologyURL);
 
+		        //loaded while the query is typed
+		        saoi.preload(ontologyURL, null);
 			}
 			
 		}
@@ -480,9 +780,12 @@ public class AdditionalOntologyView extends AbstractOWLViewComponent {
 				
 		        ontologyURL = ddla.getLink(selected);
 		        ontoFile = null;
+		        saoi.setFederatedSources(Collections.<String>emptyList());
 		        
 		        currentOntologyBox.setText(ontologyURL);
 
+		        //loaded while the query is typed
+		        saoi.preload(ontologyURL, null);
 			}
 			
 		}
@@ -492,6 +795,121 @@ public class AdditionalOntologyView extends AbstractOWLViewComponent {
 
 
 
+    private class SearchLoadedListener implements ActionListener {
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			//ontologies stay loaded after they were searched, the current one is offered too
+			List<String> sources = new ArrayList<String>(saoi.getOntologyRegistry().getSources());
+			Collections.reverse(sources);
+
+			String current = ontologyURL != null ? ontologyURL : (ontoFile != null ? ontoFile.getAbsolutePath() : null);
+			if(current != null && !sources.contains(current)){
+				sources.add(0, current);
+			}
+			for(String source : saoi.getFederatedSources()){
+				if(!sources.contains(source)){
+					sources.add(source);
+				}
+			}
+
+			if(sources.isEmpty()){
+				JOptionPane.showMessageDialog(currentOntologyBox, "Search an ontology first, it stays loaded for searching together with others.");
+				return;
+			}
+
+			JList<String> sourceList = new JList<String>(sources.toArray(new String[sources.size()]));
+			sourceList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+			for(String source : saoi.getFederatedSources()){
+				int i = sources.indexOf(source);
+				sourceList.addSelectionInterval(i, i);
+			}
+
+			int returnVal = JOptionPane.showOptionDialog(currentOntologyBox, new JScrollPane(sourceList), "Choose the ontologies to search together.", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE, null, null, null);
+
+			if(returnVal == JOptionPane.OK_OPTION){
+				List<String> selected = sourceList.getSelectedValuesList();
+
+				saoi.setFederatedSources(selected);
+
+				if(selected.isEmpty()){
+					currentOntologyBox.setText(current == null ? "" : current);
+				} else {
+					StringBuilder names = new StringBuilder();
+					for(String source : selected){
+						if(names.length() > 0){
+							names.append(", ");
+						}
+						names.append(AdditionalOntologySearcher.getSourceName(source));
+					}
+					currentOntologyBox.setText(names.toString());
+				}
+			}
+		}
+
+    }
+
+    /**
+     * Starts reading the term of the selected row off the event dispatch thread, if it was
+     * found in a streamed ontology and isn't read yet
+     *
+     * @return the reader of the selected term, or null if the row's ontology is loaded
+     */
+    private TermReader readSelectedTerm() {
+        int row = resultTable.getSelectedRow();
+        ResultStore results = tableModel.getResults();
+        if(row < 0 || results == null){
+            return null;
+        }
+        row = resultTable.convertRowIndexToModel(row);
+        if(row >= results.size() || !results.getSource(row).isStreamed()){
+            return null;
+        }
+
+        LoadedOntology source = results.getSource(row);
+        OWLEntity entity = results.getEntity(row);
+        if(termReader == null || termReader.source != source || !termReader.entity.equals(entity)){
+            if(termReader != null){
+                termReader.cancel(false);
+            }
+            termReader = new TermReader(source, entity);
+            termReader.execute();
+        }
+        return termReader;
+    }
+
+    private class TermReader extends SwingWorker<OWLOntology, Void> {
+
+        private final LoadedOntology source;
+        private final OWLEntity entity;
+
+        TermReader(LoadedOntology source, OWLEntity entity) {
+            this.source = source;
+            this.entity = entity;
+        }
+
+        @Override
+        protected OWLOntology doInBackground() throws Exception {
+            return getSearcher().getEntityOntology(source, entity);
+        }
+
+        @Override
+        protected void done() {
+            resultTable.setCursor(Cursor.getDefaultCursor());
+            if(isCancelled()){
+                return;
+            }
+            try {
+                get();
+            } catch (InterruptedException e) {
+                //only read once done
+            } catch (ExecutionException e) {
+                JOptionPane.showMessageDialog(null, "Could not read the term from its ontology: " + e.getCause().getMessage());
+                e.getCause().printStackTrace();
+            }
+        }
+    }
+
     class FromTransferHandler extends TransferHandler {
         /**
          *
@@ -506,21 +924,75 @@ public class AdditionalOntologyView extends AbstractOWLViewComponent {
 
         public Transferable createTransferable(JComponent comp) {
             index = resultTable.getSelectedRow();
+            if(index < 0){
+                return null;
+            }
+            //the table may be sorted or filtered, the results are in search order
+            index = resultTable.convertRowIndexToModel(index);
             resultList = getSearcher().getResults();
             SearchResult transferData = resultList.get(index);
 
             String ontologyLabel = (String) ontologySelectBox.getSelectedItem();
             String ontologyURL = ddla.getLink(ontologyLabel);
 
-            if(transferData.getType().equals("Class")){
-                ClassSearchResult classTransferData = (ClassSearchResult) transferData;
+            //results of a search over several ontologies each come from their own
+            if(getSearcher().isFederated() && transferData.getSource() != null){
+                ontologyURL = transferData.getSource();
+            }
+
+            final String type = transferData.getType();
+            final OWLEntity entity = transferData.getOWLEntity();
+            final String url = ontologyURL;
+
+            //a streamed ontology isn't loaded, the term is read back from its document once
+            //selected; a drag started before it is read waits for it when dropped
+            final TermReader reader = readSelectedTerm();
+            if(reader == null){
+                return newTransferable(type, entity, transferData.getOntology(), url);
+            }
+
+            final Transferable flavors = newTransferable(type, entity, null, url);
+            if(flavors == null){
+                return null;
+            }
+            if(!reader.isDone()){
+                //until the reader is done
+                comp.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+            }
+
+            return new Transferable() {
+
+                public DataFlavor[] getTransferDataFlavors() {
+                    return flavors.getTransferDataFlavors();
+                }
+
+                public boolean isDataFlavorSupported(DataFlavor flavor) {
+                    return flavors.isDataFlavorSupported(flavor);
+                }
+
+                public Object getTransferData(DataFlavor flavor) throws UnsupportedFlavorException, IOException {
+                    try {
+                        return newTransferable(type, entity, reader.get(), url).getTransferData(flavor);
+                    } catch (InterruptedException e) {
+                        throw new IOException("Interrupted while reading the term", e);
+                    } catch (ExecutionException e) {
+                        //the reader tells why
+                        throw new IOException("Could not read the term from its ontology", e.getCause());
+                    } catch (CancellationException e) {
+                        throw new IOException("Another term was selected before the term was read", e);
+                    }
+                }
+            };
+        }
+
+        private Transferable newTransferable(String type, OWLEntity entity, OWLOntology sourceOntology, String url) {
+            if(type.equals("Class")){
 
-                return new OWLClassTransferable((OWLClass) classTransferData.getOWLEntity(), classTransferData.getOntology(), ontologyURL);
+                return new OWLClassTransferable((OWLClass) entity, sourceOntology, url);
 
-            } else if(transferData.getType().equals("Object Property")){
-                ObjectPropertySearchResult objectPropertyTransferData = (ObjectPropertySearchResult) transferData;
+            } else if(type.equals("Object Property")){
 
-                return new OWLObjectPropertyTransferable((OWLObjectProperty) objectPropertyTransferData.getOWLEntity(), objectPropertyTransferData.getOntology(), ontologyURL);
+                return new OWLObjectPropertyTransferable((OWLObjectProperty) entity, sourceOntology, url);
             }
 
             return null;
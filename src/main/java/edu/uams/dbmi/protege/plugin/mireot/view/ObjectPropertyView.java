@@ -158,6 +158,12 @@ implements DropTargetListener{
 				e.printStackTrace();
 			}
 
+			//the term of a streamed ontology couldn't be read
+			if(msg == null){
+				dtde.rejectDrop();
+				return;
+			}
+
 			if(msg.getOntology() != getOWLModelManager().getActiveOntology()){
 
 				handleRemoteDrop(msg, origin);
@@ -0,0 +1,105 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.index;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BKTreeTest {
+
+	@Test
+	public void computesEditDistance() {
+		assertEquals(0, BKTree.editDistance("alanine", "alanine"));
+		assertEquals(1, BKTree.editDistance("alanine", "alanime"));
+		assertEquals(1, BKTree.editDistance("alanine", "alanin"));
+		assertEquals(1, BKTree.editDistance("alanine", "allanine"));
+		assertEquals(3, BKTree.editDistance("kitten", "sitting"));
+		assertEquals(3, BKTree.editDistance("", "abc"));
+		assertEquals(BKTree.editDistance("sitting", "kitten"), BKTree.editDistance("kitten", "sitting"));
+	}
+
+	@Test
+	public void findsTermsWithinMaxEdits() {
+		BKTree tree = new BKTree();
+		tree.add("alanine", 0);
+		tree.add("glycine", 1);
+		tree.add("alanines", 2);
+		tree.add("valine", 3);
+
+		assertEquals(Arrays.asList(0), sorted(tree.search("alanine", 0)));
+		assertEquals(Arrays.asList(0), sorted(tree.search("alanime", 1)));
+		assertEquals(Arrays.asList(0, 2), sorted(tree.search("alanime", 2)));
+		assertEquals(Arrays.asList(0, 2), sorted(tree.search("alanines", 1)));
+		assertEquals(Arrays.<Integer>asList(), sorted(tree.search("tryptophan", 2)));
+	}
+
+	@Test
+	public void keepsEveryIdOfATerm() {
+		BKTree tree = new BKTree();
+		tree.add("alanine", 4);
+		tree.add("glycine", 5);
+		tree.add("alanine", 7);
+
+		assertEquals(2, tree.size());
+		assertEquals(Arrays.asList(4, 7), sorted(tree.search("alanine", 0)));
+	}
+
+	@Test
+	public void searchesAnEmptyTree() {
+		assertEquals(0, new BKTree().search("alanine", 2).size());
+	}
+
+	@Test
+	public void findsWhatAFullScanFinds() {
+		Random random = new Random(42);
+		String[] terms = new String[1000];
+		BKTree tree = new BKTree();
+		for(int id = 0; id < terms.length; id++){
+			terms[id] = randomTerm(random);
+			tree.add(terms[id], id);
+		}
+
+		for(int i = 0; i < 50; i++){
+			String query = randomTerm(random);
+			for(int maxEdits = 0; maxEdits <= 2; maxEdits++){
+				IntList expected = new IntList();
+				for(int id = 0; id < terms.length; id++){
+					if(BKTree.editDistance(query, terms[id]) <= maxEdits){
+						expected.add(id);
+					}
+				}
+				assertEquals(query, sorted(expected), sorted(tree.search(query, maxEdits)));
+			}
+		}
+	}
+
+	@Test
+	public void toleratesMoreTyposInLongerQueries() {
+		assertEquals(0, BKTree.defaultMaxEdits("ala"));
+		assertEquals(0, BKTree.defaultMaxEdits("alan"));
+		assertEquals(1, BKTree.defaultMaxEdits("alani"));
+		assertEquals(1, BKTree.defaultMaxEdits("alanines"));
+		assertEquals(2, BKTree.defaultMaxEdits("beta alanine"));
+	}
+
+	private static String randomTerm(Random random) {
+		char[] term = new char[3 + random.nextInt(4)];
+		for(int i = 0; i < term.length; i++){
+			term[i] = (char) ('a' + random.nextInt(4));
+		}
+		return new String(term);
+	}
+
+	private static List<Integer> sorted(IntList ids) {
+		int[] values = ids.toArray();
+		Arrays.sort(values);
+		Integer[] boxed = new Integer[values.length];
+		for(int i = 0; i < values.length; i++){
+			boxed[i] = values[i];
+		}
+		return Arrays.asList(boxed);
+	}
+}
@@ -0,0 +1,95 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class IdentifierIndexTest {
+
+	private IdentifierIndex index;
+
+	@Before
+	public void setUp() {
+		index = new IdentifierIndex();
+		index.add(0, "http://purl.obolibrary.org/obo/GO_0008150");
+		index.add(1, "http://purl.obolibrary.org/obo/CHEBI_0008150");
+		index.add(2, "http://www.ebi.ac.uk/efo/EFO_0000001");
+		index.add(3, "http://example.org/onto#Heart");
+	}
+
+	@Test
+	public void findsFullIRIs() {
+		assertArrayEquals(new int[] { 0 }, index.lookup("http://purl.obolibrary.org/obo/GO_0008150"));
+		assertArrayEquals(new int[] { 0 }, index.lookup("<http://purl.obolibrary.org/obo/GO_0008150>"));
+		assertArrayEquals(new int[] { 0 }, index.lookup("  HTTP://PURL.OBOLIBRARY.ORG/OBO/GO_0008150 "));
+	}
+
+	@Test
+	public void ignoresTheScheme() {
+		assertArrayEquals(new int[] { 0 }, index.lookup("https://purl.obolibrary.org/obo/GO_0008150"));
+	}
+
+	@Test
+	public void findsOBOIdentifiers() {
+		assertArrayEquals(new int[] { 0 }, index.lookup("GO_0008150"));
+		assertArrayEquals(new int[] { 0 }, index.lookup("GO:0008150"));
+		assertArrayEquals(new int[] { 0 }, index.lookup("go:0008150"));
+		assertArrayEquals(new int[] { 0 }, index.lookup("obo:GO_0008150"));
+		assertArrayEquals(new int[] { 2 }, index.lookup("EFO:0000001"));
+	}
+
+	@Test
+	public void sharesBareNumbersBetweenOntologies() {
+		assertArrayEquals(new int[] { 0, 1 }, index.lookup("0008150"));
+	}
+
+	@Test
+	public void findsFragmentLocalNames() {
+		assertArrayEquals(new int[] { 3 }, index.lookup("heart"));
+		assertArrayEquals(new int[] { 3 }, index.lookup("http://example.org/onto#Heart"));
+	}
+
+	@Test
+	public void findsNothingForPartialIdentifiers() {
+		assertEquals(0, index.lookup("GO:000815").length);
+		assertEquals(0, index.lookup("GO").length);
+		assertEquals(0, index.lookup("").length);
+	}
+
+	@Test
+	public void storesAnIdOnceUnderEachKey() {
+		index.add(4, "http://example.org/a/X_1");
+		index.add(4, "http://example.org/b/X_1");
+
+		assertArrayEquals(new int[] { 4 }, index.lookup("X:1"));
+	}
+
+	@Test
+	public void derivesKeysFromIRI() {
+		assertEquals(Arrays.asList("purl.obolibrary.org/obo/go_0008150", "go_0008150", "go:0008150", "0008150"),
+				IdentifierIndex.keys("http://purl.obolibrary.org/obo/GO_0008150"));
+		assertEquals(Arrays.asList("example.org/onto#heart", "heart"), IdentifierIndex.keys("http://example.org/onto#Heart"));
+	}
+
+	@Test
+	public void readsBackWhatItWrote() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		index.write(out);
+		out.close();
+
+		IdentifierIndex read = IdentifierIndex.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+		assertEquals(index.size(), read.size());
+		assertArrayEquals(new int[] { 0, 1 }, read.lookup("0008150"));
+		assertArrayEquals(new int[] { 2 }, read.lookup("EFO:0000001"));
+	}
+}
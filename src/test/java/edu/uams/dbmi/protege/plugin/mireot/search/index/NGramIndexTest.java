@@ -0,0 +1,103 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import org.junit.Test;
+
+public class NGramIndexTest {
+
+	@Test
+	public void findsKeysSharingEveryTrigram() {
+		NGramIndex index = new NGramIndex();
+		index.add(0, "beta alanine");
+		index.add(1, "alanine");
+		index.add(2, "glycine");
+		index.add(3, "line");
+		index.trim();
+
+		assertArrayEquals(new int[] { 0, 1 }, index.candidates("alanine"));
+		assertArrayEquals(new int[] { 0, 1, 2, 3 }, index.candidates("ine"));
+		assertArrayEquals(new int[] { 2 }, index.candidates("glyc"));
+	}
+
+	@Test
+	public void returnsCandidatesThatStillNeedChecking() {
+		NGramIndex index = new NGramIndex();
+		//has both trigrams of "abcd" but not "abcd" itself
+		index.add(0, "abc bcd");
+		index.trim();
+
+		assertArrayEquals(new int[] { 0 }, index.candidates("abcd"));
+	}
+
+	@Test
+	public void returnsNothingForUnknownTrigram() {
+		NGramIndex index = new NGramIndex();
+		index.add(0, "alanine");
+		index.trim();
+
+		assertEquals(0, index.candidates("alx").length);
+		assertEquals(0, index.candidates("alanix").length);
+	}
+
+	@Test
+	public void leavesShortQueriesToTheCaller() {
+		NGramIndex index = new NGramIndex();
+		index.add(0, "alanine");
+		index.trim();
+
+		assertNull(index.candidates("al"));
+		assertNull(index.candidates(""));
+	}
+
+	@Test
+	public void storesRepeatedTrigramOnce() {
+		NGramIndex index = new NGramIndex();
+		index.add(0, "aaaaaa");
+		index.add(1, "aaa");
+		index.trim();
+
+		assertEquals(1, index.getGramCount());
+		assertArrayEquals(new int[] { 0, 1 }, index.candidates("aaaa"));
+	}
+
+	@Test
+	public void growsBeyondExpectedSize() {
+		NGramIndex index = new NGramIndex(1);
+		for(int id = 0; id < 2000; id++){
+			index.add(id, "term" + id);
+		}
+		index.trim();
+
+		assertArrayEquals(new int[] { 1234 }, index.candidates("term1234"));
+		assertEquals(2000, index.candidates("term").length);
+	}
+
+	@Test
+	public void readsBackWhatItWrote() throws Exception {
+		NGramIndex index = new NGramIndex();
+		index.add(0, "beta alanine");
+		index.add(1, "alanine");
+		index.add(2, "glycine");
+		index.trim();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		index.write(out);
+		out.close();
+
+		NGramIndex read = NGramIndex.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+		assertEquals(index.getGramCount(), read.getGramCount());
+		assertArrayEquals(new int[] { 0, 1 }, read.candidates("alanine"));
+		assertArrayEquals(new int[] { 2 }, read.candidates("glycine"));
+		assertArrayEquals(new int[] { 0, 1, 2 }, read.candidates("ine"));
+	}
+}
@@ -0,0 +1,176 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.semanticweb.owlapi.model.EntityType;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+public class ResultRankerTest {
+
+	private static final Set<EntityType<?>> TYPES = new HashSet<EntityType<?>>(
+			Arrays.<EntityType<?>>asList(EntityType.CLASS, EntityType.OBJECT_PROPERTY));
+	private static final IRI RELATED_SYNONYM = IRI.create("http://www.geneontology.org/formats/oboInOwl#hasRelatedSynonym");
+
+	private OWLOntology ontology;
+	private SearchIndex index;
+	private ResultRanker ranker;
+
+	@Before
+	public void setUp() throws Exception {
+		ontology = SearchIndexTest.newOntology();
+		label("DEFINITION", "serine");
+		SearchIndexTest.annotate(ontology, "DEFINITION", SearchIndexTest.DEFINITION, "An alanine derivative.", "");
+		label("FUZZY", "alanime");
+		label("RELATED_SYNONYM", "threonine");
+		SearchIndexTest.annotate(ontology, "RELATED_SYNONYM", RELATED_SYNONYM, "alanine", "");
+		label("EXACT_SYNONYM", "proline");
+		SearchIndexTest.annotate(ontology, "EXACT_SYNONYM", SearchIndexTest.EXACT_SYNONYM, "alanine", "");
+		label("SUBSTRING", "phenylalanine");
+		label("WORD", "beta-alanine");
+		label("LONGER_PREFIX", "alanine transporter");
+		label("PREFIX", "alanine transport");
+		label("EXACT", "alanine");
+		build();
+	}
+
+	@Test
+	public void ranksByWhereAndInWhichFieldTheQueryOccurs() {
+		assertEquals(Arrays.asList("EXACT", "PREFIX", "LONGER_PREFIX", "WORD", "SUBSTRING", "EXACT_SYNONYM",
+				"RELATED_SYNONYM", "FUZZY", "DEFINITION"), rank("alanine", 100));
+	}
+
+	@Test
+	public void ranksIdentifiersRightBelowExactLabels() {
+		int identifier = search(SearchIndexTest.OBO + "EXACT", EnumSet.of(SearchField.URI))[0];
+		int exact = entry("EXACT", SearchField.LABEL);
+		int prefix = entry("PREFIX", SearchField.LABEL);
+
+		assertTrue(ranker.score(exact, "alanine") > ranker.score(identifier, "alanine"));
+		assertTrue(ranker.score(identifier, "alanine") > ranker.score(prefix, "alanine"));
+	}
+
+	@Test
+	public void keepsOnlyTheBest() {
+		assertEquals(Arrays.asList("EXACT", "PREFIX", "LONGER_PREFIX"), rank("alanine", 3));
+		assertEquals(Arrays.<String>asList(), rank("alanine", 0));
+	}
+
+	@Test
+	public void countsAnEntityOnceWithItsBestEntry() throws Exception {
+		ontology = SearchIndexTest.newOntology();
+		label("SYNONYM", "proline");
+		SearchIndexTest.annotate(ontology, "SYNONYM", SearchIndexTest.EXACT_SYNONYM, "alanine", "");
+		label("EVERYWHERE", "alanine");
+		SearchIndexTest.annotate(ontology, "EVERYWHERE", SearchIndexTest.EXACT_SYNONYM, "L-alanine", "");
+		SearchIndexTest.annotate(ontology, "EVERYWHERE", SearchIndexTest.DEFINITION, "The alanine amino acid.", "");
+		build();
+
+		int[] entries = search("alanine", EnumSet.allOf(SearchField.class));
+		assertEquals(4, entries.length);
+		assertEquals(2, ranker.countEntities(entries));
+		//ranked by its exact label, not by its worse entries
+		assertEquals(Arrays.asList("EVERYWHERE", "SYNONYM"), rank("alanine", 10));
+		assertEquals(Arrays.asList("EVERYWHERE"), rank("alanine", 1));
+	}
+
+	@Test
+	public void breaksTiesByIndexOrder() throws Exception {
+		ontology = SearchIndexTest.newOntology();
+		label("FIRST", "glycine");
+		label("SECOND", "glycine");
+		label("THIRD", "glycine");
+		build();
+
+		int[] entries = search("glycine", EnumSet.allOf(SearchField.class));
+		int[] all = ranker.rank(entries, "glycine", 10, new SearchCancellation());
+		assertEquals(3, all.length);
+		assertTrue(all[0] < all[1] && all[1] < all[2]);
+
+		int[] best = ranker.rank(entries, "glycine", 2, new SearchCancellation());
+		assertEquals(all[0], best[0]);
+		assertEquals(all[1], best[1]);
+	}
+
+	@Test
+	public void keepsTheBestOfManyMatches() throws Exception {
+		ontology = SearchIndexTest.newOntology();
+		//shorter labels rank first, so G0 is best and G499 worst, listed in a scrambled order
+		for(int i = 0; i < 500; i++){
+			int n = (i * 7919) % 500;
+			label("G" + n, "glycine" + new String(new char[n]).replace('\0', 'x'));
+		}
+		build();
+
+		List<String> all = rank("glycine", Integer.MAX_VALUE);
+		assertEquals(500, all.size());
+		for(int i = 0; i < 500; i++){
+			assertEquals("G" + i, all.get(i));
+		}
+		assertEquals(all.subList(0, 20), rank("glycine", 20));
+	}
+
+	@Test(expected = CancellationException.class)
+	public void stopsWhenCancelled() {
+		SearchCancellation cancellation = new SearchCancellation();
+		cancellation.cancel();
+		ranker.rank(search("alanine", EnumSet.allOf(SearchField.class)), "alanine", 10, cancellation);
+	}
+
+	private void label(String name, String label) {
+		SearchIndexTest.declare(ontology, name, EntityType.CLASS);
+		SearchIndexTest.annotate(ontology, name, SearchIndexTest.LABEL, label, "en");
+	}
+
+	private void build() {
+		index = SearchIndex.build(ontology, Collections.<OWLOntology>emptySet(), SearchIndexTest.LANGUAGES, false);
+		ranker = new ResultRanker(index);
+	}
+
+	private int[] search(String query, Set<SearchField> fields) {
+		return index.search(query, fields, TYPES, 1, new SearchCancellation());
+	}
+
+	/**
+	 *
+	 * @return short forms of the ranked entities, best first
+	 */
+	private List<String> rank(String query, int limit) {
+		int[] entries = search(query, EnumSet.allOf(SearchField.class));
+		List<String> names = new ArrayList<String>();
+		for(int entity : ranker.rank(entries, query.toLowerCase(), limit, new SearchCancellation())){
+			names.add(getShortForm(entity));
+		}
+		return names;
+	}
+
+	private String getShortForm(int entity) {
+		for(int entry = 0; entry < index.getEntryCount(); entry++){
+			if(index.getEntityId(entry) == entity){
+				return index.getEntity(entry).getIRI().getShortForm();
+			}
+		}
+		throw new IllegalArgumentException("no entity " + entity);
+	}
+
+	private int entry(String name, SearchField field) {
+		for(int entry = 0; entry < index.getEntryCount(); entry++){
+			if(index.getField(entry) == field && index.getEntity(entry).getIRI().getShortForm().equals(name)){
+				return entry;
+			}
+		}
+		throw new IllegalArgumentException("no " + field + " entry for " + name);
+	}
+}
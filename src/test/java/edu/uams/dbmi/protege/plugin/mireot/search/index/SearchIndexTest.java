@@ -0,0 +1,267 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.EntityType;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+public class SearchIndexTest {
+
+	static final String OBO = "http://purl.obolibrary.org/obo/";
+	static final IRI LABEL = OWLRDFVocabulary.RDFS_LABEL.getIRI();
+	static final IRI DEFINITION = IRI.create(OBO + "IAO_0000115");
+	static final IRI EXACT_SYNONYM = IRI.create("http://www.geneontology.org/formats/oboInOwl#hasExactSynonym");
+	static final List<String> LANGUAGES = Arrays.asList("en", "");
+
+	private static final Set<EntityType<?>> CLASSES = Collections.<EntityType<?>>singleton(EntityType.CLASS);
+	private static final Set<EntityType<?>> ALL_TYPES = new HashSet<EntityType<?>>(
+			Arrays.<EntityType<?>>asList(EntityType.CLASS, EntityType.OBJECT_PROPERTY));
+	private static final Set<SearchField> ALL_FIELDS = EnumSet.allOf(SearchField.class);
+
+	private OWLOntology ontology;
+	private SearchIndex index;
+
+	@Before
+	public void setUp() throws Exception {
+		ontology = ontology();
+		index = SearchIndex.build(ontology, Collections.<OWLOntology>emptySet(), LANGUAGES, false);
+	}
+
+	/**
+	 * Classes CHEBI_1 "beta-alanine", CHEBI_2 "alanine", CHEBI_3 "glycine" and the
+	 * object property RO_1 "part of", with a definition
+	 */
+	static OWLOntology ontology() throws OWLOntologyCreationException {
+		OWLOntology ontology = newOntology();
+
+		declare(ontology, "CHEBI_1", EntityType.CLASS);
+		annotate(ontology, "CHEBI_1", LABEL, "beta-alanine", "en");
+
+		declare(ontology, "CHEBI_2", EntityType.CLASS);
+		annotate(ontology, "CHEBI_2", LABEL, "alanine", "en");
+		annotate(ontology, "CHEBI_2", DEFINITION, "An amino acid found in proteins.", "en");
+
+		declare(ontology, "CHEBI_3", EntityType.CLASS);
+		annotate(ontology, "CHEBI_3", LABEL, "glycine", "en");
+
+		declare(ontology, "RO_1", EntityType.OBJECT_PROPERTY);
+		annotate(ontology, "RO_1", LABEL, "part of", "en");
+
+		//neither a class nor an object property, so not indexed
+		declare(ontology, "IAO_1", EntityType.ANNOTATION_PROPERTY);
+		annotate(ontology, "IAO_1", LABEL, "alanine annotation", "en");
+
+		return ontology;
+	}
+
+	static OWLOntology newOntology() throws OWLOntologyCreationException {
+		return OWLManager.createOWLOntologyManager().createOntology();
+	}
+
+	static void declare(OWLOntology ontology, String name, EntityType<?> type) {
+		OWLOntologyManager manager = ontology.getOWLOntologyManager();
+		OWLDataFactory factory = manager.getOWLDataFactory();
+		manager.addAxiom(ontology, factory.getOWLDeclarationAxiom(factory.getOWLEntity(type, IRI.create(OBO + name))));
+	}
+
+	/**
+	 *
+	 * @param language "" for a literal without a language
+	 */
+	static void annotate(OWLOntology ontology, String name, IRI property, String value, String language) {
+		OWLOntologyManager manager = ontology.getOWLOntologyManager();
+		OWLDataFactory factory = manager.getOWLDataFactory();
+		manager.addAxiom(ontology, factory.getOWLAnnotationAssertionAxiom(factory.getOWLAnnotationProperty(property),
+				IRI.create(OBO + name), factory.getOWLLiteral(value, language)));
+	}
+
+	@Test
+	public void findsLabelsContainingTheQuery() {
+		assertEquals(names("CHEBI_1", "CHEBI_2"), entities(search("alanine", EnumSet.of(SearchField.LABEL))));
+	}
+
+	@Test
+	public void onlySearchesRequestedFields() {
+		assertEquals(0, search("amino acid", EnumSet.of(SearchField.LABEL)).length);
+
+		int[] found = search("amino acid", EnumSet.of(SearchField.DEFINITION));
+		assertEquals(1, found.length);
+		assertEquals(SearchField.DEFINITION, index.getField(found[0]));
+		assertEquals("An amino acid found in proteins.", index.getText(found[0]));
+	}
+
+	@Test
+	public void matchesEveryRequestedFieldOfAnEntity() {
+		annotate(ontology, "CHEBI_3", DEFINITION, "The simplest amino acid.", "en");
+		annotate(ontology, "CHEBI_3", SearchField.COMMENT.getPropertyIRI(), "An amino acid and a neurotransmitter.", "");
+		index = SearchIndex.build(ontology, Collections.<OWLOntology>emptySet(), LANGUAGES, false);
+
+		int[] found = search("amino acid", ALL_FIELDS);
+		assertEquals(3, found.length);
+		assertEquals(names("CHEBI_2", "CHEBI_3"), entities(found));
+	}
+
+	@Test
+	public void onlySearchesRequestedTypes() {
+		assertEquals(names("RO_1"), entities(search("part", ALL_FIELDS)));
+		assertEquals(0, index.search("part", ALL_FIELDS, CLASSES, 0, new SearchCancellation()).length);
+		assertEquals(0, search("annotation", ALL_FIELDS).length);
+		assertEquals(4, index.getEntityCount());
+	}
+
+	@Test
+	public void checksEveryEntryForShortQueries() {
+		assertEquals(names("CHEBI_1", "CHEBI_2"), entities(search("al", EnumSet.of(SearchField.LABEL))));
+	}
+
+	@Test
+	public void findsIdentifiersWhole() {
+		int[] found = search("CHEBI:2", ALL_FIELDS);
+		assertEquals(1, found.length);
+		assertEquals(SearchField.URI, index.getField(found[0]));
+		assertEquals("CHEBI_2", shortForm(found[0]));
+
+		assertEquals(1, search(OBO + "CHEBI_3", EnumSet.of(SearchField.URI)).length);
+		assertEquals(0, search("CHEBI:", EnumSet.of(SearchField.URI)).length);
+	}
+
+	@Test
+	public void findsLabelsWithTyposOnlyWhenAsked() {
+		assertEquals(0, search("alanime", EnumSet.of(SearchField.LABEL)).length);
+
+		int[] found = index.search("alanime", EnumSet.of(SearchField.LABEL), ALL_TYPES, 1, new SearchCancellation());
+		//the whole label of CHEBI_2 and the word "alanine" of CHEBI_1
+		assertEquals(names("CHEBI_1", "CHEBI_2"), entities(found));
+	}
+
+	@Test
+	public void refinesToWhatASearchWouldFind() {
+		Set<SearchField> fields = EnumSet.of(SearchField.LABEL, SearchField.EXACT_SYNONYM, SearchField.DEFINITION);
+		int[] previous = search("al", fields);
+
+		for(String query : Arrays.asList("ala", "alanine", "beta alanine", "alx")){
+			int[] refined = index.refine(previous, query, fields, ALL_TYPES, new SearchCancellation());
+			assertArrayEquals(query, search(query, fields), refined);
+		}
+	}
+
+	@Test
+	public void refinesIdentifiersByLookingThemUpAgain() {
+		int[] previous = search("chebi", ALL_FIELDS);
+		int[] refined = index.refine(previous, "CHEBI:1", ALL_FIELDS, ALL_TYPES, new SearchCancellation());
+
+		assertArrayEquals(search("CHEBI:1", ALL_FIELDS), refined);
+	}
+
+	@Test
+	public void labelsEntriesInThePreferredLanguage() throws Exception {
+		annotate(ontology, "CHEBI_3", LABEL, "Glycin", "de");
+		annotate(ontology, "CHEBI_3", LABEL, "glycine zwitterion", "");
+		declare(ontology, "CHEBI_4", EntityType.CLASS);
+		annotate(ontology, "CHEBI_4", DEFINITION, "Unlabelled glycine.", "en");
+
+		index = SearchIndex.build(ontology, Collections.<OWLOntology>emptySet(), Arrays.asList("de", "en"), false);
+		int[] found = search("glycin", ALL_FIELDS);
+		List<String> labels = new ArrayList<String>();
+		for(int entry : found){
+			labels.add(index.getLabel(entry));
+		}
+		//CHEBI_4 falls back to its short form
+		assertEquals(new HashSet<String>(Arrays.asList("Glycin", "CHEBI_4")), new HashSet<String>(labels));
+	}
+
+	@Test
+	public void recordsTheOntologyOfEachEntry() throws Exception {
+		OWLOntology imported = newOntology();
+		declare(imported, "CHEBI_4", EntityType.CLASS);
+		annotate(imported, "CHEBI_4", LABEL, "serine", "en");
+		index = SearchIndex.build(ontology, Collections.singleton(imported), LANGUAGES, false);
+
+		int[] found = search("serine", EnumSet.of(SearchField.LABEL));
+		assertEquals(1, found.length);
+		assertSame(imported, index.getSource(found[0]));
+		assertSame(ontology, index.getSource(search("glycine", EnumSet.of(SearchField.LABEL))[0]));
+	}
+
+	@Test
+	public void readsBackWhatItWrote() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		index.write(out);
+		out.close();
+
+		SearchIndex read = SearchIndex.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())),
+				Collections.singletonList(ontology), OWLManager.getOWLDataFactory());
+
+		assertEquals(index.getEntryCount(), read.getEntryCount());
+		assertEquals(index.getEntityCount(), read.getEntityCount());
+		for(String query : Arrays.asList("alanine", "al", "CHEBI:2", "amino acid", "part")){
+			int[] expected = search(query, ALL_FIELDS);
+			assertArrayEquals(query, expected, read.search(query, ALL_FIELDS, ALL_TYPES, 0, new SearchCancellation()));
+			for(int entry : expected){
+				assertEquals(index.getEntity(entry), read.getEntity(entry));
+				assertEquals(index.getText(entry), read.getText(entry));
+				assertEquals(index.getKey(entry), read.getKey(entry));
+				assertEquals(index.getLabel(entry), read.getLabel(entry));
+				assertSame(index.getSource(entry), read.getSource(entry));
+			}
+		}
+	}
+
+	@Test
+	public void matchesTheSameInParallel() {
+		index = SearchIndex.build(ontology, Collections.<OWLOntology>emptySet(), LANGUAGES, true);
+		assertTrue(index.isParallel());
+		assertEquals(Arrays.asList("CHEBI_1", "CHEBI_2"), entities(search("alanine", EnumSet.of(SearchField.LABEL))));
+	}
+
+	private int[] search(String query, Set<SearchField> fields) {
+		return index.search(query, fields, ALL_TYPES, 0, new SearchCancellation());
+	}
+
+	/**
+	 *
+	 * @return short forms of the entities of entries, each once, sorted
+	 */
+	private List<String> entities(int[] entries) {
+		Set<String> names = new TreeSet<String>();
+		for(int entry : entries){
+			names.add(shortForm(entry));
+		}
+		return new ArrayList<String>(names);
+	}
+
+	private static List<String> names(String... names) {
+		List<String> list = new ArrayList<String>();
+		Collections.addAll(list, names);
+		return list;
+	}
+
+	private String shortForm(int entry) {
+		return index.getEntity(entry).getIRI().getShortForm();
+	}
+}
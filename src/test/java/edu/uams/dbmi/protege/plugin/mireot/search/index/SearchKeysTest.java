@@ -0,0 +1,59 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.index;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class SearchKeysTest {
+
+	@Test
+	public void foldsCase() {
+		assertEquals("alanine", SearchKeys.normalize("ALANINE"));
+		assertEquals("alanine", SearchKeys.normalize("Alanine"));
+	}
+
+	@Test
+	public void collapsesSeparators() {
+		assertEquals("beta alanine", SearchKeys.normalize("beta-alanine"));
+		assertEquals("beta alanine", SearchKeys.normalize("beta_alanine"));
+		assertEquals("beta alanine", SearchKeys.normalize("beta \t- alanine"));
+	}
+
+	@Test
+	public void trimsSeparators() {
+		assertEquals("alanine", SearchKeys.normalize("  alanine--"));
+		assertEquals("", SearchKeys.normalize(" -_ "));
+	}
+
+	@Test
+	public void spellsOutGreekLetters() {
+		assertEquals("beta alanine", SearchKeys.normalize("\u03B2-Alanine"));
+		assertEquals("beta alanine", SearchKeys.normalize("\u0392-alanine"));
+		assertEquals("alphaomega", SearchKeys.normalize("\u03B1\u03C9"));
+	}
+
+	@Test
+	public void dropsAccents() {
+		assertEquals("naive", SearchKeys.normalize("na\u00EFve"));
+		assertEquals("cafe", SearchKeys.normalize("CAF\u00C9"));
+	}
+
+	@Test
+	public void normalizesCompatibilityForms() {
+		//full width letters and the "fi" ligature
+		assertEquals("fine", SearchKeys.normalize("\uFB01ne"));
+		assertEquals("abc", SearchKeys.normalize("\uFF21\uFF22\uFF23"));
+	}
+
+	@Test
+	public void treatsUnicodeDashesAndSpacesAsSeparators() {
+		assertEquals("beta alanine", SearchKeys.normalize("beta\u2013alanine"));
+		assertEquals("beta alanine", SearchKeys.normalize("beta\u00A0alanine"));
+	}
+
+	@Test
+	public void keepsOtherPunctuation() {
+		assertEquals("n,n dimethyl", SearchKeys.normalize("N,N-dimethyl"));
+		assertEquals("(r) lactate", SearchKeys.normalize("(R)-lactate"));
+	}
+}
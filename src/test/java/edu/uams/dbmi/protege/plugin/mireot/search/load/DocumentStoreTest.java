@@ -0,0 +1,231 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.load;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Fetches documents from a local stand-in for an ontology server
+ */
+public class DocumentStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private HttpServer server;
+	private DocumentStore store;
+
+	//served by path: body, ETag and Last-Modified, either of the validators may be null
+	private final Map<String, String[]> documents = new ConcurrentHashMap<String, String[]>();
+	//status of every response, in order
+	private final List<Integer> statuses = new ArrayList<Integer>();
+	private final List<String> conditions = new ArrayList<String>();
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				String[] document = documents.get(exchange.getRequestURI().getPath());
+				String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+				String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+				synchronized(conditions){
+					conditions.add(ifNoneMatch + " " + ifModifiedSince);
+				}
+
+				int status;
+				byte[] body = new byte[0];
+				if(document == null){
+					status = 404;
+				} else if(document[1] != null && document[1].equals(ifNoneMatch)
+						|| document[1] == null && document[2] != null && document[2].equals(ifModifiedSince)){
+					status = 304;
+				} else {
+					status = 200;
+					body = document[0].getBytes(StandardCharsets.UTF_8);
+					if(document[1] != null){
+						exchange.getResponseHeaders().set("ETag", document[1]);
+					}
+					if(document[2] != null){
+						exchange.getResponseHeaders().set("Last-Modified", document[2]);
+					}
+				}
+
+				synchronized(statuses){
+					statuses.add(status);
+				}
+				exchange.sendResponseHeaders(status, status == 200 ? body.length : -1);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		server.start();
+
+		store = new DocumentStore(folder.newFolder("documents"));
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	@Test
+	public void downloadsNewDocument() throws Exception {
+		documents.put("/a.owl", new String[]{"<rdf:RDF/>", "\"v1\"", null});
+
+		File document = store.fetch(url("/a.owl"));
+
+		assertNotNull(document);
+		assertEquals("<rdf:RDF/>", read(document));
+		assertEquals(Integer.valueOf(200), statuses.get(0));
+		assertEquals("null null", conditions.get(0));
+		assertArrayEquals(sha256("<rdf:RDF/>"), store.getContentHash(url("/a.owl")));
+		assertEquals(document, store.getCachedFile(url("/a.owl")));
+	}
+
+	@Test
+	public void revalidatesWithETag() throws Exception {
+		documents.put("/a.owl", new String[]{"first", "\"v1\"", null});
+		store.fetch(url("/a.owl"));
+
+		File document = store.fetch(url("/a.owl"));
+
+		assertEquals("\"v1\" null", conditions.get(1));
+		assertEquals(Integer.valueOf(304), statuses.get(1));
+		assertEquals("first", read(document));
+	}
+
+	@Test
+	public void revalidatesWithLastModified() throws Exception {
+		String date = "Tue, 03 Jan 2017 10:00:00 GMT";
+		documents.put("/a.owl", new String[]{"first", null, date});
+		store.fetch(url("/a.owl"));
+
+		File document = store.fetch(url("/a.owl"));
+
+		assertEquals("null " + date, conditions.get(1));
+		assertEquals(Integer.valueOf(304), statuses.get(1));
+		assertEquals("first", read(document));
+	}
+
+	@Test
+	public void replacesChangedDocument() throws Exception {
+		documents.put("/a.owl", new String[]{"first", "\"v1\"", null});
+		store.fetch(url("/a.owl"));
+		documents.put("/a.owl", new String[]{"second", "\"v2\"", null});
+
+		File document = store.fetch(url("/a.owl"));
+
+		assertEquals(Integer.valueOf(200), statuses.get(1));
+		assertEquals("second", read(document));
+		assertArrayEquals(sha256("second"), store.getContentHash(url("/a.owl")));
+	}
+
+	@Test
+	public void usesLocalCopyWhenServerFails() throws Exception {
+		documents.put("/a.owl", new String[]{"first", "\"v1\"", null});
+		store.fetch(url("/a.owl"));
+		documents.remove("/a.owl");
+
+		File document = store.fetch(url("/a.owl"));
+
+		assertEquals(Integer.valueOf(404), statuses.get(1));
+		assertEquals("first", read(document));
+	}
+
+	@Test(expected = IOException.class)
+	public void failsWithoutLocalCopy() throws Exception {
+		store.fetch(url("/missing.owl"));
+	}
+
+	@Test
+	public void leavesOtherURLsAlone() throws Exception {
+		assertNull(store.fetch("file:///tmp/a.owl"));
+	}
+
+	@Test
+	public void reportsDownloadToMonitor() throws Exception {
+		documents.put("/a.owl", new String[]{"0123456789", null, null});
+		LoadMonitor monitor = new LoadMonitor(url("/a.owl"));
+
+		store.fetch(url("/a.owl"), monitor);
+
+		assertEquals(LoadMonitor.Stage.DOWNLOAD, monitor.getStage());
+		assertEquals(10, monitor.getDone());
+		assertEquals(10, monitor.getTotal());
+	}
+
+	@Test
+	public void deletesLeastRecentlyUsedBeyondSizeLimit() throws Exception {
+		documents.put("/a.owl", new String[]{"aaaaaaaaaa", null, null});
+		documents.put("/b.owl", new String[]{"bbbbbbbbbb", null, null});
+		store.setMaxBytes(15);
+
+		File first = store.fetch(url("/a.owl"));
+		first.setLastModified(System.currentTimeMillis() - 60000);
+		File second = store.fetch(url("/b.owl"));
+
+		assertFalse(first.exists());
+		assertNull(store.getCachedFile(url("/a.owl")));
+		assertTrue(second.exists());
+	}
+
+	@Test
+	public void keepsPinnedDocuments() throws Exception {
+		documents.put("/a.owl", new String[]{"aaaaaaaaaa", null, null});
+		documents.put("/b.owl", new String[]{"bbbbbbbbbb", null, null});
+		store.setMaxBytes(15);
+		store.pin(url("/a.owl"));
+
+		File first = store.fetch(url("/a.owl"));
+		first.setLastModified(System.currentTimeMillis() - 60000);
+		store.fetch(url("/b.owl"));
+
+		assertTrue(first.exists());
+
+		store.unpin(url("/a.owl"));
+		documents.put("/c.owl", new String[]{"cccccccccc", null, null});
+		store.fetch(url("/c.owl"));
+
+		assertFalse(first.exists());
+	}
+
+	private String url(String path) {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+	}
+
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+
+	private static byte[] sha256(String text) throws Exception {
+		return MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+	}
+}
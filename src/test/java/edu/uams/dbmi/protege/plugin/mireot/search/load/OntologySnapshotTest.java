@@ -0,0 +1,139 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.AddOntologyAnnotation;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyID;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+import com.google.common.base.Optional;
+
+public class OntologySnapshotTest {
+
+	private static final String EX = "http://example.org/";
+
+	private OWLOntologyManager manager;
+	private OWLDataFactory factory;
+
+	private OWLOntology ontology;
+	private OWLOntology imported;
+
+	@Before
+	public void setUp() throws Exception {
+		manager = OWLManager.createOWLOntologyManager();
+		factory = manager.getOWLDataFactory();
+
+		ontology = manager.createOntology(new OWLOntologyID(Optional.of(IRI.create(EX + "main")),
+				Optional.of(IRI.create(EX + "main/1.0"))));
+		imported = manager.createOntology(new OWLOntologyID(Optional.of(IRI.create(EX + "imported")),
+				Optional.<IRI>absent()));
+
+		//imported by the IRI of its document, as PURLs often are
+		manager.setOntologyDocumentIRI(imported, IRI.create(EX + "imported.owl"));
+		manager.applyChange(new AddImport(ontology, factory.getOWLImportsDeclaration(IRI.create(EX + "imported.owl"))));
+
+		OWLClass alanine = factory.getOWLClass(IRI.create(EX + "Alanine"));
+		OWLClass aminoAcid = factory.getOWLClass(IRI.create(EX + "AminoAcid"));
+		OWLClass glycine = factory.getOWLClass(IRI.create(EX + "Glycine"));
+		OWLObjectProperty partOf = factory.getOWLObjectProperty(IRI.create(EX + "partOf"));
+		OWLObjectProperty properPartOf = factory.getOWLObjectProperty(IRI.create(EX + "properPartOf"));
+		OWLAnnotationProperty synonym = factory.getOWLAnnotationProperty(IRI.create(EX + "synonym"));
+		OWLAnnotation source = factory.getOWLAnnotation(factory.getRDFSComment(), factory.getOWLLiteral("from a paper"));
+
+		Set<OWLAxiom> axioms = new HashSet<OWLAxiom>();
+		axioms.add(factory.getOWLDeclarationAxiom(alanine));
+		axioms.add(factory.getOWLDeclarationAxiom(partOf));
+		axioms.add(factory.getOWLDeclarationAxiom(synonym));
+		axioms.add(factory.getOWLAnnotationAssertionAxiom(factory.getRDFSLabel(), alanine.getIRI(),
+				factory.getOWLLiteral("alanine", "en")));
+		axioms.add(factory.getOWLAnnotationAssertionAxiom(synonym, alanine.getIRI(),
+				factory.getOWLLiteral("Ala"), Collections.singleton(source)));
+		axioms.add(factory.getOWLAnnotationAssertionAxiom(factory.getRDFSComment(), alanine.getIRI(),
+				factory.getOWLLiteral("89", factory.getOWLDatatype(IRI.create("http://www.w3.org/2001/XMLSchema#integer")))));
+		axioms.add(factory.getOWLAnnotationAssertionAxiom(factory.getRDFSComment(), alanine.getIRI(), aminoAcid.getIRI()));
+		axioms.add(factory.getOWLSubClassOfAxiom(alanine, aminoAcid));
+		axioms.add(factory.getOWLSubObjectPropertyOfAxiom(properPartOf, partOf));
+		//no record of its own, so serialized
+		axioms.add(factory.getOWLDisjointClassesAxiom(alanine, glycine));
+		manager.addAxioms(ontology, axioms);
+
+		manager.addAxioms(imported, Collections.singleton(factory.getOWLSubClassOfAxiom(glycine, aminoAcid)));
+
+		manager.applyChange(new AddOntologyAnnotation(ontology,
+				factory.getOWLAnnotation(factory.getRDFSLabel(), factory.getOWLLiteral("main ontology"))));
+	}
+
+	@Test
+	public void readsBackTheOntologyAndItsImports() throws Exception {
+		OWLOntologyManager target = OWLManager.createOWLOntologyManager();
+
+		OWLOntology read = OntologySnapshot.read(input(write()), target);
+
+		assertEquals(ontology.getOntologyID(), read.getOntologyID());
+		assertEquals(ontology.getAxioms(), read.getAxioms());
+		assertEquals(ontology.getAnnotations(), read.getAnnotations());
+		assertEquals(ontology.getImportsDeclarations(), read.getImportsDeclarations());
+
+		assertEquals(2, target.getImportsClosure(read).size());
+		OWLOntology readImport = target.getImports(read).iterator().next();
+		assertEquals(imported.getOntologyID(), readImport.getOntologyID());
+		assertEquals(imported.getAxioms(), readImport.getAxioms());
+	}
+
+	@Test
+	public void removesWhatItCreatedFromATruncatedSnapshot() throws Exception {
+		byte[] snapshot = write();
+		OWLOntologyManager target = OWLManager.createOWLOntologyManager();
+
+		try {
+			OntologySnapshot.read(input(Arrays.copyOf(snapshot, snapshot.length / 2)), target);
+			fail("read a truncated snapshot");
+		} catch (IOException e) {
+			assertTrue(target.getOntologies().isEmpty());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsOtherFiles() throws Exception {
+		OntologySnapshot.read(input("<rdf:RDF/>".getBytes("UTF-8")), OWLManager.createOWLOntologyManager());
+	}
+
+	private byte[] write() throws IOException {
+		List<OWLOntology> imports = Collections.singletonList(imported);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		OntologySnapshot.write(ontology, imports, out);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static DataInputStream input(byte[] bytes) {
+		return new DataInputStream(new ByteArrayInputStream(bytes));
+	}
+}
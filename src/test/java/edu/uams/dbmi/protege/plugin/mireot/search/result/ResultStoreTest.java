@@ -0,0 +1,224 @@
+package edu.uams.dbmi.protege.plugin.mireot.search.result;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.EntityType;
+
+import edu.uams.dbmi.protege.plugin.mireot.search.index.IndexBuilder;
+import edu.uams.dbmi.protege.plugin.mireot.search.index.IntList;
+import edu.uams.dbmi.protege.plugin.mireot.search.index.SearchCancellation;
+import edu.uams.dbmi.protege.plugin.mireot.search.index.SearchField;
+import edu.uams.dbmi.protege.plugin.mireot.search.index.SearchIndex;
+import edu.uams.dbmi.protege.plugin.mireot.search.load.LoadedOntology;
+
+public class ResultStoreTest {
+
+	static final String OBO = "http://purl.obolibrary.org/obo/";
+	private static final String LABEL = "http://www.w3.org/2000/01/rdf-schema#label";
+	private static final String EXACT_SYNONYM = "http://www.geneontology.org/formats/oboInOwl#hasExactSynonym";
+
+	private LoadedOntology chebi;
+	private LoadedOntology go;
+	private ResultStore store;
+
+	@Before
+	public void setUp() {
+		IndexBuilder builder = new IndexBuilder(Arrays.asList("en", ""), OWLManager.getOWLDataFactory());
+		builder.addEntity(OBO + "CHEBI_1", EntityType.CLASS);
+		builder.addAnnotation(OBO + "CHEBI_1", LABEL, "beta-alanine", "en");
+		builder.addAnnotation(OBO + "CHEBI_1", EXACT_SYNONYM, "3-aminopropanoic acid", "");
+		builder.addEntity(OBO + "CHEBI_2", EntityType.CLASS);
+		builder.addAnnotation(OBO + "CHEBI_2", LABEL, "alanine", "en");
+		builder.addEntity(OBO + "CHEBI_3", EntityType.CLASS);
+		chebi = source("chebi.owl", builder.build(new SearchCancellation()));
+
+		builder = new IndexBuilder(Arrays.asList("en", ""), OWLManager.getOWLDataFactory());
+		builder.addEntity(OBO + "GO_1", EntityType.CLASS);
+		builder.addAnnotation(OBO + "GO_1", LABEL, "alanine transport", "en");
+		go = source("go.owl", builder.build(new SearchCancellation()));
+
+		store = new ResultStore(matchTypes());
+		store.add(chebi, entries(chebi, "CHEBI_1"));
+		store.add(chebi, entries(chebi, "CHEBI_2"));
+		store.add(go, entries(go, "GO_1"));
+		store.add(chebi, entries(chebi, "CHEBI_3"));
+	}
+
+	@Test
+	public void readsColumnsFromTheIndex() {
+		assertEquals(4, store.size());
+		assertEquals(Arrays.asList(chebi, go), store.getSources());
+
+		assertSame(chebi, store.getSource(0));
+		assertEquals(OBO + "CHEBI_1", store.getEntity(0).toStringID());
+		assertEquals("beta-alanine", store.getLabel(0));
+		assertEquals(Arrays.asList("URI", "LABEL", "EXACT_SYNONYM"), store.getMatchTypes(0));
+		assertEquals(Arrays.asList("NA", "beta-alanine", "3-aminopropanoic acid"), store.getMatchContexts(0));
+
+		assertSame(go, store.getSource(2));
+		assertEquals("alanine transport", store.getLabel(2));
+	}
+
+	@Test
+	public void labelsUnlabelledEntitiesByShortForm() {
+		assertEquals("CHEBI_3", store.getLabel(3));
+	}
+
+	@Test
+	public void sharesEntityIdsWithTheIndex() {
+		SearchIndex index = chebi.getIndex();
+		IntList entries = entries(chebi, "CHEBI_2");
+		assertEquals(index.getEntityId(entries.get(0)), store.getEntityId(1));
+	}
+
+	@Test
+	public void wrapsRowsAsResults() {
+		SearchResult result = store.get(0);
+
+		assertEquals("Class", result.getType());
+		assertEquals(OBO + "CHEBI_1", result.getIRI().toString());
+		assertEquals("beta-alanine", result.getName());
+		assertEquals("URI, LABEL, EXACT_SYNONYM", result.getMatchType());
+		assertEquals("NA | beta-alanine | 3-aminopropanoic acid", result.getMatchContext());
+		assertEquals("chebi.owl", result.getSource());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void rejectsRowsOutOfRange() {
+		store.get(4);
+	}
+
+	@Test
+	public void appendsRowsOfAnotherStore() {
+		ResultStore other = new ResultStore(matchTypes());
+		other.add(go, entries(go, "GO_1"));
+		other.add(chebi, entries(chebi, "CHEBI_2"));
+
+		store.append(other);
+
+		assertEquals(6, store.size());
+		assertEquals(Arrays.asList(chebi, go), store.getSources());
+		assertSame(go, store.getSource(4));
+		assertEquals("alanine transport", store.getLabel(4));
+		assertSame(chebi, store.getSource(5));
+		assertEquals("alanine", store.getLabel(5));
+		assertEquals(store.getMatchContexts(1), store.getMatchContexts(5));
+	}
+
+	@Test
+	public void listsRowsWithoutMatchedEntries() {
+		Map<LoadedOntology, BitSet> matched = new HashMap<LoadedOntology, BitSet>();
+		matched.put(chebi, bits(entries(chebi, "CHEBI_2").get(1)));
+
+		assertArrayEquals(new int[] { 0, 2, 3 }, store.unmatched(matched).toArray());
+	}
+
+	@Test
+	public void removesRangesOfRows() {
+		store.remove(1, 2);
+
+		assertEquals(2, store.size());
+		assertEquals("beta-alanine", store.getLabel(0));
+		assertEquals("CHEBI_3", store.getLabel(1));
+		assertEquals(Arrays.asList("URI"), store.getMatchTypes(1));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void rejectsRangesOutOfBounds() {
+		store.remove(3, 4);
+	}
+
+	@Test
+	public void retainsMatchedEntries() {
+		IntList beta = entries(chebi, "CHEBI_1");
+		IntList alanine = entries(chebi, "CHEBI_2");
+
+		Map<LoadedOntology, BitSet> matched = new HashMap<LoadedOntology, BitSet>();
+		//the label of CHEBI_1 but not its other entries, and every entry of CHEBI_2
+		matched.put(chebi, bits(beta.get(1), alanine.get(0), alanine.get(1)));
+
+		IntList changed = store.retain(matched);
+
+		//GO_1 has no matched entries, and CHEBI_3 none of its source
+		assertEquals(2, store.size());
+		assertEquals("beta-alanine", store.getLabel(0));
+		assertEquals(Arrays.asList("LABEL"), store.getMatchTypes(0));
+		assertEquals("alanine", store.getLabel(1));
+		assertEquals(Arrays.asList("URI", "LABEL"), store.getMatchTypes(1));
+		assertArrayEquals(new int[] { 0 }, changed.toArray());
+	}
+
+	@Test
+	public void removesEveryRowOfSourcesNotMatched() {
+		Map<LoadedOntology, BitSet> matched = new HashMap<LoadedOntology, BitSet>();
+		matched.put(go, bits(entries(go, "GO_1").get(1)));
+
+		store.retain(matched);
+
+		assertEquals(1, store.size());
+		assertSame(go, store.getSource(0));
+	}
+
+	@Test
+	public void removingUnmatchedRowsLeavesRetainNothingToRemove() {
+		Map<LoadedOntology, BitSet> matched = new HashMap<LoadedOntology, BitSet>();
+		matched.put(chebi, bits(entries(chebi, "CHEBI_1").get(1), entries(chebi, "CHEBI_3").get(0)));
+
+		//as the table model removes them: each run of unmatched rows, last run first
+		IntList unmatched = store.unmatched(matched);
+		assertArrayEquals(new int[] { 1, 2 }, unmatched.toArray());
+		store.remove(1, 2);
+
+		IntList changed = store.retain(matched);
+
+		assertEquals(2, store.size());
+		assertEquals("beta-alanine", store.getLabel(0));
+		assertEquals("CHEBI_3", store.getLabel(1));
+		assertArrayEquals(new int[] { 0 }, changed.toArray());
+	}
+
+	static LoadedOntology source(String name, SearchIndex index) {
+		return new LoadedOntology(name, null, index, 0, null, null);
+	}
+
+	/**
+	 *
+	 * @return every entry of the entity with the given short form, in index order
+	 */
+	static IntList entries(LoadedOntology source, String shortForm) {
+		SearchIndex index = source.getIndex();
+		IntList entries = new IntList();
+		for(int entry = 0; entry < index.getEntryCount(); entry++){
+			if(index.getEntity(entry).getIRI().getShortForm().equals(shortForm)){
+				entries.add(entry);
+			}
+		}
+		return entries;
+	}
+
+	private static BitSet bits(int... entries) {
+		BitSet bits = new BitSet();
+		for(int entry : entries){
+			bits.set(entry);
+		}
+		return bits;
+	}
+
+	static String[] matchTypes() {
+		String[] matchTypes = new String[SearchField.values().length];
+		for(SearchField field : SearchField.values()){
+			matchTypes[field.ordinal()] = field.name();
+		}
+		return matchTypes;
+	}
+}